@@ -2,8 +2,10 @@ package com.jb;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class Spring_CSApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,220 @@
+package com.jb.analytics;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class builds the platform wide report of the admin. It cuts the id range
+ * of the coupon table into partitions, reads every partition of the coupon and
+ * customer_coupon tables with plain JDBC on its own ForkJoinPool, aggregates
+ * each one into primitive keyed maps and merges the partial results two by two.
+ * The last report is kept for a while and concurrent requests share the same
+ * computation, which never runs on the request threads
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class AnalyticsEngine {
+
+	// Fields
+	private static final int TOP_CUSTOMERS = 10;
+	private static final String COUPONS = "SELECT company_id, amount FROM coupon"
+			+ " WHERE id >= ? AND id < ? AND deleted_millis IS NULL";
+	private static final String SALES = "SELECT cc.customer_id, c.company_id, c.category, c.price, c.start_date"
+			+ " FROM customer_coupon cc JOIN coupon c ON c.id = cc.coupon_id"
+			+ " WHERE cc.coupon_id >= ? AND cc.coupon_id < ? AND c.deleted_millis IS NULL";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final long partitionSize;
+	private final long ttlMillis;
+	private final ForkJoinPool pool;
+
+	private AnalyticsReport cached;
+	private CompletableFuture<AnalyticsReport> running;
+
+	// Constructor
+	@Autowired
+	public AnalyticsEngine(JdbcTemplate jdbcTemplate, @Value("${cs.analytics.partition-size:10000}") long partitionSize,
+			@Value("${cs.analytics.ttl-millis:60000}") long ttlMillis,
+			@Value("${cs.analytics.parallelism:0}") int parallelism,
+			@Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.partitionSize = partitionSize;
+		this.ttlMillis = ttlMillis;
+		this.pool = new ForkJoinPool(parallelism(parallelism, connectionPoolSize));
+	}
+
+	/**
+	 * Every worker holds a connection while it reads a partition, so the workers
+	 * never take more than half of the connection pool and the requests always
+	 * find a connection while a report is built
+	 */
+	static int parallelism(int parallelism, int connectionPoolSize) {
+		int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		return Math.max(1, Math.min(workers, connectionPoolSize / 2));
+	}
+
+	/**
+	 * This function returns the last report if it is younger than the TTL,
+	 * otherwise the report being built, starting it if needed
+	 * 
+	 * @return CompletableFuture<AnalyticsReport>
+	 */
+	public synchronized CompletableFuture<AnalyticsReport> report() {
+		if (cached != null && System.currentTimeMillis() - cached.getGeneratedMillis() < ttlMillis) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		if (running == null || running.isDone()) {
+			running = CompletableFuture.supplyAsync(this::build, pool).whenComplete((report, ex) -> {
+				if (report != null) {
+					synchronized (this) {
+						cached = report;
+					}
+				}
+			});
+		}
+		return running;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private AnalyticsReport build() {
+		long started = System.currentTimeMillis();
+		Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS low, MAX(id) AS high FROM coupon");
+		Partial total = new Partial();
+		int partitions = 0;
+		if (bounds.get("low") != null) {
+			long low = ((Number) bounds.get("low")).longValue();
+			long high = ((Number) bounds.get("high")).longValue();
+			partitions = (int) ((high - low) / partitionSize + 1);
+			total = new PartitionTask(low, 0, partitions).invoke();
+		}
+		List<AnalyticsReport.Row> topCustomers = top(total.customerSales, TOP_CUSTOMERS);
+		return new AnalyticsReport(System.currentTimeMillis(), System.currentTimeMillis() - started, partitions,
+				total.couponsScanned, total.salesScanned, rows(total.companySales, false),
+				rows(total.categorySales, false), days(total.daySales), topCustomers,
+				rows(total.inventory, true));
+	}
+
+	private static List<AnalyticsReport.Row> rows(LongStatsMap map, boolean units) {
+		List<AnalyticsReport.Row> rows = new ArrayList<>(map.size());
+		map.forEach((key, count, sum) -> rows.add(
+				new AnalyticsReport.Row(String.valueOf(key), count, units ? sum : sum / 100.0)));
+		rows.sort(Comparator.comparing(row -> Long.parseLong(row.getKey())));
+		return rows;
+	}
+
+	private static List<AnalyticsReport.Row> days(LongStatsMap map) {
+		List<AnalyticsReport.Row> rows = new ArrayList<>(map.size());
+		map.forEach((key, count, sum) -> rows
+				.add(new AnalyticsReport.Row(LocalDate.ofEpochDay(key).toString(), count, sum / 100.0)));
+		rows.sort(Comparator.comparing(AnalyticsReport.Row::getKey));
+		return rows;
+	}
+
+	private static List<AnalyticsReport.Row> top(LongStatsMap map, int limit) {
+		PriorityQueue<AnalyticsReport.Row> best = new PriorityQueue<>(
+				Comparator.comparingDouble(AnalyticsReport.Row::getTotal));
+		map.forEach((key, count, sum) -> {
+			best.add(new AnalyticsReport.Row(String.valueOf(key), count, sum / 100.0));
+			if (best.size() > limit) {
+				best.poll();
+			}
+		});
+		List<AnalyticsReport.Row> rows = new ArrayList<>(best);
+		rows.sort(Comparator.comparingDouble(AnalyticsReport.Row::getTotal).reversed());
+		return rows;
+	}
+
+	/**
+	 * Aggregates a range of partitions, splitting it in two until a single
+	 * partition is left
+	 */
+	@SuppressWarnings("serial")
+	private class PartitionTask extends RecursiveTask<Partial> {
+
+		private final long low;
+		private final int from;
+		private final int to;
+
+		private PartitionTask(long low, int from, int to) {
+			this.low = low;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Partial compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				PartitionTask left = new PartitionTask(low, from, middle);
+				left.fork();
+				Partial right = new PartitionTask(low, middle, to).compute();
+				return left.join().merge(right);
+			}
+			long start = low + from * partitionSize;
+			long end = start + partitionSize;
+			Partial partial = new Partial();
+			jdbcTemplate.query(COUPONS, rs -> {
+				partial.couponsScanned++;
+				partial.inventory.add(rs.getLong(1), 1, rs.getInt(2));
+			}, start, end);
+			jdbcTemplate.query(SALES, rs -> {
+				long cents = Math.round(rs.getDouble(4) * 100);
+				partial.salesScanned++;
+				partial.customerSales.add(rs.getLong(1), 1, cents);
+				partial.companySales.add(rs.getLong(2), 1, cents);
+				partial.categorySales.add(rs.getInt(3), 1, cents);
+				Date startDate = rs.getDate(5);
+				if (startDate != null) {
+					partial.daySales.add(startDate.toLocalDate().toEpochDay(), 1, cents);
+				}
+			}, start, end);
+			return partial;
+		}
+	}
+
+	/**
+	 * The aggregates of one or more partitions, the sums of money are in cents
+	 */
+	private static class Partial {
+
+		private long couponsScanned;
+		private long salesScanned;
+		private final LongStatsMap companySales = new LongStatsMap();
+		private final LongStatsMap categorySales = new LongStatsMap();
+		private final LongStatsMap daySales = new LongStatsMap();
+		private final LongStatsMap customerSales = new LongStatsMap();
+		private final LongStatsMap inventory = new LongStatsMap();
+
+		private Partial merge(Partial other) {
+			couponsScanned += other.couponsScanned;
+			salesScanned += other.salesScanned;
+			companySales.merge(other.companySales);
+			categorySales.merge(other.categorySales);
+			daySales.merge(other.daySales);
+			customerSales.merge(other.customerSales);
+			inventory.merge(other.inventory);
+			return this;
+		}
+	}
+}
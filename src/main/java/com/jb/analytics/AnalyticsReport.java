@@ -0,0 +1,118 @@
+package com.jb.analytics;
+
+import java.util.List;
+
+/**
+ * This class is the platform wide report returned to the admin. The sales are
+ * the rows of customer_coupon, their value is the price of the coupon. The
+ * customer_coupon table has no purchase date so the sales per day are grouped
+ * by the start date of the coupon
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class AnalyticsReport {
+
+	// Fields
+	private long generatedMillis;
+	private long elapsedMillis;
+	private int partitions;
+	private long couponsScanned;
+	private long salesScanned;
+	private List<Row> salesPerCompany;
+	private List<Row> salesPerCategory;
+	private List<Row> salesPerDay;
+	private List<Row> topCustomers;
+	private List<Row> inventoryPerCompany;
+
+	// Constructor
+	public AnalyticsReport(long generatedMillis, long elapsedMillis, int partitions, long couponsScanned,
+			long salesScanned, List<Row> salesPerCompany, List<Row> salesPerCategory, List<Row> salesPerDay,
+			List<Row> topCustomers, List<Row> inventoryPerCompany) {
+		this.generatedMillis = generatedMillis;
+		this.elapsedMillis = elapsedMillis;
+		this.partitions = partitions;
+		this.couponsScanned = couponsScanned;
+		this.salesScanned = salesScanned;
+		this.salesPerCompany = salesPerCompany;
+		this.salesPerCategory = salesPerCategory;
+		this.salesPerDay = salesPerDay;
+		this.topCustomers = topCustomers;
+		this.inventoryPerCompany = inventoryPerCompany;
+	}
+
+	public long getGeneratedMillis() {
+		return generatedMillis;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public long getCouponsScanned() {
+		return couponsScanned;
+	}
+
+	public long getSalesScanned() {
+		return salesScanned;
+	}
+
+	public List<Row> getSalesPerCompany() {
+		return salesPerCompany;
+	}
+
+	public List<Row> getSalesPerCategory() {
+		return salesPerCategory;
+	}
+
+	public List<Row> getSalesPerDay() {
+		return salesPerDay;
+	}
+
+	public List<Row> getTopCustomers() {
+		return topCustomers;
+	}
+
+	/**
+	 * @return per company, the coupons listed as count and the units remaining as
+	 *         total
+	 */
+	public List<Row> getInventoryPerCompany() {
+		return inventoryPerCompany;
+	}
+
+	/**
+	 * One line of a section of the report : the key (a company id, a category, a
+	 * date or a customer id), a count and a total
+	 */
+	public static class Row {
+
+		// Fields
+		private String key;
+		private long count;
+		private double total;
+
+		// Constructor
+		public Row(String key, long count, double total) {
+			this.key = key;
+			this.count = count;
+			this.total = total;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getTotal() {
+			return total;
+		}
+	}
+}
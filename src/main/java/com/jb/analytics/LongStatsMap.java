@@ -0,0 +1,113 @@
+package com.jb.analytics;
+
+/**
+ * This class is an open addressing hash map from a primitive long key to a
+ * count and a sum, so aggregating millions of rows does not create a boxed key
+ * and a value object per row
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class LongStatsMap {
+
+	// Fields
+	private long[] keys;
+	private long[] counts;
+	private long[] sums;
+	private boolean[] used;
+	private int size;
+
+	// Constructor
+	LongStatsMap() {
+		allocate(16);
+	}
+
+	/**
+	 * This function adds a count and a sum to the entry of the key
+	 * 
+	 * @param key
+	 * @param count
+	 * @param sum
+	 */
+	void add(long key, long count, long sum) {
+		int slot = slot(key);
+		if (!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			if (++size * 2 > keys.length) {
+				grow();
+				slot = slot(key);
+			}
+		}
+		counts[slot] += count;
+		sums[slot] += sum;
+	}
+
+	/**
+	 * This function adds every entry of another map to this one
+	 * 
+	 * @param other
+	 */
+	void merge(LongStatsMap other) {
+		for (int i = 0; i < other.keys.length; i++) {
+			if (other.used[i]) {
+				add(other.keys[i], other.counts[i], other.sums[i]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEach(Visitor visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				visitor.visit(keys[i], counts[i], sums[i]);
+			}
+		}
+	}
+
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (used[slot] && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		long[] oldSums = sums;
+		boolean[] oldUsed = used;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int slot = slot(oldKeys[i]);
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				sums[slot] = oldSums[i];
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		counts = new long[capacity];
+		sums = new long[capacity];
+		used = new boolean[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Receives the entries of the map
+	 */
+	interface Visitor {
+
+		void visit(long key, long count, long sum);
+	}
+}
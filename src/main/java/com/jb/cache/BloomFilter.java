@@ -0,0 +1,94 @@
+package com.jb.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a thread safe Bloom filter of strings. mightContain never
+ * answers false for a string that was added, and answers true for a string
+ * that was never added with the false positive rate given to the constructor
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class BloomFilter {
+
+	// Fields
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	// Constructor
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		long size = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (size + 63) / 64));
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = words * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * This function adds a string to the filter
+	 * 
+	 * @param value
+	 */
+	public void add(String value) {
+		long hash1 = hash(value);
+		long hash2 = mix(hash1);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			do {
+				current = bits.get(word);
+			} while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+		}
+	}
+
+	/**
+	 * This function checks if the string may have been added to the filter
+	 * 
+	 * @param value
+	 * @return false if the string was never added and true otherwise
+	 */
+	public boolean mightContain(String value) {
+		long hash1 = hash(value);
+		long hash2 = mix(hash1);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This function returns the number of bytes used by the filter
+	 * 
+	 * @return long
+	 */
+	public long sizeInBytes() {
+		return bitCount / 8;
+	}
+
+	// 64 bit FNV-1a
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	// Finalizer of murmur3
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash | 1;
+	}
+}
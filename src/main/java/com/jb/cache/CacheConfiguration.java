@@ -0,0 +1,66 @@
+package com.jb.cache;
+
+import java.time.Duration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+import com.jb.entity.Customer;
+
+/**
+ * This class creates the regions of the second level cache, each one with a
+ * maximum number of entries and a time to live, and gives the cache manager to
+ * hibernate
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Configuration
+public class CacheConfiguration {
+
+	// Fields
+	private static final Duration ENTITY_TTL = Duration.ofMinutes(10);
+	private static final Duration QUERY_TTL = Duration.ofMinutes(1);
+
+	@Bean(destroyMethod = "close")
+	public CacheManager hibernateCacheManager() {
+		CacheManager cacheManager = Caching.getCachingProvider(EhcacheCachingProvider.class.getName())
+				.getCacheManager();
+		createRegion(cacheManager, Company.class.getName(), 2_000, ENTITY_TTL);
+		createRegion(cacheManager, Customer.class.getName(), 10_000, ENTITY_TTL);
+		createRegion(cacheManager, Coupon.class.getName(), 50_000, ENTITY_TTL);
+		createRegion(cacheManager, "default-query-results-region", 1_000, QUERY_TTL);
+		// Must never expire before the query results it invalidates
+		createRegion(cacheManager, "default-update-timestamps-region", 100, null);
+		return cacheManager;
+	}
+
+	@Bean
+	public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+		return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+	}
+
+	private static void createRegion(CacheManager cacheManager, String name, long entries, Duration ttl) {
+		if (cacheManager.getCache(name) != null) {
+			return;
+		}
+		cacheManager.createCache(name,
+				Eh107Configuration.fromEhcacheCacheConfiguration(CacheConfigurationBuilder
+						.newCacheConfigurationBuilder(Object.class, Object.class,
+								ResourcePoolsBuilder.heap(entries))
+						.withExpiry(ttl == null ? ExpiryPolicyBuilder.noExpiration()
+								: ExpiryPolicyBuilder.timeToLiveExpiration(ttl))));
+	}
+}
@@ -0,0 +1,90 @@
+package com.jb.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the report of the second level cache returned to the admin, it
+ * contains the number of statements sent to the database and the counters of
+ * every cache region
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CacheStatistics {
+
+	// Fields
+	private long prepareStatementCount;
+	private long entityLoadCount;
+	private List<Region> regions;
+
+	// Constructor
+	public CacheStatistics(long prepareStatementCount, long entityLoadCount) {
+		this.prepareStatementCount = prepareStatementCount;
+		this.entityLoadCount = entityLoadCount;
+		this.regions = new ArrayList<>();
+	}
+
+	public long getPrepareStatementCount() {
+		return prepareStatementCount;
+	}
+
+	public long getEntityLoadCount() {
+		return entityLoadCount;
+	}
+
+	public List<Region> getRegions() {
+		return regions;
+	}
+
+	public boolean add(Region region) {
+		return regions.add(region);
+	}
+
+	/**
+	 * The counters of a single cache region
+	 */
+	public static class Region {
+
+		// Fields
+		private String name;
+		private long hitCount;
+		private long missCount;
+		private long putCount;
+		private long elementCount;
+
+		// Constructor
+		public Region(String name, long hitCount, long missCount, long putCount, long elementCount) {
+			this.name = name;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.putCount = putCount;
+			this.elementCount = elementCount;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getPutCount() {
+			return putCount;
+		}
+
+		public long getElementCount() {
+			return elementCount;
+		}
+
+		public double getHitRatio() {
+			long total = hitCount + missCount;
+			return total == 0 ? 0 : (double) hitCount / total;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.jb.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * This class is a list already encoded in JSON, Smile or CBOR by the response
+ * cache, with its gzip encoding made at the first request that accepts it. Both are written as
+ * they are to the response, without going through Jackson again
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CachedResponse {
+
+	// Fields
+	private final long version;
+	private final boolean empty;
+	private final MediaType contentType;
+	private final byte[] body;
+	private final int gzipMinBytes;
+	private volatile byte[] gzip;
+
+	// Constructor
+	public CachedResponse(long version, boolean empty, MediaType contentType, byte[] body, int gzipMinBytes) {
+		this.version = version;
+		this.empty = empty;
+		this.contentType = contentType;
+		this.body = body;
+		this.gzipMinBytes = gzipMinBytes;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	public MediaType getContentType() {
+		return contentType;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the gzip encoding of the list, null when it is too small to be worth
+	 *         compressing
+	 */
+	public byte[] getGzip() {
+		if (body.length < gzipMinBytes) {
+			return null;
+		}
+		byte[] encoded = gzip;
+		if (encoded == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+			try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+				zip.write(body);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			encoded = out.toByteArray();
+			gzip = encoded;
+		}
+		return encoded;
+	}
+
+	/**
+	 * This function builds the response of the list : 204 when it is empty,
+	 * otherwise the encoded bytes, gzipped when the client accepts it
+	 * 
+	 * @param acceptEncoding : the Accept-Encoding header of the request, may be
+	 *                       null
+	 * @return ResponseEntity<byte[]>
+	 */
+	public ResponseEntity<byte[]> toResponseEntity(String acceptEncoding) {
+		if (empty) {
+			return ResponseEntity.noContent().lastModified(ScopeVersions.lastModified(version)).build();
+		}
+		ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(contentType)
+				.lastModified(ScopeVersions.lastModified(version))
+				.varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+		byte[] encoded = acceptEncoding != null && acceptEncoding.contains("gzip") ? getGzip() : null;
+		if (encoded != null) {
+			return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded);
+		}
+		return builder.body(body);
+	}
+
+	long size() {
+		return body.length;
+	}
+}
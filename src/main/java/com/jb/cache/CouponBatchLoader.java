@@ -0,0 +1,125 @@
+package com.jb.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+import com.jb.entity.CouponResult;
+import com.jb.repository.CouponRepository;
+import com.jb.rest.ex.TooManyIdsException;
+
+/**
+ * This class loads many coupons by id for the multi-get endpoints and for the
+ * wallets of the customers. The coupons already in the second level cache are
+ * taken from it, the others are loaded with a single IN query, and the answer
+ * follows the order of the request with a not found entry for every missing id
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class CouponBatchLoader {
+
+	// Fields
+	private final int maxIds;
+	private final CouponRepository couponRepository;
+	private final Cache cache;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// Constructor
+	@Autowired
+	public CouponBatchLoader(@Value("${cs.multi-get.max-ids:100}") int maxIds, CouponRepository couponRepository,
+			EntityManagerFactory entityManagerFactory) {
+		this.maxIds = maxIds;
+		this.couponRepository = couponRepository;
+		this.cache = entityManagerFactory.getCache();
+	}
+
+	/**
+	 * This function answers every id of the request, in order. A repeated id is
+	 * loaded once and answered at every position, an empty id is skipped
+	 * 
+	 * @param ids
+	 * @param visible : false for the coupons the caller may not see
+	 * @return List<CouponResult>
+	 * @throws TooManyIdsException : if there are more ids than cs.multi-get.max-ids
+	 */
+	public List<CouponResult> load(List<Long> ids, Predicate<Coupon> visible) throws TooManyIdsException {
+		if (ids.size() > maxIds) {
+			throw new TooManyIdsException(String.format("%d ids, at most %d are allowed", ids.size(), maxIds));
+		}
+		Set<Long> distinct = new LinkedHashSet<>(ids);
+		distinct.remove(null);
+		Map<Long, Coupon> coupons = find(distinct);
+		List<CouponResult> results = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			if (id == null) {
+				continue;
+			}
+			Coupon coupon = coupons.get(id);
+			results.add(new CouponResult(id, coupon != null && visible.test(coupon) ? coupon : null));
+		}
+		return results;
+	}
+
+	/**
+	 * This function loads the coupons of the ids, in their order, and leaves out
+	 * the ids that are not coupons
+	 * 
+	 * @param ids
+	 * @return List<Coupon>
+	 */
+	public List<Coupon> loadAll(long[] ids) {
+		List<Long> boxed = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			boxed.add(id);
+		}
+		Map<Long, Coupon> coupons = find(boxed);
+		List<Coupon> found = new ArrayList<>(coupons.size());
+		for (long id : ids) {
+			Coupon coupon = coupons.get(id);
+			if (coupon != null) {
+				found.add(coupon);
+			}
+		}
+		return found;
+	}
+
+	private Map<Long, Coupon> find(Collection<Long> ids) {
+		Map<Long, Coupon> coupons = new HashMap<>();
+		List<Long> misses = new ArrayList<>();
+		for (Long id : ids) {
+			// The soft deletes are bulk updates, they evict the region, so a cached
+			// coupon is a live one
+			Coupon coupon = cache.contains(Coupon.class, id) ? entityManager.find(Coupon.class, id) : null;
+			if (coupon != null) {
+				coupons.put(id, coupon);
+			} else {
+				misses.add(id);
+			}
+		}
+		if (!misses.isEmpty()) {
+			for (Coupon coupon : couponRepository.findAllById(misses)) {
+				coupons.put(coupon.getId(), coupon);
+			}
+		}
+		return coupons;
+	}
+}
@@ -0,0 +1,174 @@
+package com.jb.cache;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jb.repository.CouponRepository.WalletEntry;
+
+/**
+ * This class is the cached wallet of a customer: the ids of its coupons sorted
+ * in increasing order, with their category, price and end date in parallel
+ * arrays so the filters of the customer endpoints run without the database. A
+ * wallet never changes, a purchase or a change of a coupon makes a new one
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class CustomerWallet {
+
+	// Fields
+	private static final int OVERHEAD_BYTES = 96;
+	private static final int ENTRY_BYTES = 28;
+
+	private final long[] ids;
+	private final int[] categories;
+	private final double[] prices;
+	private final long[] endDates;
+
+	// Constructor
+	private CustomerWallet(long[] ids, int[] categories, double[] prices, long[] endDates) {
+		this.ids = ids;
+		this.categories = categories;
+		this.prices = prices;
+		this.endDates = endDates;
+	}
+
+	/**
+	 * This function builds a wallet from the rows of the database, sorted by id
+	 * 
+	 * @param entries
+	 * @return CustomerWallet
+	 */
+	static CustomerWallet of(List<WalletEntry> entries) {
+		int size = entries.size();
+		CustomerWallet wallet = new CustomerWallet(new long[size], new int[size], new double[size], new long[size]);
+		for (int i = 0; i < size; i++) {
+			WalletEntry entry = entries.get(i);
+			wallet.ids[i] = entry.getId();
+			wallet.categories[i] = entry.getCategory();
+			wallet.prices[i] = entry.getPrice();
+			wallet.endDates[i] = time(entry.getEndDate());
+		}
+		return wallet;
+	}
+
+	/**
+	 * This function returns a wallet with the coupon added, or with its columns
+	 * replaced when it is already there
+	 * 
+	 * @param id
+	 * @param category
+	 * @param price
+	 * @param endDate
+	 * @return CustomerWallet
+	 */
+	CustomerWallet with(long id, int category, double price, long endDate) {
+		int index = Arrays.binarySearch(ids, id);
+		int size = ids.length;
+		CustomerWallet wallet;
+		if (index >= 0) {
+			wallet = new CustomerWallet(ids, categories.clone(), prices.clone(), endDates.clone());
+		} else {
+			index = -index - 1;
+			wallet = new CustomerWallet(insert(ids, index, size), insert(categories, index, size),
+					insert(prices, index, size), insert(endDates, index, size));
+			wallet.ids[index] = id;
+		}
+		wallet.categories[index] = category;
+		wallet.prices[index] = price;
+		wallet.endDates[index] = endDate;
+		return wallet;
+	}
+
+	/**
+	 * This function returns a wallet without the coupon, or this wallet when the
+	 * coupon is not in it
+	 * 
+	 * @param id
+	 * @return CustomerWallet
+	 */
+	CustomerWallet without(long id) {
+		int index = Arrays.binarySearch(ids, id);
+		if (index < 0) {
+			return this;
+		}
+		int size = ids.length;
+		return new CustomerWallet(remove(ids, index, size), remove(categories, index, size),
+				remove(prices, index, size), remove(endDates, index, size));
+	}
+
+	boolean contains(long id) {
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	/**
+	 * This function returns the ids of the coupons accepted by the filter
+	 * 
+	 * @param filter
+	 * @return long[]
+	 */
+	long[] select(WalletCache.Filter filter) {
+		long[] selected = new long[ids.length];
+		int count = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (filter.test(categories[i], prices[i], endDates[i])) {
+				selected[count++] = ids[i];
+			}
+		}
+		return count == selected.length ? selected : Arrays.copyOf(selected, count);
+	}
+
+	/**
+	 * @return an estimate of the bytes held by the wallet
+	 */
+	long size() {
+		return OVERHEAD_BYTES + (long) ids.length * ENTRY_BYTES;
+	}
+
+	static long time(Date date) {
+		return date == null ? Long.MAX_VALUE : date.getTime();
+	}
+
+	private static long[] insert(long[] array, int index, int size) {
+		long[] copy = new long[size + 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index, copy, index + 1, size - index);
+		return copy;
+	}
+
+	private static int[] insert(int[] array, int index, int size) {
+		int[] copy = new int[size + 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index, copy, index + 1, size - index);
+		return copy;
+	}
+
+	private static double[] insert(double[] array, int index, int size) {
+		double[] copy = new double[size + 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index, copy, index + 1, size - index);
+		return copy;
+	}
+
+	private static long[] remove(long[] array, int index, int size) {
+		long[] copy = new long[size - 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index + 1, copy, index, size - index - 1);
+		return copy;
+	}
+
+	private static int[] remove(int[] array, int index, int size) {
+		int[] copy = new int[size - 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index + 1, copy, index, size - index - 1);
+		return copy;
+	}
+
+	private static double[] remove(double[] array, int index, int size) {
+		double[] copy = new double[size - 1];
+		System.arraycopy(array, 0, copy, 0, index);
+		System.arraycopy(array, index + 1, copy, index, size - index - 1);
+		return copy;
+	}
+}
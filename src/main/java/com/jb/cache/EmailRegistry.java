@@ -0,0 +1,135 @@
+package com.jb.cache;
+
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CustomerRepository;
+
+/**
+ * This class keeps a Bloom filter of the company emails and of the customer
+ * emails so that the uniqueness check of a new email, which is new in almost
+ * every case, does not need a query. A positive answer is only a maybe and
+ * must be confirmed with existsByEmail, and the unique indexes stay the real
+ * guarantee. Until the filters are built every email may exist
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class EmailRegistry {
+
+	// Fields
+	private static final long MIN_EXPECTED_EMAILS = 1 << 20;
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
+	private final boolean enabled;
+	private final CompanyRepository companyRepository;
+	private final CustomerRepository customerRepository;
+
+	private final Filter companies = new Filter();
+	private final Filter customers = new Filter();
+
+	// Constructor
+	@Autowired
+	public EmailRegistry(@Value("${cs.email-filter.enabled:true}") boolean enabled,
+			CompanyRepository companyRepository, CustomerRepository customerRepository) {
+		this.enabled = enabled;
+		this.companyRepository = companyRepository;
+		this.customerRepository = customerRepository;
+	}
+
+	/**
+	 * This function builds both filters from the database once the application is
+	 * ready
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void rebuild() {
+		if (!enabled) {
+			return;
+		}
+		try (Stream<String> emails = companyRepository.streamAllEmails()) {
+			companies.rebuild(companyRepository.count(), emails);
+		}
+		try (Stream<String> emails = customerRepository.streamAllEmails()) {
+			customers.rebuild(customerRepository.count(), emails);
+		}
+	}
+
+	/**
+	 * @param email
+	 * @return false if no company uses this email and true if one may use it
+	 */
+	public boolean companyEmailMayExist(String email) {
+		return companies.mightContain(email);
+	}
+
+	public void companyEmailAdded(String email) {
+		companies.add(email);
+	}
+
+	/**
+	 * @param email
+	 * @return false if no customer uses this email and true if one may use it
+	 */
+	public boolean customerEmailMayExist(String email) {
+		return customers.mightContain(email);
+	}
+
+	public void customerEmailAdded(String email) {
+		customers.add(email);
+	}
+
+	/**
+	 * This function gives the form of an email that the unique indexes compare,
+	 * the email columns compare without case in MySQL
+	 * 
+	 * @param email
+	 * @return the email in lower case
+	 */
+	public static String normalize(String email) {
+		return email.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * The filter in use and the one being built, an email added during a rebuild
+	 * goes to both of them
+	 */
+	private static final class Filter {
+
+		private volatile BloomFilter ready;
+		private volatile BloomFilter building;
+
+		void rebuild(long count, Stream<String> emails) {
+			BloomFilter filter = new BloomFilter(Math.max(MIN_EXPECTED_EMAILS, 2 * count), FALSE_POSITIVE_RATE);
+			building = filter;
+			emails.forEach(email -> add(filter, email));
+			ready = filter;
+			building = null;
+		}
+
+		boolean mightContain(String email) {
+			BloomFilter filter = ready;
+			return email == null || filter == null || filter.mightContain(normalize(email));
+		}
+
+		void add(String email) {
+			add(ready, email);
+			add(building, email);
+		}
+
+		private static void add(BloomFilter filter, String email) {
+			if (filter != null && email != null) {
+				filter.add(normalize(email));
+			}
+		}
+	}
+}
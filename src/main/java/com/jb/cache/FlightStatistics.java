@@ -0,0 +1,43 @@
+package com.jb.cache;
+
+/**
+ * This class is the report of one query of the single flight layer returned to
+ * the admin : how many times the database was called, how many requests waited
+ * for a call already in flight instead, and how many of them stopped waiting
+ * and called the database themselves
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class FlightStatistics {
+
+	// Fields
+	private String name;
+	private long calls;
+	private long coalesced;
+	private long timeouts;
+
+	// Constructor
+	public FlightStatistics(String name, long calls, long coalesced, long timeouts) {
+		this.name = name;
+		this.calls = calls;
+		this.coalesced = coalesced;
+		this.timeouts = timeouts;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCalls() {
+		return calls;
+	}
+
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+}
@@ -0,0 +1,170 @@
+package com.jb.cache;
+
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This class keeps the hottest coupon lists already encoded in JSON, so a
+ * request whose list has not changed skips the query, the serialization of
+ * every coupon and of its company, and the compression. An entry is valid as
+ * long as the version of its scope in ScopeVersions has not moved, and the
+ * least recently used entries are dropped when their encoded bytes go above
+ * cs.response-cache.max-bytes. A list is encoded once per format asked by the
+ * clients : JSON, Smile or CBOR
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ResponseCache {
+
+	// Fields
+	public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+	public static final MediaType CBOR = new MediaType("application", "cbor");
+	private static final MediaType[] FORMATS = { MediaType.APPLICATION_JSON_UTF8, SMILE, CBOR };
+
+	private final Map<MediaType, ObjectMapper> objectMappers = new HashMap<>();
+	private final long maxBytes;
+	private final int gzipMinBytes;
+	private final Map<String, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long bytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+
+	// Constructor
+	@Autowired
+	public ResponseCache(ObjectMapper objectMapper, MappingJackson2SmileHttpMessageConverter smileConverter,
+			MappingJackson2CborHttpMessageConverter cborConverter,
+			@Value("${cs.response-cache.max-bytes:33554432}") long maxBytes,
+			@Value("${cs.response-cache.gzip-min-bytes:1024}") int gzipMinBytes) {
+		objectMappers.put(MediaType.APPLICATION_JSON_UTF8, objectMapper);
+		objectMappers.put(SMILE, smileConverter.getObjectMapper());
+		objectMappers.put(CBOR, cborConverter.getObjectMapper());
+		this.maxBytes = maxBytes;
+		this.gzipMinBytes = gzipMinBytes;
+	}
+
+	/**
+	 * This function chooses the format of a response from the Accept header of the
+	 * request, JSON when the header asks for none of the binary formats
+	 * 
+	 * @param accept : the Accept header, may be null
+	 * @return the media type of JSON, Smile or CBOR
+	 */
+	public static MediaType negotiate(String accept) {
+		if (accept == null) {
+			return MediaType.APPLICATION_JSON_UTF8;
+		}
+		try {
+			List<MediaType> acceptable = MediaType.parseMediaTypes(accept);
+			MediaType.sortBySpecificityAndQuality(acceptable);
+			for (MediaType mediaType : acceptable) {
+				for (MediaType format : FORMATS) {
+					if (mediaType.isCompatibleWith(format)) {
+						return format;
+					}
+				}
+			}
+		} catch (InvalidMediaTypeException e) {
+			// an invalid header is answered like a missing one
+		}
+		return MediaType.APPLICATION_JSON_UTF8;
+	}
+
+	/**
+	 * This function returns the encoded list of the key if it was encoded at the
+	 * given version, otherwise it loads the list, encodes it and keeps it
+	 * 
+	 * @param key     : the query and its parameters
+	 * @param version : the version of the scope of the list, read before loading
+	 *                it
+	 * @param format  : the result of negotiate
+	 * @param loader
+	 * @return CachedResponse
+	 * @throws E : the exception of the loader
+	 */
+	public <E extends Exception> CachedResponse get(String key, long version, MediaType format, Loader<E> loader)
+			throws E {
+		ObjectMapper objectMapper = objectMappers.get(format);
+		if (objectMapper == null) {
+			format = MediaType.APPLICATION_JSON_UTF8;
+			objectMapper = objectMappers.get(format);
+		}
+		key = format.getSubtype() + ' ' + key;
+		CachedResponse response;
+		synchronized (entries) {
+			response = entries.get(key);
+		}
+		if (response != null && response.getVersion() == version) {
+			hits.incrementAndGet();
+			return response;
+		}
+		misses.incrementAndGet();
+		List<?> list = loader.load();
+		try {
+			response = new CachedResponse(version, list.isEmpty(), format, objectMapper.writeValueAsBytes(list),
+					gzipMinBytes);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+		put(key, response);
+		return response;
+	}
+
+	/**
+	 * @return the counters of the cache, in the form of the second level cache
+	 *         regions
+	 */
+	public CacheStatistics.Region getStatistics() {
+		synchronized (entries) {
+			return new CacheStatistics.Region("responses", hits.get(), misses.get(), puts.get(), entries.size());
+		}
+	}
+
+	private void put(String key, CachedResponse response) {
+		synchronized (entries) {
+			CachedResponse previous = entries.get(key);
+			if (previous != null && previous.getVersion() > response.getVersion()) {
+				return;
+			}
+			if (previous != null) {
+				entries.remove(key);
+				bytes -= previous.size();
+			}
+			entries.put(key, response);
+			bytes += response.size();
+			puts.incrementAndGet();
+			Iterator<CachedResponse> eldest = entries.values().iterator();
+			while (bytes > maxBytes && eldest.hasNext()) {
+				bytes -= eldest.next().size();
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * The query of a list that is not in the cache
+	 */
+	@FunctionalInterface
+	public interface Loader<E extends Exception> {
+
+		List<?> load() throws E;
+	}
+}
@@ -0,0 +1,227 @@
+package com.jb.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class keeps the versions behind the ETag of the coupon lists : one for
+ * the whole catalog, one per company and one per customer. The write paths
+ * move them forward once their transaction is committed, so a version read
+ * before a query is never newer than the rows the query returns, and a request
+ * whose If-None-Match is the current version is answered with 304 without
+ * touching the database.
+ * 
+ * The coupons of a customer also change when their company updates them or
+ * when other customers buy them. Every coupon moves one of 65536 stripes
+ * forward and the version of a customer covers the stripes of the coupons of
+ * its last list, which is kept for the most recent customers. The versions
+ * follow the clock (milliseconds shifted left by 12 bits) so they change after
+ * a restart and give the Last-Modified date.
+ * 
+ * Only the most recently used companies and customers keep a version of their
+ * own. The others share the newest version among the ones forgotten, so
+ * a forgotten version never goes back in time
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ScopeVersions {
+
+	// Fields
+	private static final int COUNTER_BITS = 12;
+	private static final int STRIPES = 1 << 16;
+
+	private final AtomicLong clock = new AtomicLong(System.currentTimeMillis() << COUNTER_BITS);
+	private final long started = clock.get();
+	private final AtomicLong everything = new AtomicLong(started);
+	private final AtomicLong catalog = new AtomicLong(started);
+	private final Versions companies;
+	private final Versions customers;
+	private final AtomicLongArray coupons = new AtomicLongArray(STRIPES);
+	private final Map<Long, Wallet> wallets;
+
+	// Constructor
+	@Autowired
+	public ScopeVersions(@Value("${cs.etag.wallets:10000}") int maxWallets,
+			@Value("${cs.etag.companies:10000}") int maxCompanies,
+			@Value("${cs.etag.customers:100000}") int maxCustomers) {
+		this.companies = new Versions(maxCompanies, started);
+		this.customers = new Versions(maxCustomers, started);
+		this.wallets = new LinkedHashMap<Long, Wallet>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Wallet> eldest) {
+				return size() > maxWallets;
+			}
+		};
+	}
+
+	/**
+	 * This function moves forward the catalog, the company and the stripe of the
+	 * coupon, at the end of the current transaction
+	 * 
+	 * @param companyId
+	 * @param couponId
+	 */
+	public void couponChanged(long companyId, long couponId) {
+		TransactionHooks.afterCommit(() -> {
+			long version = next();
+			coupons.accumulateAndGet(stripe(couponId), version, Math::max);
+			companies.advance(companyId, version);
+			catalog.accumulateAndGet(version, Math::max);
+		});
+	}
+
+	/**
+	 * This function moves forward a customer whose coupons were added or removed
+	 * 
+	 * @param customerId
+	 */
+	public void customerChanged(long customerId) {
+		TransactionHooks.afterCommit(() -> customers.advance(customerId, next()));
+	}
+
+	/**
+	 * This function moves forward every version, for the changes of many coupons
+	 * at once
+	 */
+	public void changedAll() {
+		TransactionHooks.afterCommit(() -> everything.accumulateAndGet(next(), Math::max));
+	}
+
+	public long catalogVersion() {
+		return Math.max(everything.get(), catalog.get());
+	}
+
+	public long companyVersion(long companyId) {
+		return Math.max(everything.get(), companies.get(companyId));
+	}
+
+	/**
+	 * @param customerId
+	 * @return the version of the coupons of the customer, -1 when its last list
+	 *         is not known
+	 */
+	public long customerVersion(long customerId) {
+		long version = customers.get(customerId);
+		Wallet wallet;
+		synchronized (wallets) {
+			wallet = wallets.get(customerId);
+		}
+		if (wallet == null || wallet.version != version) {
+			return -1;
+		}
+		for (long couponId : wallet.couponIds) {
+			version = Math.max(version, coupons.get(stripe(couponId)));
+		}
+		return Math.max(everything.get(), version);
+	}
+
+	/**
+	 * This function keeps the coupons of a customer read from the database. It is
+	 * ignored if the customer has changed since the version read before the query
+	 * 
+	 * @param customerId
+	 * @param versionBefore : the result of customerBaseVersion before the query
+	 * @param list
+	 */
+	public void rememberCustomer(long customerId, long versionBefore, List<Coupon> list) {
+		long[] couponIds = new long[list.size()];
+		for (int i = 0; i < couponIds.length; i++) {
+			couponIds[i] = list.get(i).getId();
+		}
+		synchronized (wallets) {
+			if (customers.get(customerId) == versionBefore) {
+				wallets.put(customerId, new Wallet(versionBefore, couponIds));
+			}
+		}
+	}
+
+	/**
+	 * @param customerId
+	 * @return the version of the purchases of the customer only
+	 */
+	public long customerBaseVersion(long customerId) {
+		return customers.get(customerId);
+	}
+
+	public static String etag(long version) {
+		return "\"" + Long.toString(version, Character.MAX_RADIX) + "\"";
+	}
+
+	public static long lastModified(long version) {
+		return version >>> COUNTER_BITS;
+	}
+
+	private long next() {
+		long now = System.currentTimeMillis() << COUNTER_BITS;
+		return clock.updateAndGet(last -> Math.max(last + 1, now));
+	}
+
+	private static int stripe(long couponId) {
+		long h = couponId * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 48);
+	}
+
+	/**
+	 * The versions of the most recently used ids, the version of an id that is
+	 * not kept is the newest of the versions removed
+	 */
+	private static class Versions {
+
+		// Fields
+		private final Map<Long, Long> versions;
+		private long forgotten;
+
+		// Constructor
+		private Versions(int maxIds, long started) {
+			this.forgotten = started;
+			this.versions = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+					if (size() <= maxIds) {
+						return false;
+					}
+					forgotten = Math.max(forgotten, eldest.getValue());
+					return true;
+				}
+			};
+		}
+
+		private synchronized long get(long id) {
+			Long version = versions.get(id);
+			return version == null ? forgotten : version;
+		}
+
+		private synchronized void advance(long id, long version) {
+			versions.merge(id, version, Math::max);
+		}
+	}
+
+	private static class Wallet {
+
+		// Fields
+		private final long version;
+		private final long[] couponIds;
+
+		// Constructor
+		private Wallet(long version, long[] couponIds) {
+			this.version = version;
+			this.couponIds = couponIds;
+		}
+	}
+}
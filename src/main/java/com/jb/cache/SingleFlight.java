@@ -0,0 +1,171 @@
+package com.jb.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jb.routing.ReplicaRouter;
+
+/**
+ * This class lets identical queries running at the same time share a single
+ * call to the database : the first request runs the query and the others wait
+ * for its result, so a burst of the same catalog request costs one query. Each
+ * flight keeps the scope version read before its query started, and a request
+ * only waits for a flight at least as recent as the version it has read itself,
+ * otherwise it starts a new flight : a result stored in the response cache
+ * under a version is never older than that version. A request inside a
+ * transaction that writes always runs its own query so it sees its own
+ * writes. The reads sent to a replica share their results only with
+ * each other. A request that waits longer than cs.single-flight.timeout-millis
+ * runs the query itself.
+ * 
+ * The shared results are used by several requests at once and must not be
+ * modified
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class SingleFlight {
+
+	// Fields
+	private final long timeoutMillis;
+	private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+	private final Map<String, Counters> statistics = new ConcurrentHashMap<>();
+
+	// Constructor
+	@Autowired
+	public SingleFlight(@Value("${cs.single-flight.timeout-millis:2000}") long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * This function runs the query, or waits for the same query already running,
+	 * whatever version it started at
+	 * 
+	 * @param name       : the name of the query, the statistics are kept by name
+	 * @param parameters : the parameters of the query, equal parameters must have
+	 *                   equal toString
+	 * @param query
+	 * @return the result of the query
+	 * @throws E : the exception of the query
+	 */
+	public <T, E extends Exception> T run(String name, Object parameters, Query<T, E> query) throws E {
+		return run(name, parameters, Long.MIN_VALUE, query);
+	}
+
+	/**
+	 * This function runs the query, or waits for the same query already running
+	 * if it started at the version or after it
+	 * 
+	 * @param name       : the name of the query, the statistics are kept by name
+	 * @param parameters : the parameters of the query, equal parameters must have
+	 *                   equal toString
+	 * @param version    : the version of the scope of the query, read before
+	 *                   calling this function
+	 * @param query
+	 * @return the result of the query
+	 * @throws E : the exception of the query
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, E extends Exception> T run(String name, Object parameters, long version, Query<T, E> query)
+			throws E {
+		if (TransactionSynchronizationManager.isActualTransactionActive()
+				&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return query.run();
+		}
+		Counters counters = statistics.computeIfAbsent(name, Counters::new);
+		String key = (ReplicaRouter.isReadingReplica() ? "replica:" : "") + name + ':' + parameters;
+		Flight flight = new Flight(version);
+		Flight current = flights.merge(key, flight,
+				(running, started) -> running.version >= started.version ? running : started);
+		if (current == flight) {
+			counters.calls.increment();
+			try {
+				T result = query.run();
+				flight.result.complete(result);
+				return result;
+			} catch (Throwable e) {
+				flight.result.completeExceptionally(e);
+				throw e;
+			} finally {
+				flights.remove(key, flight);
+			}
+		}
+		counters.coalesced.increment();
+		try {
+			return (T) current.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			counters.timeouts.increment();
+			return query.run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return query.run();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (E) cause;
+		}
+	}
+
+	public List<FlightStatistics> getStatistics() {
+		List<FlightStatistics> report = new ArrayList<>();
+		for (Counters counters : statistics.values()) {
+			report.add(new FlightStatistics(counters.name, counters.calls.sum(), counters.coalesced.sum(),
+					counters.timeouts.sum()));
+		}
+		return report;
+	}
+
+	/**
+	 * A query that may be shared
+	 */
+	@FunctionalInterface
+	public interface Query<T, E extends Exception> {
+
+		T run() throws E;
+	}
+
+	/**
+	 * A query running and the version it started at
+	 */
+	private static class Flight {
+
+		private final long version;
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+		private Flight(long version) {
+			this.version = version;
+		}
+	}
+
+	private static class Counters {
+
+		// Fields
+		private final String name;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder coalesced = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+
+		// Constructor
+		private Counters(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.jb.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+import com.jb.repository.CouponRepository;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class keeps the wallet of the most recent customers: the ids of their
+ * coupons with the category, the price and the end date, so listing the coupons
+ * of a customer with or without a filter does not join customer_coupon and
+ * coupon again. The wallet is read with one query the first time, then
+ * purchases and changes of coupons are applied to it once their transaction is
+ * committed. The coupons themselves come from the second level cache. The least
+ * recently used wallets are dropped when their size goes above
+ * cs.wallet-cache.max-bytes
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class WalletCache {
+
+	// Fields
+	private static final int STRIPES = 1024;
+
+	private final CouponRepository couponRepository;
+	private final CouponBatchLoader couponBatchLoader;
+	private final long maxBytes;
+	private final Map<Long, CustomerWallet> wallets = new LinkedHashMap<>(64, 0.75f, true);
+	private long bytes;
+	private final AtomicLongArray customerChanges = new AtomicLongArray(STRIPES);
+	private final AtomicLong couponChanges = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+
+	// Constructor
+	@Autowired
+	public WalletCache(CouponRepository couponRepository, CouponBatchLoader couponBatchLoader,
+			@Value("${cs.wallet-cache.max-bytes:8388608}") long maxBytes) {
+		this.couponRepository = couponRepository;
+		this.couponBatchLoader = couponBatchLoader;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * This function returns the coupons of the customer accepted by the filter, in
+	 * the order of their ids
+	 * 
+	 * @param customerId
+	 * @param filter
+	 * @return List<Coupon>
+	 */
+	public List<Coupon> get(long customerId, Filter filter) {
+		CustomerWallet wallet = wallet(customerId);
+		List<Coupon> coupons = couponBatchLoader.loadAll(wallet.select(filter));
+		// The columns of the wallet can be older than the coupon, which has the
+		// last word
+		coupons.removeIf(coupon -> !filter.test(coupon.getCategory(), coupon.getPrice(),
+				CustomerWallet.time(coupon.getEndDate())));
+		return coupons;
+	}
+
+	/**
+	 * This function tells if the customer owns the coupon, from the ids of its
+	 * wallet alone
+	 * 
+	 * @param customerId
+	 * @param couponId
+	 * @return true if the coupon is in the wallet of the customer
+	 */
+	public boolean contains(long customerId, long couponId) {
+		return wallet(customerId).contains(couponId);
+	}
+
+	/**
+	 * This function adds a purchased coupon to the wallet of the customer at the
+	 * end of the current transaction
+	 * 
+	 * @param customerId
+	 * @param coupon
+	 */
+	public void couponPurchased(long customerId, Coupon coupon) {
+		long id = coupon.getId();
+		int category = coupon.getCategory();
+		double price = coupon.getPrice();
+		long endDate = CustomerWallet.time(coupon.getEndDate());
+		TransactionHooks.afterCommit(() -> {
+			synchronized (wallets) {
+				customerChanges.incrementAndGet(stripe(customerId));
+				CustomerWallet wallet = wallets.get(customerId);
+				if (wallet != null) {
+					replace(customerId, wallet, wallet.with(id, category, price, endDate));
+				}
+			}
+		});
+	}
+
+	/**
+	 * This function updates the columns of a coupon in every wallet that holds it,
+	 * at the end of the current transaction
+	 * 
+	 * @param coupon
+	 */
+	public void couponChanged(Coupon coupon) {
+		long id = coupon.getId();
+		int category = coupon.getCategory();
+		double price = coupon.getPrice();
+		long endDate = CustomerWallet.time(coupon.getEndDate());
+		TransactionHooks.afterCommit(() -> {
+			synchronized (wallets) {
+				couponChanges.incrementAndGet();
+				for (Map.Entry<Long, CustomerWallet> entry : wallets.entrySet()) {
+					if (entry.getValue().contains(id)) {
+						entry.setValue(entry.getValue().with(id, category, price, endDate));
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * This function removes a coupon from every wallet, at the end of the current
+	 * transaction
+	 * 
+	 * @param couponId
+	 */
+	public void couponRemoved(long couponId) {
+		TransactionHooks.afterCommit(() -> {
+			synchronized (wallets) {
+				couponChanges.incrementAndGet();
+				for (Map.Entry<Long, CustomerWallet> entry : wallets.entrySet()) {
+					CustomerWallet wallet = entry.getValue().without(couponId);
+					if (wallet != entry.getValue()) {
+						bytes += wallet.size() - entry.getValue().size();
+						entry.setValue(wallet);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * This function drops every wallet, for the changes of many coupons at once
+	 */
+	public void clear() {
+		TransactionHooks.afterCommit(() -> {
+			synchronized (wallets) {
+				couponChanges.incrementAndGet();
+				wallets.clear();
+				bytes = 0;
+			}
+		});
+	}
+
+	/**
+	 * @return the counters of the cache, in the form of the second level cache
+	 *         regions
+	 */
+	public CacheStatistics.Region getStatistics() {
+		synchronized (wallets) {
+			return new CacheStatistics.Region("wallets", hits.get(), misses.get(), puts.get(), wallets.size());
+		}
+	}
+
+	private CustomerWallet wallet(long customerId) {
+		CustomerWallet wallet;
+		synchronized (wallets) {
+			wallet = wallets.get(customerId);
+		}
+		if (wallet != null) {
+			hits.incrementAndGet();
+			return wallet;
+		}
+		misses.incrementAndGet();
+		return load(customerId);
+	}
+
+	/**
+	 * The wallet is kept only if neither the customer nor a coupon changed while
+	 * it was read
+	 */
+	private CustomerWallet load(long customerId) {
+		int stripe = stripe(customerId);
+		long customerBefore = customerChanges.get(stripe);
+		long couponsBefore = couponChanges.get();
+		CustomerWallet wallet = CustomerWallet.of(couponRepository.findWalletByCustomerId(customerId));
+		synchronized (wallets) {
+			if (customerChanges.get(stripe) == customerBefore && couponChanges.get() == couponsBefore) {
+				replace(customerId, wallets.get(customerId), wallet);
+				puts.incrementAndGet();
+			}
+		}
+		return wallet;
+	}
+
+	private void replace(long customerId, CustomerWallet previous, CustomerWallet wallet) {
+		if (previous != null) {
+			bytes -= previous.size();
+		}
+		wallets.put(customerId, wallet);
+		bytes += wallet.size();
+		Iterator<CustomerWallet> eldest = wallets.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			bytes -= eldest.next().size();
+			eldest.remove();
+		}
+	}
+
+	private static int stripe(long customerId) {
+		return (int) ((customerId * 0x9E3779B97F4A7C15L) >>> 54);
+	}
+
+	/**
+	 * The filter of a customer endpoint, applied to the columns of the wallet
+	 */
+	@FunctionalInterface
+	public interface Filter {
+
+		boolean test(int category, double price, long endDate);
+	}
+}
@@ -0,0 +1,124 @@
+package com.jb.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+@Entity
+@IdClass(CategoryStats.Key.class)
+@Table(name = "company_category_stats")
+public class CategoryStats {
+
+	@Id
+	@Column(name = "company_id")
+	private long companyId;
+	@Id
+	@Column(name = "category")
+	private int category;
+	@Column(name = "listed")
+	private long listed;
+	@Column(name = "units_remaining")
+	private long unitsRemaining;
+	@Column(name = "units_sold")
+	private long unitsSold;
+	@Column(name = "gross_cents")
+	private long grossCents;
+
+	public CategoryStats() {
+	}
+
+	public CategoryStats(long companyId, int category, long listed, long unitsRemaining, long unitsSold,
+			long grossCents) {
+		this.companyId = companyId;
+		this.category = category;
+		this.listed = listed;
+		this.unitsRemaining = unitsRemaining;
+		this.unitsSold = unitsSold;
+		this.grossCents = grossCents;
+	}
+
+	public long getCompanyId() {
+		return companyId;
+	}
+
+	public int getCategory() {
+		return category;
+	}
+
+	public long getListed() {
+		return listed;
+	}
+
+	public long getUnitsRemaining() {
+		return unitsRemaining;
+	}
+
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+
+	@JsonIgnore
+	public long getGrossCents() {
+		return grossCents;
+	}
+
+	public double getGrossValue() {
+		return grossCents / 100.0;
+	}
+
+	@Override
+	public String toString() {
+		return "CategoryStats [companyId=" + companyId + ", category=" + category + ", listed=" + listed
+				+ ", unitsRemaining=" + unitsRemaining + ", unitsSold=" + unitsSold + ", grossCents=" + grossCents
+				+ "]";
+	}
+
+	/**
+	 * The primary key of the table, a company and a category
+	 */
+	@SuppressWarnings("serial")
+	public static class Key implements Serializable {
+
+		private long companyId;
+		private int category;
+
+		public Key() {
+		}
+
+		public Key(long companyId, int category) {
+			this.companyId = companyId;
+			this.category = category;
+		}
+
+		public long getCompanyId() {
+			return companyId;
+		}
+
+		public int getCategory() {
+			return category;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(companyId) * 31 + category;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return companyId == other.companyId && category == other.category;
+		}
+	}
+}
@@ -13,12 +13,29 @@ import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Where;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 @Entity
+@JsonIgnoreProperties({ "hibernateLazyInitializer", "handler" })
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Where(clause = "deleted_millis IS NULL")
 @Table(name = "company")
 public class Company {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "company_id")
+	@GenericGenerator(name = "company_id", strategy = "enhanced-table", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "company"),
+			@Parameter(name = "increment_size", value = "100"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@Column(name = "id")
 	private long id;
 	@Column(name = "name")
@@ -27,6 +44,9 @@ public class Company {
 	private String email;
 	@Column(name = "password")
 	private String password;
+	@JsonIgnore
+	@Column(name = "deleted_millis", insertable = false, updatable = false)
+	private Long deletedMillis;
 
 	@OneToMany(mappedBy = "company", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<Coupon> coupons;
@@ -74,6 +94,10 @@ public class Company {
 		this.password = password;
 	}
 
+	public Long getDeletedMillis() {
+		return deletedMillis;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -7,6 +7,7 @@ import java.util.List;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -16,14 +17,31 @@ import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Where;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.jb.sync.CouponVersionListener;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Where(clause = "deleted_millis IS NULL")
+@DynamicUpdate
+@EntityListeners(CouponVersionListener.class)
 @Table(name = "coupon")
 public class Coupon {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "coupon_id")
+	@GenericGenerator(name = "coupon_id", strategy = "enhanced-table", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "coupon"),
+			@Parameter(name = "increment_size", value = "1000"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@Column(name = "id")
 	private long id;
 	@Column(name = "title")
@@ -42,6 +60,12 @@ public class Coupon {
 	private double price;
 	@Column(name = "image")
 	private String image;
+	@JsonIgnore
+	@Column(name = "deleted_millis", insertable = false, updatable = false)
+	private Long deletedMillis;
+	@JsonIgnore
+	@Column(name = "change_version")
+	private long changeVersion;
 
 	@ManyToOne(cascade = { CascadeType.DETACH, CascadeType.REFRESH })
 	@JoinColumn(name = "company_id")
@@ -140,6 +164,18 @@ public class Coupon {
 		this.image = image;
 	}
 
+	public Long getDeletedMillis() {
+		return deletedMillis;
+	}
+
+	public long getChangeVersion() {
+		return changeVersion;
+	}
+
+	public void setChangeVersion(long changeVersion) {
+		this.changeVersion = changeVersion;
+	}
+
 	public Company getCompany() {
 		return company;
 	}
@@ -0,0 +1,120 @@
+package com.jb.entity;
+
+import java.sql.Date;
+
+/**
+ * This class is not an entity, it holds the fields of a coupon that a company
+ * wants to change. A null field is left unchanged
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CouponPatch {
+
+	// Fields
+	private String title;
+	private Date startDate;
+	private Date endDate;
+	private Integer category;
+	private Integer amount;
+	private String description;
+	private Double price;
+	private String image;
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	public Integer getCategory() {
+		return category;
+	}
+
+	public void setCategory(Integer category) {
+		this.category = category;
+	}
+
+	public Integer getAmount() {
+		return amount;
+	}
+
+	public void setAmount(Integer amount) {
+		this.amount = amount;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public Double getPrice() {
+		return price;
+	}
+
+	public void setPrice(Double price) {
+		this.price = price;
+	}
+
+	public String getImage() {
+		return image;
+	}
+
+	public void setImage(String image) {
+		this.image = image;
+	}
+
+	/**
+	 * This function copies the non null fields into the coupon, hibernate then
+	 * only updates the columns whose value really changed
+	 * 
+	 * @param coupon
+	 */
+	public void applyTo(Coupon coupon) {
+		if (title != null) {
+			coupon.setTitle(title);
+		}
+		if (startDate != null) {
+			coupon.setStartDate(startDate);
+		}
+		if (endDate != null) {
+			coupon.setEndDate(endDate);
+		}
+		if (category != null) {
+			coupon.setCategory(category);
+		}
+		if (amount != null) {
+			coupon.setAmount(amount);
+		}
+		if (description != null) {
+			coupon.setDescription(description);
+		}
+		if (price != null) {
+			coupon.setPrice(price);
+		}
+		if (image != null) {
+			coupon.setImage(image);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.jb.entity;
+
+/**
+ * This class is not an entity, it is the answer for one id of a multi-get. The
+ * coupon is null and found is false when the id does not exist or belongs to
+ * another company
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CouponResult {
+
+	// Fields
+	private final long id;
+	private final Coupon coupon;
+
+	// Constructor
+	public CouponResult(long id, Coupon coupon) {
+		this.id = id;
+		this.coupon = coupon;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public boolean isFound() {
+		return coupon != null;
+	}
+
+	public Coupon getCoupon() {
+		return coupon;
+	}
+}
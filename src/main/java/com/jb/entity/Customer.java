@@ -15,12 +15,27 @@ import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Where;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Where(clause = "deleted_millis IS NULL")
 @Table(name = "customer")
 public class Customer {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "customer_id")
+	@GenericGenerator(name = "customer_id", strategy = "enhanced-table", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "customer"),
+			@Parameter(name = "increment_size", value = "100"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@Column(name = "id")
 	private long id;
 	@Column(name = "first_name")
@@ -31,6 +46,9 @@ public class Customer {
 	private String email;
 	@Column(name = "password")
 	private String password;
+	@JsonIgnore
+	@Column(name = "deleted_millis", insertable = false, updatable = false)
+	private Long deletedMillis;
 
 	@ManyToMany(cascade = { CascadeType.DETACH, CascadeType.MERGE, CascadeType.PERSIST, CascadeType.REFRESH })
 	@JoinTable(name = "customer_coupon", joinColumns = @JoinColumn(name = "customer_id"), inverseJoinColumns = @JoinColumn(name = "coupon_id"))
@@ -88,6 +106,10 @@ public class Customer {
 		this.password = password;
 	}
 
+	public Long getDeletedMillis() {
+		return deletedMillis;
+	}
+
 	public boolean add(Coupon coupon) {
 		return coupons.add(coupon);
 	}
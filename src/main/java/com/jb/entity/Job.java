@@ -0,0 +1,147 @@
+package com.jb.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+@Entity
+@Table(name = "job")
+public class Job {
+
+	public enum Type {
+		REMOVE_COMPANY, REMOVE_CUSTOMER, IMPORT_COMPANIES, IMPORT_CUSTOMERS
+	}
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private long id;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "type")
+	private Type type;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status")
+	private Status status;
+	@Column(name = "target_id")
+	private Long targetId;
+	@Column(name = "input_file")
+	private String inputFile;
+	@Column(name = "content_type")
+	private String contentType;
+	@Column(name = "progress")
+	private long progress;
+	@Column(name = "checkpoint")
+	private long checkpoint;
+	@Column(name = "message")
+	private String message;
+	@Column(name = "cancel_requested")
+	private boolean cancelRequested;
+	@Column(name = "created_millis")
+	private long createdMillis;
+	@Column(name = "started_millis")
+	private Long startedMillis;
+	@Column(name = "finished_millis")
+	private Long finishedMillis;
+
+	public Job() {
+	}
+
+	public Job(Type type, Long targetId, String inputFile, String contentType) {
+		this.type = type;
+		this.status = Status.QUEUED;
+		this.targetId = targetId;
+		this.inputFile = inputFile;
+		this.contentType = contentType;
+		this.createdMillis = System.currentTimeMillis();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Long getTargetId() {
+		return targetId;
+	}
+
+	@JsonIgnore
+	public String getInputFile() {
+		return inputFile;
+	}
+
+	@JsonIgnore
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getProgress() {
+		return progress;
+	}
+
+	@JsonIgnore
+	public long getCheckpoint() {
+		return checkpoint;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	public Long getStartedMillis() {
+		return startedMillis;
+	}
+
+	public Long getFinishedMillis() {
+		return finishedMillis;
+	}
+
+	/**
+	 * @return the running time of the job, 0 if it has not started
+	 */
+	public long getElapsedMillis() {
+		if (startedMillis == null) {
+			return 0;
+		}
+		return (finishedMillis == null ? System.currentTimeMillis() : finishedMillis) - startedMillis;
+	}
+
+	/**
+	 * @return the average progress per second since the job started
+	 */
+	public long getProgressPerSecond() {
+		long elapsed = getElapsedMillis();
+		return elapsed == 0 ? 0 : progress * 1000 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "Job [id=" + id + ", type=" + type + ", status=" + status + ", targetId=" + targetId + ", progress="
+				+ progress + ", message=" + message + "]";
+	}
+}
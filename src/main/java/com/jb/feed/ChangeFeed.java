@@ -0,0 +1,301 @@
+package com.jb.feed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.jb.entity.Coupon;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class pushes the changes of the coupons to the clients subscribed with
+ * server-sent events, so they do not have to poll the coupon lists. A client
+ * subscribes to the catalog (created, updated and removed coupons) or to the
+ * inventory (units left), of all the coupons or of one category or company.
+ * 
+ * The services only put the event in the buffer of every matching subscriber
+ * and never wait for a client. A buffer keeps one event per coupon, a newer
+ * change replaces the pending one. When a buffer is full the pending events are
+ * dropped and the subscriber is sent a RESYNC event telling it to reload the
+ * coupons. A send blocks on the socket of the client, so a subscriber that
+ * takes longer than the send timeout to accept one is disconnected by the
+ * heartbeat and the threads of the feed are not left waiting on it
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ChangeFeed {
+
+	public enum Topic {
+		CATALOG, INVENTORY
+	}
+
+	// Fields
+	public static final String RESYNC = "RESYNC";
+
+	private final int bufferSize;
+	private final long timeoutMillis;
+	private final long sendTimeoutMillis;
+	private final ExecutorService executor;
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final LongAdder published = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder resyncs = new LongAdder();
+	private final LongAdder slowDisconnects = new LongAdder();
+
+	// Constructor
+	@Autowired
+	public ChangeFeed(@Value("${cs.feed.buffer-size:256}") int bufferSize,
+			@Value("${cs.feed.timeout-millis:1800000}") long timeoutMillis,
+			@Value("${cs.feed.send-timeout-millis:5000}") long sendTimeoutMillis,
+			@Value("${cs.feed.threads:2}") int threads) {
+		this.bufferSize = bufferSize;
+		this.timeoutMillis = timeoutMillis;
+		this.sendTimeoutMillis = sendTimeoutMillis;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "change-feed-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * This function opens a new subscription
+	 * 
+	 * @param topic
+	 * @param category  : 0 for all the categories
+	 * @param companyId : 0 for all the companies
+	 * @return SseEmitter
+	 */
+	public SseEmitter subscribe(Topic topic, int category, long companyId) {
+		return subscribe(topic, category, companyId, new SseEmitter(timeoutMillis));
+	}
+
+	SseEmitter subscribe(Topic topic, int category, long companyId, SseEmitter emitter) {
+		Subscriber subscriber = new Subscriber(topic, category, companyId, emitter);
+		emitter.onCompletion(() -> subscribers.remove(subscriber));
+		emitter.onTimeout(() -> subscribers.remove(subscriber));
+		emitter.onError(error -> subscribers.remove(subscriber));
+		subscribers.add(subscriber);
+		// The first comment sends the response headers to the client
+		subscriber.ping();
+		return emitter;
+	}
+
+	public void couponCreated(Coupon coupon) {
+		publish(Topic.CATALOG, CouponEvent.Type.CREATED, coupon.getId(), companyId(coupon), coupon.getCategory(),
+				coupon.getAmount());
+		publish(Topic.INVENTORY, CouponEvent.Type.STOCK, coupon.getId(), companyId(coupon), coupon.getCategory(),
+				coupon.getAmount());
+	}
+
+	public void couponUpdated(Coupon coupon, int previousAmount) {
+		publish(Topic.CATALOG, CouponEvent.Type.UPDATED, coupon.getId(), companyId(coupon), coupon.getCategory(),
+				coupon.getAmount());
+		if (coupon.getAmount() != previousAmount) {
+			publish(Topic.INVENTORY, CouponEvent.Type.STOCK, coupon.getId(), companyId(coupon), coupon.getCategory(),
+					coupon.getAmount());
+		}
+	}
+
+	public void couponRemoved(long couponId, long companyId, int category) {
+		publish(Topic.CATALOG, CouponEvent.Type.REMOVED, couponId, companyId, category, 0);
+		publish(Topic.INVENTORY, CouponEvent.Type.STOCK, couponId, companyId, category, 0);
+	}
+
+	public void couponPurchased(Coupon coupon) {
+		publish(Topic.INVENTORY, CouponEvent.Type.STOCK, coupon.getId(), companyId(coupon), coupon.getCategory(),
+				coupon.getAmount());
+	}
+
+	/**
+	 * This function sends a comment to the idle subscribers so that the closed
+	 * connections are detected and removed, and disconnects the subscribers
+	 * stuck in a send for longer than the send timeout
+	 */
+	@Scheduled(fixedDelayString = "${cs.feed.heartbeat-millis:15000}")
+	public void heartbeat() {
+		long now = System.currentTimeMillis();
+		for (Subscriber subscriber : subscribers) {
+			long sending = subscriber.sendingSince;
+			if (sending != 0 && now - sending > sendTimeoutMillis) {
+				subscribers.remove(subscriber);
+				slowDisconnects.increment();
+				subscriber.emitter.completeWithError(new IOException(
+						String.format("The subscriber took more than %d ms to accept an event", sendTimeoutMillis)));
+			} else {
+				subscriber.ping();
+			}
+		}
+	}
+
+	public FeedStatistics getStatistics() {
+		return new FeedStatistics(subscribers.size(), published.sum(), delivered.sum(), coalesced.sum(),
+				dropped.sum(), resyncs.sum(), slowDisconnects.sum());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for (Subscriber subscriber : subscribers) {
+			subscriber.emitter.complete();
+		}
+		executor.shutdownNow();
+	}
+
+	private static long companyId(Coupon coupon) {
+		return coupon.getCompany() == null ? 0 : coupon.getCompany().getId();
+	}
+
+	// The event is sent once the transaction of the change is committed
+	private void publish(Topic topic, CouponEvent.Type type, long couponId, long companyId, int category,
+			int amount) {
+		if (subscribers.isEmpty()) {
+			return;
+		}
+		CouponEvent event = new CouponEvent(sequence.incrementAndGet(), type, couponId, companyId, category, amount,
+				System.currentTimeMillis());
+		TransactionHooks.afterCommit(() -> dispatch(topic, event));
+	}
+
+	private void dispatch(Topic topic, CouponEvent event) {
+		published.increment();
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.accepts(topic, event)) {
+				subscriber.offer(event);
+			}
+		}
+	}
+
+	private class Subscriber {
+
+		// Fields
+		private final Topic topic;
+		private final int category;
+		private final long companyId;
+		private final SseEmitter emitter;
+
+		// Guarded by this
+		private final Map<Long, CouponEvent> pending = new LinkedHashMap<>();
+		private boolean overflowed;
+		private boolean ping;
+		private boolean scheduled;
+
+		// The start of the send in progress, 0 between the sends
+		private volatile long sendingSince;
+
+		// Constructor
+		private Subscriber(Topic topic, int category, long companyId, SseEmitter emitter) {
+			this.topic = topic;
+			this.category = category;
+			this.companyId = companyId;
+			this.emitter = emitter;
+		}
+
+		private boolean accepts(Topic topic, CouponEvent event) {
+			return this.topic == topic && (category == 0 || category == event.getCategory())
+					&& (companyId == 0 || companyId == event.getCompanyId());
+		}
+
+		private void offer(CouponEvent event) {
+			synchronized (this) {
+				if (overflowed) {
+					dropped.increment();
+					return;
+				}
+				if (pending.put(event.getCouponId(), event) != null) {
+					coalesced.increment();
+				} else if (pending.size() > bufferSize) {
+					dropped.add(pending.size());
+					pending.clear();
+					overflowed = true;
+				}
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			executor.execute(this::drain);
+		}
+
+		private void ping() {
+			synchronized (this) {
+				ping = true;
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			executor.execute(this::drain);
+		}
+
+		// Only one drain runs at a time for a subscriber, the changes made while it
+		// sends are coalesced in the buffer
+		private void drain() {
+			while (true) {
+				List<CouponEvent> events;
+				boolean resync;
+				boolean comment;
+				synchronized (this) {
+					if (pending.isEmpty() && !overflowed && !ping) {
+						scheduled = false;
+						return;
+					}
+					events = new ArrayList<>(pending.values());
+					pending.clear();
+					resync = overflowed;
+					overflowed = false;
+					comment = ping && events.isEmpty() && !resync;
+					ping = false;
+				}
+				try {
+					if (resync) {
+						send(SseEmitter.event().name(RESYNC).data(""));
+						resyncs.increment();
+					}
+					for (CouponEvent event : events) {
+						send(SseEmitter.event().id(Long.toString(event.getSequence()))
+								.name(event.getType().name()).data(event, MediaType.APPLICATION_JSON));
+						delivered.increment();
+					}
+					if (comment) {
+						send(SseEmitter.event().comment("heartbeat"));
+					}
+				} catch (IOException | IllegalStateException e) {
+					sendingSince = 0;
+					if (subscribers.remove(this)) {
+						emitter.completeWithError(e);
+					}
+					return;
+				}
+				sendingSince = 0;
+			}
+		}
+
+		private void send(SseEmitter.SseEventBuilder event) throws IOException {
+			sendingSince = System.currentTimeMillis();
+			emitter.send(event);
+		}
+	}
+}
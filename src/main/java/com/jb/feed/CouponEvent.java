@@ -0,0 +1,68 @@
+package com.jb.feed;
+
+/**
+ * This class is a change of a coupon sent to the subscribers of the change
+ * feed. Only the last change of a coupon is kept while a subscriber is behind,
+ * so a client applies every event as the latest state of the coupon
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CouponEvent {
+
+	public enum Type {
+		CREATED, UPDATED, REMOVED, STOCK
+	}
+
+	// Fields
+	private long sequence;
+	private Type type;
+	private long couponId;
+	private long companyId;
+	private int category;
+	private int amount;
+	private long timestampMillis;
+
+	// Constructor
+	public CouponEvent(long sequence, Type type, long couponId, long companyId, int category, int amount,
+			long timestampMillis) {
+		this.sequence = sequence;
+		this.type = type;
+		this.couponId = couponId;
+		this.companyId = companyId;
+		this.category = category;
+		this.amount = amount;
+		this.timestampMillis = timestampMillis;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long getCouponId() {
+		return couponId;
+	}
+
+	public long getCompanyId() {
+		return companyId;
+	}
+
+	public int getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return the number of units left after the change, 0 for a removed coupon
+	 */
+	public int getAmount() {
+		return amount;
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
+	}
+}
@@ -0,0 +1,74 @@
+package com.jb.feed;
+
+/**
+ * This class is the report of the change feed returned to the admin
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class FeedStatistics {
+
+	// Fields
+	private int subscribers;
+	private long published;
+	private long delivered;
+	private long coalesced;
+	private long dropped;
+	private long resyncs;
+	private long slowDisconnects;
+
+	// Constructor
+	public FeedStatistics(int subscribers, long published, long delivered, long coalesced, long dropped,
+			long resyncs, long slowDisconnects) {
+		this.subscribers = subscribers;
+		this.published = published;
+		this.delivered = delivered;
+		this.coalesced = coalesced;
+		this.dropped = dropped;
+		this.resyncs = resyncs;
+		this.slowDisconnects = slowDisconnects;
+	}
+
+	public int getSubscribers() {
+		return subscribers;
+	}
+
+	public long getPublished() {
+		return published;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return the events replaced by a later change of the same coupon before
+	 *         they were sent
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * @return the events thrown away because a subscriber was too far behind
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return the number of times a subscriber was told to reload the coupons
+	 *         after events were dropped
+	 */
+	public long getResyncs() {
+		return resyncs;
+	}
+
+	/**
+	 * @return the number of subscribers disconnected because a send to them took
+	 *         longer than the send timeout
+	 */
+	public long getSlowDisconnects() {
+		return slowDisconnects;
+	}
+}
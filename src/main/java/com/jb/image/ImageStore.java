@@ -0,0 +1,313 @@
+package com.jb.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.rest.ex.InvalidImageException;
+
+/**
+ * This class keeps the images of the coupons in files named by the SHA-256 of
+ * their content, so Coupon.image only holds the hash, the same image uploaded
+ * twice is stored once and a file never changes once written. The files are
+ * spread in 256 directories by the first byte of the hash.
+ * 
+ * A thumbnail of every image is made once in a background pool, the first time
+ * the image is stored or asked for
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ImageStore {
+
+	// Fields
+	private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+	private static final String DATA_URI = "data:image/";
+	private static final String BASE64 = ";base64,";
+	private static final String THUMBNAIL = "thumb.";
+	private static final int HEADER_BYTES = 12;
+
+	private final Path directory;
+	private final long maxBytes;
+	private final long maxPixels;
+	private final int thumbnailSize;
+	private final ExecutorService executor;
+	private final Set<String> pendingThumbnails = ConcurrentHashMap.newKeySet();
+
+	// Constructor
+	@Autowired
+	public ImageStore(@Value("${cs.images.directory:${java.io.tmpdir}/cs-images}") String directory,
+			@Value("${cs.images.max-bytes:5242880}") long maxBytes,
+			@Value("${cs.images.max-pixels:40000000}") long maxPixels,
+			@Value("${cs.images.thumbnail-size:240}") int thumbnailSize,
+			@Value("${cs.images.threads:2}") int threads) {
+		this.directory = Paths.get(directory);
+		this.maxBytes = maxBytes;
+		this.maxPixels = maxPixels;
+		this.thumbnailSize = thumbnailSize;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "image-thumbnails-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		Files.createDirectories(directory.resolve("tmp"));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * This function writes an image in the store and schedules its thumbnail
+	 * 
+	 * @param in : the bytes of a PNG, JPEG, GIF or WEBP image
+	 * @return the hash of the image, to be put in Coupon.image
+	 * @throws IOException
+	 * @throws InvalidImageException : if the image is too large, in bytes or in
+	 *                               pixels, or not in one of the accepted formats
+	 */
+	public String store(InputStream in) throws IOException, InvalidImageException {
+		MessageDigest digest = sha256();
+		Path temporary = Files.createTempFile(directory.resolve("tmp"), "upload", null);
+		try {
+			byte[] header = new byte[HEADER_BYTES];
+			int headerLength = 0;
+			long length = 0;
+			try (InputStream digested = new DigestInputStream(in, digest);
+					OutputStream out = Files.newOutputStream(temporary)) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = digested.read(buffer)) != -1) {
+					if (headerLength < HEADER_BYTES) {
+						int copied = Math.min(read, HEADER_BYTES - headerLength);
+						System.arraycopy(buffer, 0, header, headerLength, copied);
+						headerLength += copied;
+					}
+					length += read;
+					if (length > maxBytes) {
+						throw new InvalidImageException(String.format("The image is larger than %d bytes", maxBytes));
+					}
+					out.write(buffer, 0, read);
+				}
+			}
+			ImageType type = ImageType.of(header, headerLength);
+			if (type == null) {
+				throw new InvalidImageException("The image is not a PNG, JPEG, GIF or WEBP image");
+			}
+			if (type != ImageType.WEBP) {
+				checkPixels(temporary);
+			}
+			String hash = toHex(digest.digest());
+			Path target = path(hash, type.getExtension());
+			if (!Files.exists(target)) {
+				Files.createDirectories(target.getParent());
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+			}
+			if (type != ImageType.WEBP) {
+				scheduleThumbnail(hash, target);
+			}
+			return hash;
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * This function moves an image given inline as a base64 data URI into the
+	 * store, so it is not kept in the coupon row. Any other value is returned as
+	 * it is
+	 * 
+	 * @param image : the value of Coupon.image
+	 * @return the hash of the image if it was a data URI, otherwise the value
+	 * @throws InvalidImageException : if the data URI is not base64 or its image
+	 *                               is rejected by store()
+	 */
+	public String intern(String image) throws InvalidImageException {
+		if (image == null || !image.startsWith(DATA_URI)) {
+			return image;
+		}
+		int data = image.indexOf(BASE64);
+		if (data < 0) {
+			throw new InvalidImageException("The image data URI is not base64");
+		}
+		byte[] bytes;
+		try {
+			bytes = Base64.getMimeDecoder().decode(image.substring(data + BASE64.length()));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidImageException("The image data URI is not valid base64");
+		}
+		try {
+			return store(new ByteArrayInputStream(bytes));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * This function finds an image or its thumbnail. When the thumbnail is not
+	 * made yet, it is scheduled and the image itself is returned
+	 * 
+	 * @param hash
+	 * @param thumbnail
+	 * @return StoredImage, null if there is no image with this hash
+	 * @throws IOException
+	 */
+	public StoredImage find(String hash, boolean thumbnail) throws IOException {
+		if (hash == null || !HASH.matcher(hash).matches()) {
+			return null;
+		}
+		for (ImageType type : ImageType.values()) {
+			Path original = path(hash, type.getExtension());
+			if (!Files.isRegularFile(original)) {
+				continue;
+			}
+			if (thumbnail && type != ImageType.WEBP) {
+				for (ImageType thumbnailType : new ImageType[] { ImageType.JPEG, ImageType.PNG }) {
+					Path path = path(hash, THUMBNAIL + thumbnailType.getExtension());
+					if (Files.isRegularFile(path)) {
+						return new StoredImage(path, thumbnailType.getMediaType(), "\"" + hash + "-thumbnail\"",
+								Files.size(path));
+					}
+				}
+				scheduleThumbnail(hash, original);
+			}
+			return new StoredImage(original, type.getMediaType(), "\"" + hash + "\"", Files.size(original));
+		}
+		return null;
+	}
+
+	private void scheduleThumbnail(String hash, Path original) {
+		if (!pendingThumbnails.add(hash)) {
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				writeThumbnail(hash, original);
+			} catch (IOException | RuntimeException e) {
+				// The image itself is served instead of its thumbnail
+			} finally {
+				pendingThumbnails.remove(hash);
+			}
+		});
+	}
+
+	private void writeThumbnail(String hash, Path original) throws IOException {
+		if (Files.exists(path(hash, THUMBNAIL + ImageType.JPEG.getExtension()))
+				|| Files.exists(path(hash, THUMBNAIL + ImageType.PNG.getExtension()))) {
+			return;
+		}
+		try {
+			checkPixels(original);
+		} catch (InvalidImageException e) {
+			// Stored before the limit, it is never decoded
+			return;
+		}
+		BufferedImage image = ImageIO.read(original.toFile());
+		if (image == null) {
+			return;
+		}
+		double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+		int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+		boolean alpha = image.getColorModel().hasAlpha();
+		BufferedImage thumbnail = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = thumbnail.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		ImageType type = alpha ? ImageType.PNG : ImageType.JPEG;
+		Path temporary = Files.createTempFile(directory.resolve("tmp"), "thumbnail", null);
+		try {
+			ImageIO.write(thumbnail, type == ImageType.PNG ? "png" : "jpeg", temporary.toFile());
+			Files.move(temporary, path(hash, THUMBNAIL + type.getExtension()), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * The size of the image is read from its header, a small file can decode to
+	 * gigabytes of pixels
+	 */
+	private void checkPixels(Path path) throws IOException, InvalidImageException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+			Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext()) {
+				throw new InvalidImageException("The image cannot be read");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+				if (pixels > maxPixels) {
+					throw new InvalidImageException(String.format("The image has more than %d pixels", maxPixels));
+				}
+			} catch (IOException e) {
+				throw new InvalidImageException("The image cannot be read");
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private Path path(String hash, String extension) {
+		return directory.resolve(hash.substring(0, 2)).resolve(hash + "." + extension);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,55 @@
+package com.jb.image;
+
+/**
+ * The formats of the images accepted by the image store, recognized from their
+ * first bytes and not from the Content-Type given by the client
+ * 
+ * @author Solal Arroues
+ *
+ */
+public enum ImageType {
+
+	PNG("image/png", "png"), JPEG("image/jpeg", "jpg"), GIF("image/gif", "gif"), WEBP("image/webp", "webp");
+
+	// Fields
+	private final String mediaType;
+	private final String extension;
+
+	// Constructor
+	private ImageType(String mediaType, String extension) {
+		this.mediaType = mediaType;
+		this.extension = extension;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * This function recognizes the format of an image from its first 12 bytes
+	 * 
+	 * @param header
+	 * @param length : the number of bytes read in header
+	 * @return ImageType, null when it is not an accepted format
+	 */
+	public static ImageType of(byte[] header, int length) {
+		if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+			return PNG;
+		}
+		if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+			return JPEG;
+		}
+		if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+			return GIF;
+		}
+		if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+				&& header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+			return WEBP;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,71 @@
+package com.jb.image;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is an image or a thumbnail found in the image store. Its content
+ * never changes, so its hash is a strong ETag
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class StoredImage {
+
+	// Fields
+	private final Path path;
+	private final String mediaType;
+	private final String etag;
+	private final long length;
+
+	// Constructor
+	public StoredImage(Path path, String mediaType, String etag, long length) {
+		this.path = path;
+		this.mediaType = mediaType;
+		this.etag = etag;
+		this.length = length;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * This function copies a part of the file with FileChannel.transferTo, which
+	 * lets the kernel send the file without copying it into the heap when the
+	 * target is a socket
+	 * 
+	 * @param target
+	 * @param start
+	 * @param count
+	 * @throws IOException
+	 */
+	public void transferTo(WritableByteChannel target, long start, long count) throws IOException {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			long position = start;
+			long end = start + count;
+			while (position < end) {
+				long sent = file.transferTo(position, end - position, target);
+				if (sent <= 0) {
+					throw new IOException("The image " + path.getFileName() + " is shorter than expected");
+				}
+				position += sent;
+			}
+		}
+	}
+}
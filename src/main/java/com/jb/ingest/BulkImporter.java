@@ -0,0 +1,451 @@
+package com.jb.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jb.cache.EmailRegistry;
+import com.jb.cache.ScopeVersions;
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+import com.jb.entity.Customer;
+import com.jb.image.ImageStore;
+import com.jb.journal.PurchaseJournal;
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CustomerRepository;
+import com.jb.rest.ex.InvalidImageException;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+import com.jb.stock.StockCounters;
+
+/**
+ * This class inserts a large number of companies, customers or coupons from a
+ * JSON array or a CSV stream. The stream is read one row at a time and the rows
+ * are committed in chunks, every chunk is validated with a single query and
+ * written with JDBC batches
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Service
+public class BulkImporter {
+
+	// Fields
+	public static final String CSV = "text/csv";
+	private static final int CHUNK_SIZE = 1000;
+
+	private final CompanyRepository companyRepository;
+	private final CustomerRepository customerRepository;
+	private final CouponRepository couponRepository;
+	private final CouponSearchIndex couponSearchIndex;
+	private final EmailRegistry emailRegistry;
+	private final CompanyStats companyStats;
+	private final PurchaseJournal purchaseJournal;
+	private final ScopeVersions scopeVersions;
+	private final ImageStore imageStore;
+	private final StockCounters stockCounters;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// Constructor
+	@Autowired
+	public BulkImporter(CompanyRepository companyRepository, CustomerRepository customerRepository,
+			CouponRepository couponRepository, CouponSearchIndex couponSearchIndex, EmailRegistry emailRegistry,
+			CompanyStats companyStats, PurchaseJournal purchaseJournal, ScopeVersions scopeVersions,
+			ImageStore imageStore, StockCounters stockCounters, PlatformTransactionManager transactionManager,
+			ObjectMapper objectMapper) {
+		this.companyRepository = companyRepository;
+		this.customerRepository = customerRepository;
+		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.emailRegistry = emailRegistry;
+		this.companyStats = companyStats;
+		this.purchaseJournal = purchaseJournal;
+		this.scopeVersions = scopeVersions;
+		this.imageStore = imageStore;
+		this.stockCounters = stockCounters;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * This function imports companies, a company whose email already exists in
+	 * the database or earlier in the stream, in any case, is rejected
+	 * 
+	 * @param in
+	 * @param contentType : text/csv or application/json
+	 * @param skipRows    : number of rows already imported by a previous run
+	 * @param progress    : called after every committed chunk, may be null
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	public ImportReport importCompanies(InputStream in, String contentType, long skipRows,
+			Consumer<ImportReport> progress) throws IOException {
+		Set<String> seenEmails = new HashSet<>();
+		ChunkWriter<Company> writer = new ChunkWriter<Company>() {
+
+			@Override
+			public List<Record<Company>> accept(List<Record<Company>> chunk, ImportReport report) {
+				return acceptNewEmails(chunk, report, Company::getEmail, companyRepository::findExistingEmails,
+						seenEmails);
+			}
+
+			@Override
+			public List<Company> save(List<Company> companies) {
+				for (Company company : companies) {
+					company.setId(0);
+				}
+				List<Company> saved = companyRepository.saveAll(companies);
+				companyRepository.flush();
+				return saved;
+			}
+		};
+		Iterator<Record<Company>> rows = records(in, contentType, Company.class, this::toCompany);
+		return ingest(rows, skipRows, progress, writer, saved -> {
+			for (Company company : saved) {
+				emailRegistry.companyEmailAdded(company.getEmail());
+			}
+		});
+	}
+
+	/**
+	 * This function imports customers, a customer whose email already exists in
+	 * the database or earlier in the stream, in any case, is rejected
+	 * 
+	 * @param in
+	 * @param contentType : text/csv or application/json
+	 * @param skipRows    : number of rows already imported by a previous run
+	 * @param progress    : called after every committed chunk, may be null
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	public ImportReport importCustomers(InputStream in, String contentType, long skipRows,
+			Consumer<ImportReport> progress) throws IOException {
+		Set<String> seenEmails = new HashSet<>();
+		ChunkWriter<Customer> writer = new ChunkWriter<Customer>() {
+
+			@Override
+			public List<Record<Customer>> accept(List<Record<Customer>> chunk, ImportReport report) {
+				return acceptNewEmails(chunk, report, Customer::getEmail, customerRepository::findExistingEmails,
+						seenEmails);
+			}
+
+			@Override
+			public List<Customer> save(List<Customer> customers) {
+				for (Customer customer : customers) {
+					customer.setId(0);
+				}
+				List<Customer> saved = customerRepository.saveAll(customers);
+				customerRepository.flush();
+				return saved;
+			}
+		};
+		Iterator<Record<Customer>> rows = records(in, contentType, Customer.class, this::toCustomer);
+		return ingest(rows, skipRows, progress, writer, saved -> {
+			for (Customer customer : saved) {
+				emailRegistry.customerEmailAdded(customer.getEmail());
+			}
+		});
+	}
+
+	/**
+	 * This function imports the coupons of a company, a coupon with a category
+	 * that does not exist, a price that is not positive, a negative amount or an
+	 * inline image that is not valid is rejected. The coupons are added to the
+	 * search index after every chunk and their inline images are moved to the
+	 * image store
+	 * 
+	 * @param companyId
+	 * @param in
+	 * @param contentType : text/csv or application/json
+	 * @param skipRows    : number of rows already imported by a previous run
+	 * @param progress    : called after every committed chunk, may be null
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	public ImportReport importCoupons(long companyId, InputStream in, String contentType, long skipRows,
+			Consumer<ImportReport> progress) throws IOException {
+		ChunkWriter<Coupon> writer = new ChunkWriter<Coupon>() {
+
+			@Override
+			public List<Record<Coupon>> accept(List<Record<Coupon>> chunk, ImportReport report) {
+				return acceptCoupons(chunk, report);
+			}
+
+			@Override
+			public List<Coupon> save(List<Coupon> coupons) {
+				Company company = entityManager.getReference(Company.class, companyId);
+				for (Coupon coupon : coupons) {
+					coupon.setId(0);
+					coupon.setCompany(company);
+				}
+				List<Coupon> saved = couponRepository.saveAll(coupons);
+				couponRepository.flush();
+				return saved;
+			}
+		};
+		Iterator<Record<Coupon>> rows = records(in, contentType, Coupon.class, this::toCoupon);
+		return ingest(rows, skipRows, progress, writer, saved -> {
+			couponSearchIndex.indexAll(saved);
+			for (Coupon coupon : saved) {
+				companyStats.couponAdded(companyId, coupon);
+				purchaseJournal.inventoryChanged(coupon.getId(), coupon.getAmount());
+				stockCounters.amountChanged(coupon.getId(), coupon.getAmount());
+				scopeVersions.couponChanged(companyId, coupon.getId());
+			}
+		});
+	}
+
+	private <T> List<Record<T>> acceptNewEmails(List<Record<T>> chunk, ImportReport report,
+			Function<T, String> email, Function<Collection<String>, List<String>> findExistingEmails,
+			Set<String> seenEmails) {
+		Set<String> existing = new HashSet<>();
+		for (String found : findExistingEmails.apply(emails(chunk, email))) {
+			existing.add(EmailRegistry.normalize(found));
+		}
+		List<Record<T>> accepted = new ArrayList<>(chunk.size());
+		for (Record<T> record : chunk) {
+			String value = email.apply(record.value);
+			String normalized = value == null ? null : EmailRegistry.normalize(value);
+			if (normalized == null || existing.contains(normalized) || !seenEmails.add(normalized)) {
+				report.reject(record.line, String.format("This email : %s , is already exists", value));
+				continue;
+			}
+			accepted.add(record);
+		}
+		return accepted;
+	}
+
+	private List<Record<Coupon>> acceptCoupons(List<Record<Coupon>> chunk, ImportReport report) {
+		List<Record<Coupon>> accepted = new ArrayList<>(chunk.size());
+		for (Record<Coupon> record : chunk) {
+			Coupon coupon = record.value;
+			if (coupon.getCategory() > 8 || coupon.getCategory() < 1) {
+				report.reject(record.line,
+						String.format("This category : %d, is not exists", coupon.getCategory()));
+			} else if (coupon.getPrice() <= 0) {
+				report.reject(record.line, "Invalid price : " + coupon.getPrice());
+			} else if (coupon.getAmount() < 0) {
+				report.reject(record.line, "Invalid amount : " + coupon.getAmount());
+			} else {
+				try {
+					coupon.setImage(imageStore.intern(coupon.getImage()));
+				} catch (InvalidImageException e) {
+					report.reject(record.line, e.getMessage());
+					continue;
+				}
+				accepted.add(record);
+			}
+		}
+		return accepted;
+	}
+
+	private <T> ImportReport ingest(Iterator<Record<T>> records, long skipRows, Consumer<ImportReport> progress,
+			ChunkWriter<T> writer, Consumer<List<T>> afterCommit) {
+		ImportReport report = new ImportReport();
+		List<Record<T>> chunk = new ArrayList<>(CHUNK_SIZE);
+		try {
+			for (long skipped = 0; skipped < skipRows && records.hasNext(); skipped++) {
+				records.next();
+			}
+			while (records.hasNext()) {
+				Record<T> record = records.next();
+				report.read();
+				if (record.error != null) {
+					report.reject(record.line, record.error);
+					continue;
+				}
+				chunk.add(record);
+				if (chunk.size() == CHUNK_SIZE) {
+					commit(chunk, report, progress, writer, afterCommit);
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				commit(chunk, report, progress, writer, afterCommit);
+			}
+		} catch (UncheckedIOException e) {
+			// The stream cannot be read any further, the committed chunks are kept
+			report.reject(report.getRead() + 1, "Unreadable input : " + e.getCause().getMessage());
+		} finally {
+			report.finish();
+		}
+		return report;
+	}
+
+	private <T> void commit(List<Record<T>> chunk, ImportReport report, Consumer<ImportReport> progress,
+			ChunkWriter<T> writer, Consumer<List<T>> afterCommit) {
+		List<Record<T>> accepted = new ArrayList<>(chunk.size());
+		List<T> saved;
+		try {
+			saved = transactionTemplate.execute(status -> {
+				accepted.addAll(writer.accept(chunk, report));
+				return save(writer, values(accepted));
+			});
+		} catch (DataIntegrityViolationException e) {
+			// A row the checks let through, a concurrent signup with the same email for
+			// example, is found again row by row so that the other rows are kept
+			saved = new ArrayList<>(accepted.size());
+			for (Record<T> record : accepted) {
+				try {
+					saved.addAll(transactionTemplate
+							.execute(status -> save(writer, Collections.singletonList(record.value))));
+				} catch (DataIntegrityViolationException rejected) {
+					report.reject(record.line,
+							"Rejected by the database : " + rejected.getMostSpecificCause().getMessage());
+				}
+			}
+		}
+		report.committed(saved.size());
+		if (afterCommit != null) {
+			afterCommit.accept(saved);
+		}
+		if (progress != null) {
+			progress.accept(report);
+		}
+	}
+
+	private <T> List<T> save(ChunkWriter<T> writer, List<T> values) {
+		List<T> saved = writer.save(values);
+		entityManager.clear();
+		return saved;
+	}
+
+	private static <T> List<T> values(List<Record<T>> records) {
+		List<T> values = new ArrayList<>(records.size());
+		for (Record<T> record : records) {
+			values.add(record.value);
+		}
+		return values;
+	}
+
+	private <T> Iterator<Record<T>> records(InputStream in, String contentType, Class<T> type,
+			Function<Map<String, String>, T> fromCsv) throws IOException {
+		if (contentType != null && contentType.startsWith(CSV)) {
+			CsvReader rows = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			return new Iterator<Record<T>>() {
+				private long line;
+
+				@Override
+				public boolean hasNext() {
+					return rows.hasNext();
+				}
+
+				@Override
+				public Record<T> next() {
+					Map<String, String> row = rows.next();
+					line++;
+					try {
+						return new Record<>(line, fromCsv.apply(row), null);
+					} catch (RuntimeException e) {
+						return new Record<>(line, null, "Invalid row : " + e);
+					}
+				}
+			};
+		}
+		MappingIterator<T> values = objectMapper.readerFor(type).readValues(in);
+		return new Iterator<Record<T>>() {
+			private long line;
+
+			@Override
+			public boolean hasNext() {
+				try {
+					return values.hasNextValue();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public Record<T> next() {
+				try {
+					return new Record<>(++line, values.nextValue(), null);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	private Company toCompany(Map<String, String> row) {
+		return new Company(row.get("name"), row.get("email"), row.get("password"));
+	}
+
+	private Customer toCustomer(Map<String, String> row) {
+		return new Customer(row.get("firstName"), row.get("lastName"), row.get("email"), row.get("password"));
+	}
+
+	private Coupon toCoupon(Map<String, String> row) {
+		return new Coupon(row.get("title"), Date.valueOf(row.get("startDate")), Date.valueOf(row.get("endDate")),
+				Integer.parseInt(row.get("category")), Integer.parseInt(row.get("amount")), row.get("description"),
+				Double.parseDouble(row.get("price")), row.get("image"));
+	}
+
+	// The emails as written and in lower case, the columns of H2 compare with case
+	private static <T> Set<String> emails(List<Record<T>> chunk, Function<T, String> email) {
+		Set<String> emails = new HashSet<>();
+		for (Record<T> record : chunk) {
+			String value = email.apply(record.value);
+			if (value != null) {
+				emails.add(value);
+				emails.add(EmailRegistry.normalize(value));
+			}
+		}
+		return emails.isEmpty() ? Collections.singleton("") : emails;
+	}
+
+	/**
+	 * A row of the stream, either a value or the reason why it could not be read
+	 */
+	private static final class Record<T> {
+
+		private final long line;
+		private final T value;
+		private final String error;
+
+		private Record(long line, T value, String error) {
+			this.line = line;
+			this.value = value;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Validates a chunk with set-wise queries and saves the accepted rows, the save
+	 * flushes so that a violated constraint is raised within it
+	 */
+	private interface ChunkWriter<T> {
+
+		List<Record<T>> accept(List<Record<T>> chunk, ImportReport report);
+
+		List<T> save(List<T> values);
+	}
+}
@@ -0,0 +1,108 @@
+package com.jb.ingest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This class reads a CSV stream one row at a time. The first row is the header
+ * and every following row is returned as a map from the header name to the
+ * value. Quoted values may contain commas, double quotes and line breaks
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class CsvReader implements Iterator<Map<String, String>> {
+
+	// Fields
+	private final BufferedReader reader;
+	private final List<String> header;
+	private List<String> next;
+
+	// Constructor
+	CsvReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+		List<String> header = readRow();
+		this.header = header == null ? new ArrayList<>() : header;
+		this.next = readRow();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public Map<String, String> next() {
+		if (next == null) {
+			throw new NoSuchElementException();
+		}
+		Map<String, String> row = new HashMap<>();
+		for (int i = 0; i < header.size() && i < next.size(); i++) {
+			row.put(header.get(i), next.get(i));
+		}
+		next = readRow();
+		return row;
+	}
+
+	private List<String> readRow() {
+		try {
+			String line = reader.readLine();
+			while (line != null && line.trim().isEmpty()) {
+				line = reader.readLine();
+			}
+			if (line == null) {
+				return null;
+			}
+			List<String> values = new ArrayList<>();
+			StringBuilder value = new StringBuilder();
+			boolean quoted = false;
+			int i = 0;
+			while (true) {
+				if (i == line.length()) {
+					if (!quoted) {
+						break;
+					}
+					// A quoted value goes on with the next line
+					String following = reader.readLine();
+					if (following == null) {
+						break;
+					}
+					value.append('\n');
+					line = following;
+					i = 0;
+					continue;
+				}
+				char c = line.charAt(i++);
+				if (quoted) {
+					if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+						value.append('"');
+						i++;
+					} else if (c == '"') {
+						quoted = false;
+					} else {
+						value.append(c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					values.add(value.toString().trim());
+					value.setLength(0);
+				} else {
+					value.append(c);
+				}
+			}
+			values.add(value.toString().trim());
+			return values;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.jb.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the progress and the result of a bulk import. It is updated
+ * after every committed chunk so it can be read while the import is running
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class ImportReport {
+
+	// Fields
+	private static final int MAX_ERRORS = 100;
+
+	private volatile long read;
+	private volatile long inserted;
+	private volatile long rejected;
+	private volatile int chunks;
+	private volatile boolean finished;
+	private final long startedMillis;
+	private volatile long elapsedMillis;
+	private final List<String> errors;
+
+	// Constructor
+	public ImportReport() {
+		this.startedMillis = System.currentTimeMillis();
+		this.errors = new ArrayList<>();
+	}
+
+	public long getRead() {
+		return read;
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public int getChunks() {
+		return chunks;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public long getElapsedMillis() {
+		return finished ? elapsedMillis : System.currentTimeMillis() - startedMillis;
+	}
+
+	public long getRowsPerSecond() {
+		long elapsed = getElapsedMillis();
+		return elapsed == 0 ? inserted : inserted * 1000 / elapsed;
+	}
+
+	public synchronized List<String> getErrors() {
+		return new ArrayList<>(errors);
+	}
+
+	void read() {
+		read++;
+	}
+
+	synchronized void reject(long line, String message) {
+		rejected++;
+		if (errors.size() < MAX_ERRORS) {
+			errors.add(String.format("Row %d : %s", line, message));
+		}
+	}
+
+	void committed(int count) {
+		inserted += count;
+		chunks++;
+	}
+
+	void finish() {
+		elapsedMillis = System.currentTimeMillis() - startedMillis;
+		finished = true;
+	}
+}
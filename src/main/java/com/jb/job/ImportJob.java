@@ -0,0 +1,89 @@
+package com.jb.job;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Job;
+import com.jb.ingest.BulkImporter;
+import com.jb.ingest.ImportReport;
+
+/**
+ * These jobs import companies or customers from the input file of the job. The
+ * checkpoint is the number of rows already read in committed chunks, so a
+ * resumed import skips them
+ * 
+ * @author Solal Arroues
+ *
+ */
+public abstract class ImportJob implements JobHandler {
+
+	// Fields
+	protected final BulkImporter bulkImporter;
+
+	// Constructor
+	protected ImportJob(BulkImporter bulkImporter) {
+		this.bulkImporter = bulkImporter;
+	}
+
+	@Override
+	public String run(Job job, JobContext context) throws Exception {
+		long rowsBefore = job.getCheckpoint();
+		long insertedBefore = job.getProgress();
+		Consumer<ImportReport> progress = report -> context.checkpoint(insertedBefore + report.getInserted(),
+				rowsBefore + report.getRead());
+		ImportReport report;
+		try (InputStream in = Files.newInputStream(Paths.get(job.getInputFile()))) {
+			report = importRows(in, job.getContentType(), rowsBefore, progress);
+		}
+		return String.format("%d inserted, %d rejected %s", insertedBefore + report.getInserted(),
+				report.getRejected(), report.getErrors());
+	}
+
+	protected abstract ImportReport importRows(InputStream in, String contentType, long skipRows,
+			Consumer<ImportReport> progress) throws Exception;
+
+	@Component
+	public static class Companies extends ImportJob {
+
+		@Autowired
+		public Companies(BulkImporter bulkImporter) {
+			super(bulkImporter);
+		}
+
+		@Override
+		public Job.Type getType() {
+			return Job.Type.IMPORT_COMPANIES;
+		}
+
+		@Override
+		protected ImportReport importRows(InputStream in, String contentType, long skipRows,
+				Consumer<ImportReport> progress) throws Exception {
+			return bulkImporter.importCompanies(in, contentType, skipRows, progress);
+		}
+	}
+
+	@Component
+	public static class Customers extends ImportJob {
+
+		@Autowired
+		public Customers(BulkImporter bulkImporter) {
+			super(bulkImporter);
+		}
+
+		@Override
+		public Job.Type getType() {
+			return Job.Type.IMPORT_CUSTOMERS;
+		}
+
+		@Override
+		protected ImportReport importRows(InputStream in, String contentType, long skipRows,
+				Consumer<ImportReport> progress) throws Exception {
+			return bulkImporter.importCustomers(in, contentType, skipRows, progress);
+		}
+	}
+}
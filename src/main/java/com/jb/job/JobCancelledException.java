@@ -0,0 +1,15 @@
+package com.jb.job;
+
+/**
+ * Thrown by JobContext.checkpoint when the job has been cancelled, it stops the
+ * handler between two chunks
+ * 
+ * @author Solal Arroues
+ *
+ */
+@SuppressWarnings("serial")
+public class JobCancelledException extends RuntimeException {
+	public JobCancelledException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,41 @@
+package com.jb.job;
+
+import java.util.function.LongPredicate;
+
+import com.jb.repository.JobRepository;
+
+/**
+ * This class is given to a running job to save its progress after every chunk
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class JobContext {
+
+	// Fields
+	private final long jobId;
+	private final JobRepository jobRepository;
+	private final LongPredicate cancelled;
+
+	// Constructor
+	JobContext(long jobId, JobRepository jobRepository, LongPredicate cancelled) {
+		this.jobId = jobId;
+		this.jobRepository = jobRepository;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * This function saves the progress of the job and where to resume it, and
+	 * stops the job if it has been cancelled
+	 * 
+	 * @param progress   : the number of items done, shown to the admin
+	 * @param checkpoint : where the handler resumes after a restart
+	 * @throws JobCancelledException : if the job has been cancelled
+	 */
+	public void checkpoint(long progress, long checkpoint) {
+		jobRepository.updateProgress(jobId, progress, checkpoint);
+		if (cancelled.test(jobId)) {
+			throw new JobCancelledException("Cancelled after " + progress);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.jb.job;
+
+import com.jb.entity.Job;
+
+/**
+ * This interface is implemented by every kind of background job. A handler
+ * must be able to resume from the last checkpoint of the job, because a job
+ * that was running when the application stopped is run again at startup
+ * 
+ * @author Solal Arroues
+ *
+ */
+public interface JobHandler {
+
+	Job.Type getType();
+
+	/**
+	 * @param job     : the job as it was when it was picked up, with the last
+	 *                checkpoint
+	 * @param context : used to save the progress and to stop when the job is
+	 *                cancelled
+	 * @return the message saved with the job when it completes
+	 * @throws Exception
+	 */
+	String run(Job job, JobContext context) throws Exception;
+}
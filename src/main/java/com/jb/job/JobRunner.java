@@ -0,0 +1,207 @@
+package com.jb.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Job;
+import com.jb.repository.JobRepository;
+
+/**
+ * This class runs the heavy admin operations in the background on a small
+ * bounded pool of worker threads so that they never hold an HTTP thread. Every
+ * job is saved in the job table with its progress and its last checkpoint, and
+ * the jobs that were queued or running when the application stopped are run
+ * again at startup from their checkpoint
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class JobRunner {
+
+	// Fields
+	private static final int WORKERS = 2;
+	private static final int MAX_QUEUED = 100;
+	private static final int MAX_MESSAGE_LENGTH = 2000;
+
+	private final JobRepository jobRepository;
+	private final Map<Job.Type, JobHandler> handlers = new EnumMap<>(Job.Type.class);
+	private final Path directory;
+	private final ThreadPoolExecutor executor;
+	private final Set<Long> cancelled = ConcurrentHashMap.newKeySet();
+	private volatile boolean stopping;
+
+	// Constructor
+	@Autowired
+	public JobRunner(JobRepository jobRepository, List<JobHandler> handlers,
+			@Value("${cs.jobs.directory}") String directory) {
+		this.jobRepository = jobRepository;
+		for (JobHandler handler : handlers) {
+			this.handlers.put(handler.getType(), handler);
+		}
+		this.directory = Paths.get(directory);
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(MAX_QUEUED), runnable -> {
+					Thread thread = new Thread(runnable, "job-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * This function saves a new job and queues it. If too many jobs are already
+	 * waiting the job is saved as failed
+	 * 
+	 * @param type
+	 * @param targetId
+	 * @return Job
+	 */
+	public Job submit(Job.Type type, Long targetId) {
+		return submit(new Job(type, targetId, null, null));
+	}
+
+	/**
+	 * This function copies the input of the job to a file, so that the request
+	 * can end and the job can be resumed after a restart, then saves and queues
+	 * the job
+	 * 
+	 * @param type
+	 * @param in
+	 * @param contentType
+	 * @return Job
+	 * @throws IOException
+	 */
+	public Job submit(Job.Type type, InputStream in, String contentType) throws IOException {
+		Files.createDirectories(directory);
+		Path file = Files.createTempFile(directory, type.name().toLowerCase(), ".input");
+		Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+		return submit(new Job(type, null, file.toString(), contentType));
+	}
+
+	/**
+	 * @param id
+	 * @return the job as saved in the job table
+	 */
+	public Optional<Job> find(long id) {
+		return jobRepository.findById(id);
+	}
+
+	/**
+	 * This function asks a job to stop. A queued job does not start and a running
+	 * job stops at its next checkpoint
+	 * 
+	 * @param id
+	 * @return true if the job exists
+	 */
+	public boolean cancel(long id) {
+		cancelled.add(id);
+		return jobRepository.requestCancel(id) == 1;
+	}
+
+	/**
+	 * This function queues again the jobs that were not finished when the
+	 * application stopped
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void resume() {
+		for (Job job : jobRepository.findAllByStatusInOrderById(Arrays.asList(Job.Status.QUEUED, Job.Status.RUNNING))) {
+			enqueue(job.getId());
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		stopping = true;
+		executor.shutdownNow();
+	}
+
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	private Job submit(Job job) {
+		Job saved = jobRepository.save(job);
+		enqueue(saved.getId());
+		return jobRepository.findById(saved.getId()).orElse(saved);
+	}
+
+	private void enqueue(long id) {
+		try {
+			executor.execute(() -> execute(id));
+		} catch (RejectedExecutionException e) {
+			jobRepository.markFinished(id, Job.Status.FAILED, "Too many jobs are waiting", System.currentTimeMillis());
+		}
+	}
+
+	private void execute(long id) {
+		Job job = jobRepository.findById(id).orElse(null);
+		if (job == null || job.getStatus() == Job.Status.COMPLETED || job.getStatus() == Job.Status.FAILED
+				|| job.getStatus() == Job.Status.CANCELLED) {
+			return;
+		}
+		if (job.isCancelRequested() || cancelled.contains(id)) {
+			finish(job, Job.Status.CANCELLED, "Cancelled before it started");
+			return;
+		}
+		long started = job.getStartedMillis() == null ? System.currentTimeMillis() : job.getStartedMillis();
+		jobRepository.markStarted(id, Job.Status.RUNNING, started);
+		JobContext context = new JobContext(id, jobRepository, jobId -> stopping || cancelled.contains(jobId));
+		try {
+			String message = handlers.get(job.getType()).run(job, context);
+			finish(job, Job.Status.COMPLETED, message);
+		} catch (JobCancelledException e) {
+			if (!stopping) {
+				finish(job, Job.Status.CANCELLED, e.getMessage());
+			}
+			// Otherwise the job stays running and is resumed at the next startup
+		} catch (Exception e) {
+			if (!stopping) {
+				finish(job, Job.Status.FAILED, String.valueOf(e));
+			}
+		}
+	}
+
+	private void finish(Job job, Job.Status status, String message) {
+		if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+			message = message.substring(0, MAX_MESSAGE_LENGTH);
+		}
+		jobRepository.markFinished(job.getId(), status, message, System.currentTimeMillis());
+		cancelled.remove(job.getId());
+		if (job.getInputFile() != null) {
+			try {
+				Files.deleteIfExists(Paths.get(job.getInputFile()));
+			} catch (IOException e) {
+				// The file is left in cs.jobs.directory
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.jb.job;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Job;
+import com.jb.maintenance.BulkDeleter;
+
+/**
+ * This job deletes a company with the bulk deleter, the deletion goes on from
+ * where it stopped because the deleted rows are gone
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class RemoveCompanyJob implements JobHandler {
+
+	// Fields
+	private final BulkDeleter bulkDeleter;
+
+	// Constructor
+	@Autowired
+	public RemoveCompanyJob(BulkDeleter bulkDeleter) {
+		this.bulkDeleter = bulkDeleter;
+	}
+
+	@Override
+	public Job.Type getType() {
+		return Job.Type.REMOVE_COMPANY;
+	}
+
+	@Override
+	public String run(Job job, JobContext context) {
+		long before = job.getProgress();
+		long deleted = bulkDeleter.deleteCompany(job.getTargetId(),
+				progress -> context.checkpoint(before + progress, before + progress));
+		return String.format("%d coupons deleted", before + deleted);
+	}
+}
@@ -0,0 +1,40 @@
+package com.jb.job;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Job;
+import com.jb.maintenance.BulkDeleter;
+
+/**
+ * This job deletes a customer with the bulk deleter, the deletion goes on from
+ * where it stopped because the deleted rows are gone
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class RemoveCustomerJob implements JobHandler {
+
+	// Fields
+	private final BulkDeleter bulkDeleter;
+
+	// Constructor
+	@Autowired
+	public RemoveCustomerJob(BulkDeleter bulkDeleter) {
+		this.bulkDeleter = bulkDeleter;
+	}
+
+	@Override
+	public Job.Type getType() {
+		return Job.Type.REMOVE_CUSTOMER;
+	}
+
+	@Override
+	public String run(Job job, JobContext context) {
+		long before = job.getProgress();
+		long deleted = bulkDeleter.deleteCustomer(job.getTargetId(),
+				progress -> context.checkpoint(before + progress, before + progress));
+		return String.format("%d coupon ownerships deleted", before + deleted);
+	}
+}
@@ -0,0 +1,68 @@
+package com.jb.journal;
+
+/**
+ * This class is one entry of the purchase journal : a purchase of a coupon by a
+ * customer, or a change of the amount of a coupon by its company. On disk it is
+ * a fixed size record of 32 bytes
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class JournalRecord {
+
+	public enum Type {
+		PURCHASE, INVENTORY
+	}
+
+	// Fields
+	private long sequence;
+	private long timestampMillis;
+	private Type type;
+	private long customerId;
+	private long couponId;
+	private int amountDelta;
+
+	// Constructor
+	public JournalRecord(long sequence, long timestampMillis, Type type, long customerId, long couponId,
+			int amountDelta) {
+		this.sequence = sequence;
+		this.timestampMillis = timestampMillis;
+		this.type = type;
+		this.customerId = customerId;
+		this.couponId = couponId;
+		this.amountDelta = amountDelta;
+	}
+
+	/**
+	 * @return the position of the record in the journal, starting at 0
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the buyer of a purchase, 0 for an inventory change
+	 */
+	public long getCustomerId() {
+		return customerId;
+	}
+
+	public long getCouponId() {
+		return couponId;
+	}
+
+	/**
+	 * @return the change of the amount of the coupon, -1 for a purchase
+	 */
+	public int getAmountDelta() {
+		return amountDelta;
+	}
+}
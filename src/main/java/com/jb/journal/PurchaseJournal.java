@@ -0,0 +1,347 @@
+package com.jb.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class is an append only journal of the purchases and of the inventory
+ * changes. A record is only queued once the transaction of the change is
+ * committed, so a purchase that rolls back is never journaled, and the queue is
+ * never waited for : when it is full the record is counted as dropped instead
+ * of holding the transaction of the caller. A single writer thread
+ * copies the records into memory mapped segment files and forces them to disk
+ * at most every few milliseconds, so one fsync covers a whole group of
+ * records. A segment is a file of fixed size named after the sequence of its
+ * first record, a new one is started when it is full. The journal can be read
+ * back from any sequence to rebuild the inventory or to feed analytics. The
+ * writer reopens the last segment and goes on after an I/O error, the records
+ * it could not write are counted as dropped. The directory must be set in
+ * cs.journal.directory, an audit trail has no place in a temporary directory
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class PurchaseJournal {
+
+	// Fields
+	public static final int RECORD_SIZE = 32;
+	private static final int TYPE_OFFSET = 28;
+	private static final int QUEUE_CAPACITY = 65536;
+	private static final int MAX_BATCH = 4096;
+	private static final String SUFFIX = ".journal";
+	private static final Logger LOG = LoggerFactory.getLogger(PurchaseJournal.class);
+
+	private final Path directory;
+	private final long segmentBytes;
+	private final long syncMillis;
+	private final BlockingQueue<JournalRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread writer;
+	private volatile boolean stopping;
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	// Records before this sequence are written and can be read
+	private volatile long writtenSequence;
+
+	// Only used by the writer thread
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long nextSequence;
+
+	// Constructor
+	@Autowired
+	public PurchaseJournal(@Value("${cs.journal.directory}") String directory,
+			@Value("${cs.journal.segment-bytes:67108864}") long segmentBytes,
+			@Value("${cs.journal.sync-millis:50}") long syncMillis) {
+		this.directory = Paths.get(directory);
+		this.segmentBytes = segmentBytes / RECORD_SIZE * RECORD_SIZE;
+		this.syncMillis = syncMillis;
+		this.writer = new Thread(this::write, "purchase-journal");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * This function opens the last segment, finds the end of the records with a
+	 * binary search and starts the writer
+	 * 
+	 * @throws IOException
+	 */
+	@PostConstruct
+	public void start() throws IOException {
+		Files.createDirectories(directory);
+		openLastSegment();
+		writer.start();
+	}
+
+	/**
+	 * This function writes the records still in the queue and stops the writer
+	 */
+	@PreDestroy
+	public void shutdown() {
+		stopping = true;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This function records the purchase of one unit of a coupon once the current
+	 * transaction is committed
+	 * 
+	 * @param customerId
+	 * @param couponId
+	 */
+	public void purchase(long customerId, long couponId) {
+		JournalRecord record = new JournalRecord(-1, System.currentTimeMillis(), JournalRecord.Type.PURCHASE,
+				customerId, couponId, -1);
+		TransactionHooks.afterCommit(() -> append(record));
+	}
+
+	/**
+	 * This function records a change of the amount of a coupon by its company
+	 * once the current transaction is committed
+	 * 
+	 * @param couponId
+	 * @param amountDelta
+	 */
+	public void inventoryChanged(long couponId, int amountDelta) {
+		JournalRecord record = new JournalRecord(-1, System.currentTimeMillis(), JournalRecord.Type.INVENTORY, 0,
+				couponId, amountDelta);
+		TransactionHooks.afterCommit(() -> append(record));
+	}
+
+	/**
+	 * This function reads the records in order from a sequence, as long as the
+	 * visitor returns true
+	 * 
+	 * @param fromSequence
+	 * @param visitor
+	 * @return the number of records read
+	 * @throws IOException
+	 */
+	public long replay(long fromSequence, Predicate<JournalRecord> visitor) throws IOException {
+		long end = writtenSequence;
+		long read = 0;
+		for (Path segment : segments()) {
+			long first = firstSequence(segment);
+			try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+				long count = in.size() / RECORD_SIZE;
+				if (first + count <= fromSequence || first >= end) {
+					continue;
+				}
+				MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, count * RECORD_SIZE);
+				for (long sequence = Math.max(first, fromSequence); sequence < Math.min(first + count, end); sequence++) {
+					JournalRecord record = read(records, (int) ((sequence - first) * RECORD_SIZE), sequence);
+					if (record == null) {
+						break;
+					}
+					read++;
+					if (!visitor.test(record)) {
+						return read;
+					}
+				}
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * @return the sequence of the next record to be written
+	 */
+	public long getWrittenSequence() {
+		return writtenSequence;
+	}
+
+	/**
+	 * @return the number of records that were not written, because the queue was
+	 *         full or because of an I/O error
+	 */
+	public long getDroppedRecords() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of I/O errors the writer has recovered from
+	 */
+	public long getWriteFailures() {
+		return failures.sum();
+	}
+
+	private void append(JournalRecord record) {
+		if (stopping || !queue.offer(record)) {
+			dropped.increment();
+		}
+	}
+
+	private void write() {
+		List<JournalRecord> batch = new ArrayList<>(MAX_BATCH);
+		long lastSync = System.currentTimeMillis();
+		boolean dirty = false;
+		while (!stopping || !queue.isEmpty()) {
+			try {
+				JournalRecord first = queue.poll(syncMillis, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH - 1);
+					for (JournalRecord record : batch) {
+						put(record);
+					}
+					batch.clear();
+					writtenSequence = nextSequence;
+					dirty = true;
+				}
+				long now = System.currentTimeMillis();
+				if (dirty && (first == null || now - lastSync >= syncMillis)) {
+					buffer.force();
+					lastSync = now;
+					dirty = false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (IOException | RuntimeException e) {
+				failures.increment();
+				dropped.add(batch.size());
+				batch.clear();
+				LOG.error("The purchase journal could not write to " + directory + ", reopening it", e);
+				if (!reopen()) {
+					return;
+				}
+				dirty = false;
+			}
+		}
+		try {
+			buffer.force();
+			channel.close();
+		} catch (IOException e) {
+			LOG.error("The purchase journal could not be closed", e);
+		}
+	}
+
+	/**
+	 * The writer waits a little and opens the last segment again, where the end
+	 * of the records is found as at start, until it succeeds or the journal stops
+	 */
+	private boolean reopen() {
+		while (!stopping) {
+			try {
+				Thread.sleep(Math.max(syncMillis, 100));
+				channel.close();
+				openLastSegment();
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (IOException | RuntimeException e) {
+				failures.increment();
+				LOG.error("The purchase journal could not be reopened", e);
+			}
+		}
+		dropped.add(queue.size());
+		queue.clear();
+		return false;
+	}
+
+	private void put(JournalRecord record) throws IOException {
+		if (buffer.remaining() < RECORD_SIZE) {
+			buffer.force();
+			channel.close();
+			openSegment(nextSequence);
+		}
+		buffer.putLong(record.getTimestampMillis());
+		buffer.putLong(record.getCustomerId());
+		buffer.putLong(record.getCouponId());
+		buffer.putInt(record.getAmountDelta());
+		// The type is written last, a record whose type is 0 was never completed
+		buffer.putInt(record.getType().ordinal() + 1);
+		nextSequence++;
+	}
+
+	private void openLastSegment() throws IOException {
+		List<Path> segments = segments();
+		if (segments.isEmpty()) {
+			openSegment(writtenSequence);
+		} else {
+			openSegment(firstSequence(segments.get(segments.size() - 1)));
+			long count = countRecords(buffer);
+			buffer.position((int) (count * RECORD_SIZE));
+			nextSequence += count;
+		}
+		writtenSequence = nextSequence;
+	}
+
+	private void openSegment(long firstSequence) throws IOException {
+		Path file = directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long size = Math.max(channel.size() / RECORD_SIZE * RECORD_SIZE, segmentBytes);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		nextSequence = firstSequence;
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static long firstSequence(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	// The records are written in order on a zeroed file, the first empty one is
+	// the end of the segment
+	private static long countRecords(ByteBuffer records) {
+		long low = 0;
+		long high = records.capacity() / RECORD_SIZE;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (records.getInt((int) (middle * RECORD_SIZE + TYPE_OFFSET)) != 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static JournalRecord read(ByteBuffer records, int offset, long sequence) {
+		int type = records.getInt(offset + TYPE_OFFSET);
+		if (type == 0) {
+			return null;
+		}
+		return new JournalRecord(sequence, records.getLong(offset), JournalRecord.Type.values()[type - 1],
+				records.getLong(offset + 8), records.getLong(offset + 16), records.getInt(offset + 24));
+	}
+}
@@ -0,0 +1,134 @@
+package com.jb.maintenance;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.WalletCache;
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CustomerRepository;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+
+/**
+ * This class deletes a company or a customer with a few set based statements
+ * instead of letting hibernate load and delete every coupon and every
+ * customer_coupon row one by one. The rows are deleted in chunks, each in its
+ * own short transaction, so purchases are never blocked for long
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class BulkDeleter {
+
+	// Fields
+	private static final int CHUNK_SIZE = 1000;
+
+	private final CompanyRepository companyRepository;
+	private final CustomerRepository customerRepository;
+	private final CouponRepository couponRepository;
+	private final CouponSearchIndex couponSearchIndex;
+	private final CompanyStats companyStats;
+	private final ScopeVersions scopeVersions;
+	private final WalletCache walletCache;
+	private final TransactionTemplate transactionTemplate;
+
+	// Constructor
+	@Autowired
+	public BulkDeleter(CompanyRepository companyRepository, CustomerRepository customerRepository,
+			CouponRepository couponRepository, CouponSearchIndex couponSearchIndex, CompanyStats companyStats,
+			ScopeVersions scopeVersions, WalletCache walletCache, PlatformTransactionManager transactionManager) {
+		this.companyRepository = companyRepository;
+		this.customerRepository = customerRepository;
+		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.companyStats = companyStats;
+		this.scopeVersions = scopeVersions;
+		this.walletCache = walletCache;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * This function deletes the coupons of the company chunk by chunk, first their
+	 * customer_coupon rows then the coupons themselves, and finally the company.
+	 * If it stops in the middle it can simply be called again. The wallets are
+	 * emptied and every version moves forward once the company is gone
+	 * 
+	 * @param companyId
+	 * @param progress  : called after every chunk with the number of coupons
+	 *                  deleted so far, may be null
+	 * @return the number of coupons deleted
+	 */
+	public long deleteCompany(long companyId, LongConsumer progress) {
+		long deleted = purgeCompany(companyId, progress);
+		walletCache.clear();
+		scopeVersions.changedAll();
+		return deleted;
+	}
+
+	/**
+	 * This function deletes the rows of the company like deleteCompany but leaves
+	 * the wallets and the versions alone. It is meant for a company hidden by a
+	 * soft delete, whose wallets and versions were already flushed then
+	 * 
+	 * @param companyId
+	 * @param progress  : called after every chunk with the number of coupons
+	 *                  deleted so far, may be null
+	 * @return the number of coupons deleted
+	 */
+	public long purgeCompany(long companyId, LongConsumer progress) {
+		long deleted = 0;
+		while (true) {
+			List<Long> couponIds = transactionTemplate.execute(status -> {
+				List<Long> ids = couponRepository.findIdsByCompanyId(companyId, CHUNK_SIZE);
+				if (!ids.isEmpty()) {
+					couponRepository.deleteOwnershipsByCouponIds(ids);
+					couponRepository.deleteAllByIds(ids);
+				}
+				return ids;
+			});
+			if (couponIds.isEmpty()) {
+				break;
+			}
+			couponSearchIndex.removeAll(couponIds);
+			deleted += couponIds.size();
+			if (progress != null) {
+				progress.accept(deleted);
+			}
+		}
+		transactionTemplate.execute(status -> companyRepository.deleteOne(companyId));
+		companyStats.companyRemoved(companyId);
+		return deleted;
+	}
+
+	/**
+	 * This function deletes the customer_coupon rows of the customer chunk by
+	 * chunk and then the customer
+	 * 
+	 * @param customerId
+	 * @param progress   : called after every chunk with the number of rows
+	 *                   deleted so far, may be null
+	 * @return the number of customer_coupon rows deleted
+	 */
+	public long deleteCustomer(long customerId, LongConsumer progress) {
+		long deleted = 0;
+		int count;
+		do {
+			count = transactionTemplate
+					.execute(status -> couponRepository.deleteOwnershipsByCustomerId(customerId, CHUNK_SIZE));
+			deleted += count;
+			if (progress != null) {
+				progress.accept(deleted);
+			}
+		} while (count == CHUNK_SIZE);
+		transactionTemplate.execute(status -> customerRepository.deleteOne(customerId));
+		return deleted;
+	}
+}
@@ -0,0 +1,166 @@
+package com.jb.maintenance;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.WalletCache;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CouponRepository.CouponKey;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+import com.jb.stock.StockCounters;
+import com.jb.sync.ChangeVersions;
+
+/**
+ * This class moves the coupons whose end date has passed, and the
+ * customer_coupon rows that reference them, from the coupon tables to the
+ * archive tables. It walks idx_coupon_end_date with a (end_date, id) cursor so
+ * every chunk is a short index range read, moves each chunk in its own small
+ * transaction and pauses between chunks so it never holds locks for long
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class CouponSweeper {
+
+	// Fields
+	private static final Date FIRST_END_DATE = Date.valueOf(LocalDate.of(1970, 1, 1));
+
+	private final boolean enabled;
+	private final int chunkSize;
+	private final long pauseMillis;
+	private final CouponRepository couponRepository;
+	private final CouponSearchIndex couponSearchIndex;
+	private final CompanyStats companyStats;
+	private final StockCounters stockCounters;
+	private final ChangeVersions changeVersions;
+	private final ScopeVersions scopeVersions;
+	private final WalletCache walletCache;
+	private final TransactionTemplate transactionTemplate;
+
+	private volatile long runs;
+	private volatile long lastRunStartedMillis;
+	private volatile long lastRunMillis;
+	private volatile long lastRunCoupons;
+	private volatile long lastRunOwnerships;
+	private volatile long totalCoupons;
+	private volatile long totalOwnerships;
+
+	// Constructor
+	@Autowired
+	public CouponSweeper(@Value("${cs.sweeper.enabled:true}") boolean enabled,
+			@Value("${cs.sweeper.chunk-size:500}") int chunkSize,
+			@Value("${cs.sweeper.pause-millis:100}") long pauseMillis, CouponRepository couponRepository,
+			CouponSearchIndex couponSearchIndex, CompanyStats companyStats, StockCounters stockCounters,
+			ChangeVersions changeVersions, ScopeVersions scopeVersions, WalletCache walletCache,
+			PlatformTransactionManager transactionManager) {
+		this.enabled = enabled;
+		this.chunkSize = chunkSize;
+		this.pauseMillis = pauseMillis;
+		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.companyStats = companyStats;
+		this.stockCounters = stockCounters;
+		this.changeVersions = changeVersions;
+		this.scopeVersions = scopeVersions;
+		this.walletCache = walletCache;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * This function runs the sweeper every hour by default, the first run happens
+	 * a minute after the start of the application
+	 */
+	@Scheduled(initialDelayString = "${cs.sweeper.initial-delay-millis:60000}", fixedDelayString = "${cs.sweeper.interval-millis:3600000}")
+	public void scheduledSweep() {
+		if (enabled) {
+			sweep();
+		}
+	}
+
+	/**
+	 * This function archives every coupon that expired before today. A coupon is
+	 * still valid on its end date
+	 * 
+	 * @return the number of coupons archived
+	 */
+	public synchronized long sweep() {
+		long started = System.currentTimeMillis();
+		Date today = Date.valueOf(LocalDate.now());
+		Date afterEndDate = FIRST_END_DATE;
+		long afterId = 0;
+		long coupons = 0;
+		long ownerships = 0;
+		while (true) {
+			List<CouponKey> keys = couponRepository.findExpiredKeys(today, afterEndDate, afterId,
+					PageRequest.of(0, chunkSize));
+			if (keys.isEmpty()) {
+				break;
+			}
+			List<Long> ids = new ArrayList<>(keys.size());
+			for (CouponKey key : keys) {
+				ids.add(key.getId());
+			}
+			long archivedMillis = System.currentTimeMillis();
+			ownerships += transactionTemplate.execute(status -> {
+				couponRepository.archiveAllByIds(ids, archivedMillis, changeVersions.next());
+				int moved = couponRepository.archiveOwnershipsByCouponIds(ids);
+				couponRepository.deleteOwnershipsByCouponIds(ids);
+				couponRepository.deleteAllByIds(ids);
+				return moved;
+			});
+			couponSearchIndex.removeAll(ids);
+			coupons += ids.size();
+			CouponKey last = keys.get(keys.size() - 1);
+			afterEndDate = last.getEndDate();
+			afterId = last.getId();
+			if (keys.size() < chunkSize || !Throttle.pause(pauseMillis)) {
+				break;
+			}
+		}
+		if (coupons > 0) {
+			companyStats.reloadListings();
+			stockCounters.reload();
+			walletCache.clear();
+			scopeVersions.changedAll();
+		}
+		runs++;
+		lastRunStartedMillis = started;
+		lastRunMillis = System.currentTimeMillis() - started;
+		lastRunCoupons = coupons;
+		lastRunOwnerships = ownerships;
+		totalCoupons += coupons;
+		totalOwnerships += ownerships;
+		return coupons;
+	}
+
+	/**
+	 * This function returns the counters of the sweeper, the lag is read from the
+	 * database
+	 * 
+	 * @return SweeperStatistics
+	 */
+	public SweeperStatistics getStatistics() {
+		Date oldest = couponRepository.findOldestEndDateBefore(Date.valueOf(LocalDate.now()));
+		long lagMillis = 0;
+		if (oldest != null) {
+			long expiredMillis = oldest.getTime() + TimeUnit.DAYS.toMillis(1);
+			lagMillis = Math.max(0, System.currentTimeMillis() - expiredMillis);
+		}
+		return new SweeperStatistics(runs, lastRunStartedMillis, lastRunMillis, lastRunCoupons, lastRunOwnerships,
+				totalCoupons, totalOwnerships, lagMillis);
+	}
+}
@@ -0,0 +1,159 @@
+package com.jb.maintenance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.WalletCache;
+import com.jb.feed.ChangeFeed;
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CouponRepository.CouponCategory;
+import com.jb.repository.CustomerRepository;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+import com.jb.stock.StockCounters;
+import com.jb.sync.ChangeVersions;
+
+/**
+ * This class deletes companies, customers and coupons for the requests of the
+ * users. In soft delete mode (the default) it only stamps the rows with the
+ * time of the delete, the @Where filter of the entities hides them at once and
+ * the TombstonePurger removes them and their customer_coupon rows later. When
+ * the mode is turned off the rows are deleted right away
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class SoftDeleter {
+
+	// Fields
+	private static final int CHUNK_SIZE = 1000;
+
+	private final boolean enabled;
+	private final CompanyRepository companyRepository;
+	private final CustomerRepository customerRepository;
+	private final CouponRepository couponRepository;
+	private final CouponSearchIndex couponSearchIndex;
+	private final CompanyStats companyStats;
+	private final StockCounters stockCounters;
+	private final ChangeFeed changeFeed;
+	private final BulkDeleter bulkDeleter;
+	private final ChangeVersions changeVersions;
+	private final ScopeVersions scopeVersions;
+	private final WalletCache walletCache;
+	private final TransactionTemplate transactionTemplate;
+
+	// Constructor
+	@Autowired
+	public SoftDeleter(@Value("${cs.soft-delete.enabled:true}") boolean enabled,
+			CompanyRepository companyRepository, CustomerRepository customerRepository,
+			CouponRepository couponRepository, CouponSearchIndex couponSearchIndex, CompanyStats companyStats,
+			StockCounters stockCounters, ChangeFeed changeFeed, BulkDeleter bulkDeleter,
+			ChangeVersions changeVersions, ScopeVersions scopeVersions, WalletCache walletCache,
+			PlatformTransactionManager transactionManager) {
+		this.enabled = enabled;
+		this.companyRepository = companyRepository;
+		this.customerRepository = customerRepository;
+		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.companyStats = companyStats;
+		this.stockCounters = stockCounters;
+		this.changeFeed = changeFeed;
+		this.bulkDeleter = bulkDeleter;
+		this.changeVersions = changeVersions;
+		this.scopeVersions = scopeVersions;
+		this.walletCache = walletCache;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * This function deletes a coupon, in soft delete mode its customer_coupon rows
+	 * are left to the purger
+	 * 
+	 * @param couponId
+	 */
+	public void deleteCoupon(long couponId) {
+		if (enabled) {
+			long now = System.currentTimeMillis();
+			transactionTemplate.execute(status -> couponRepository.markDeleted(couponId, now, changeVersions.next()));
+		} else {
+			couponRepository.deleteById(couponId);
+		}
+		couponSearchIndex.remove(couponId);
+	}
+
+	/**
+	 * This function deletes a company and its coupons. In soft delete mode the
+	 * coupons are stamped chunk by chunk, each in its own short transaction like
+	 * the BulkDeleter, and the company last, so it can simply be called again if
+	 * it stops in the middle. The stock counters and the subscribers of the feed
+	 * are told about every coupon
+	 * 
+	 * @param companyId
+	 */
+	public void deleteCompany(long companyId) {
+		if (!enabled) {
+			bulkDeleter.deleteCompany(companyId, null);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long afterId = 0;
+		while (true) {
+			long from = afterId;
+			List<CouponCategory> coupons = transactionTemplate.execute(status -> {
+				List<CouponCategory> chunk = couponRepository.findCategoriesByCompanyId(companyId, from,
+						PageRequest.of(0, CHUNK_SIZE));
+				if (!chunk.isEmpty()) {
+					couponRepository.markDeletedByIds(ids(chunk), now, changeVersions.next());
+				}
+				return chunk;
+			});
+			if (coupons.isEmpty()) {
+				break;
+			}
+			List<Long> ids = ids(coupons);
+			for (CouponCategory coupon : coupons) {
+				stockCounters.couponRemoved(coupon.getId());
+				changeFeed.couponRemoved(coupon.getId(), companyId, coupon.getCategory());
+			}
+			couponSearchIndex.removeAll(ids);
+			afterId = ids.get(ids.size() - 1);
+		}
+		transactionTemplate.execute(status -> companyRepository.markDeleted(companyId, now));
+		companyStats.companyRemoved(companyId);
+		walletCache.clear();
+		scopeVersions.changedAll();
+	}
+
+	/**
+	 * This function deletes a customer, in soft delete mode its customer_coupon
+	 * rows are left to the purger
+	 * 
+	 * @param customerId
+	 */
+	public void deleteCustomer(long customerId) {
+		if (enabled) {
+			long now = System.currentTimeMillis();
+			transactionTemplate.execute(status -> customerRepository.markDeleted(customerId, now));
+		} else {
+			bulkDeleter.deleteCustomer(customerId, null);
+		}
+	}
+
+	private static List<Long> ids(List<CouponCategory> coupons) {
+		List<Long> ids = new ArrayList<>(coupons.size());
+		for (CouponCategory coupon : coupons) {
+			ids.add(coupon.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,71 @@
+package com.jb.maintenance;
+
+/**
+ * This class is the report of the expired coupon sweeper returned to the admin,
+ * it contains the counters of the last run, the totals since the start of the
+ * application and how long the oldest expired coupon has been waiting
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class SweeperStatistics {
+
+	// Fields
+	private long runs;
+	private long lastRunStartedMillis;
+	private long lastRunMillis;
+	private long lastRunCoupons;
+	private long lastRunOwnerships;
+	private long totalCoupons;
+	private long totalOwnerships;
+	private long lagMillis;
+
+	// Constructor
+	public SweeperStatistics(long runs, long lastRunStartedMillis, long lastRunMillis, long lastRunCoupons,
+			long lastRunOwnerships, long totalCoupons, long totalOwnerships, long lagMillis) {
+		this.runs = runs;
+		this.lastRunStartedMillis = lastRunStartedMillis;
+		this.lastRunMillis = lastRunMillis;
+		this.lastRunCoupons = lastRunCoupons;
+		this.lastRunOwnerships = lastRunOwnerships;
+		this.totalCoupons = totalCoupons;
+		this.totalOwnerships = totalOwnerships;
+		this.lagMillis = lagMillis;
+	}
+
+	public long getRuns() {
+		return runs;
+	}
+
+	public long getLastRunStartedMillis() {
+		return lastRunStartedMillis;
+	}
+
+	public long getLastRunMillis() {
+		return lastRunMillis;
+	}
+
+	public long getLastRunCoupons() {
+		return lastRunCoupons;
+	}
+
+	public long getLastRunOwnerships() {
+		return lastRunOwnerships;
+	}
+
+	public long getTotalCoupons() {
+		return totalCoupons;
+	}
+
+	public long getTotalOwnerships() {
+		return totalOwnerships;
+	}
+
+	/**
+	 * @return the time since the oldest coupon still in the coupon table has
+	 *         expired, 0 if there is none
+	 */
+	public long getLagMillis() {
+		return lagMillis;
+	}
+}
@@ -0,0 +1,33 @@
+package com.jb.maintenance;
+
+/**
+ * This class holds the pause taken by the background maintenance tasks between
+ * two chunks so they leave room to the requests of the users
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class Throttle {
+
+	private Throttle() {
+	}
+
+	/**
+	 * This function waits the given time
+	 * 
+	 * @param pauseMillis
+	 * @return false if the thread was interrupted
+	 */
+	static boolean pause(long pauseMillis) {
+		if (pauseMillis <= 0) {
+			return true;
+		}
+		try {
+			Thread.sleep(pauseMillis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
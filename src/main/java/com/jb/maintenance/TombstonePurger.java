@@ -0,0 +1,107 @@
+package com.jb.maintenance;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CustomerRepository;
+
+/**
+ * This class physically removes the rows soft deleted by the SoftDeleter. It
+ * runs off peak, at 3 am by default, and removes the tombstones in chunks with
+ * a pause between two chunks. The coupons go first, then the customers and the
+ * companies with the BulkDeleter. The rows were hidden when they were soft
+ * deleted, so the wallets and the versions are left alone
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class TombstonePurger {
+
+	// Fields
+	private final boolean enabled;
+	private final int chunkSize;
+	private final long pauseMillis;
+	private final long retentionMillis;
+	private final CompanyRepository companyRepository;
+	private final CustomerRepository customerRepository;
+	private final CouponRepository couponRepository;
+	private final BulkDeleter bulkDeleter;
+	private final TransactionTemplate transactionTemplate;
+
+	// Constructor
+	@Autowired
+	public TombstonePurger(@Value("${cs.purger.enabled:true}") boolean enabled,
+			@Value("${cs.purger.chunk-size:1000}") int chunkSize,
+			@Value("${cs.purger.pause-millis:100}") long pauseMillis,
+			@Value("${cs.purger.retention-millis:604800000}") long retentionMillis, CompanyRepository companyRepository,
+			CustomerRepository customerRepository, CouponRepository couponRepository, BulkDeleter bulkDeleter,
+			PlatformTransactionManager transactionManager) {
+		this.enabled = enabled;
+		this.chunkSize = chunkSize;
+		this.pauseMillis = pauseMillis;
+		this.retentionMillis = retentionMillis;
+		this.companyRepository = companyRepository;
+		this.customerRepository = customerRepository;
+		this.couponRepository = couponRepository;
+		this.bulkDeleter = bulkDeleter;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * This function runs the purger on the schedule of cs.purger.cron
+	 */
+	@Scheduled(cron = "${cs.purger.cron:0 0 3 * * *}")
+	public void scheduledPurge() {
+		if (enabled) {
+			purge();
+		}
+	}
+
+	/**
+	 * This function removes every tombstone older than cs.purger.retention-millis,
+	 * a week by default. The coupon tombstones are kept that long for the delta
+	 * sync of the clients
+	 * 
+	 * @return the number of companies, customers and coupons removed
+	 */
+	public synchronized long purge() {
+		long before = System.currentTimeMillis() - retentionMillis;
+		long purged = 0;
+		List<Long> ids;
+		do {
+			ids = couponRepository.findDeletedIds(before, chunkSize);
+			if (!ids.isEmpty()) {
+				List<Long> couponIds = ids;
+				transactionTemplate.execute(status -> {
+					couponRepository.deleteOwnershipsByCouponIds(couponIds);
+					return couponRepository.deleteAllByIds(couponIds);
+				});
+				purged += ids.size();
+			}
+		} while (ids.size() == chunkSize && Throttle.pause(pauseMillis));
+		do {
+			ids = customerRepository.findDeletedIds(before, chunkSize);
+			for (Long id : ids) {
+				bulkDeleter.deleteCustomer(id, null);
+			}
+			purged += ids.size();
+		} while (ids.size() == chunkSize && Throttle.pause(pauseMillis));
+		do {
+			ids = companyRepository.findDeletedIds(before, chunkSize);
+			for (Long id : ids) {
+				bulkDeleter.purgeCompany(id, null);
+			}
+			purged += ids.size();
+		} while (ids.size() == chunkSize && Throttle.pause(pauseMillis));
+		return purged;
+	}
+}
@@ -0,0 +1,49 @@
+package com.jb.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.jb.entity.CategoryStats;
+
+@Repository
+public interface CategoryStatsRepository extends JpaRepository<CategoryStats, CategoryStats.Key> {
+
+	@Query("SELECT c.company.id AS companyId, c.category AS category, COUNT(c) AS rowCount, SUM(c.amount) AS total"
+			+ " FROM Coupon c GROUP BY c.company.id, c.category")
+	List<Aggregate> sumListings();
+
+	@Query("SELECT c.company.id AS companyId, c.category AS category, COUNT(c) AS rowCount, SUM(c.price) AS total"
+			+ " FROM Customer cust JOIN cust.coupons c GROUP BY c.company.id, c.category")
+	List<Aggregate> sumSales();
+
+	@Modifying
+	@Query(value = "INSERT INTO company_category_stats (company_id, category, listed, units_remaining, units_sold,"
+			+ " gross_cents) VALUES (:companyId, :category, :listed, :unitsRemaining, :unitsSold, :grossCents)"
+			+ " ON DUPLICATE KEY UPDATE listed = VALUES(listed), units_remaining = VALUES(units_remaining),"
+			+ " units_sold = VALUES(units_sold), gross_cents = VALUES(gross_cents)", nativeQuery = true)
+	int upsert(long companyId, int category, long listed, long unitsRemaining, long unitsSold, long grossCents);
+
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM CategoryStats s WHERE s.companyId = :companyId")
+	int deleteAllByCompanyId(long companyId);
+
+	/**
+	 * A row count and a sum per company and category
+	 */
+	interface Aggregate {
+
+		long getCompanyId();
+
+		int getCategory();
+
+		long getRowCount();
+
+		Number getTotal();
+	}
+}
@@ -1,11 +1,17 @@
 package com.jb.repository;
 
 import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.jb.entity.Coupon;
@@ -13,10 +19,12 @@ import com.jb.entity.Coupon;
 @Repository
 public interface CouponRepository extends JpaRepository<Coupon, Long> {
 
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	List<Coupon> findAllByCompanyId(long companyId);
 
 	Optional<Coupon> findByIdAndCompanyId(long id, long companyId);
 
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	List<Coupon> findAllByCategory(int category);
 
 	List<Coupon> findAllByCompanyIdAndCategory(long companyId, int category);
@@ -39,9 +47,161 @@ public interface CouponRepository extends JpaRepository<Coupon, Long> {
 	@Query("SELECT c FROM Coupon c WHERE c.price <= :price")
 	List<Coupon> findAllBelowPrice(double price);
 
-	@Query("SELECT c FROM Coupon c WHERE c.price <= :price AND companyId = :companyId")
+	@Query("SELECT c FROM Coupon c WHERE c.price <= :price AND c.company.id = :companyId")
 	List<Coupon> findAllByCompanyIdAndBelowPrice(long companyId, double price);
 
 	@Query("SELECT c FROM Customer cust JOIN cust.coupons c WHERE cust.id = :customerId AND c.price <= :price")
 	List<Coupon> findAllByCustomerIdAndBelowPrice(long customerId, double price);
+
+	@Query(value = "SELECT id FROM coupon WHERE company_id = :companyId ORDER BY id LIMIT :limit", nativeQuery = true)
+	List<Long> findIdsByCompanyId(long companyId, int limit);
+
+	@Modifying
+	@Query(value = "DELETE FROM customer_coupon WHERE coupon_id IN :couponIds", nativeQuery = true)
+	int deleteOwnershipsByCouponIds(Collection<Long> couponIds);
+
+	@Modifying
+	@Query(value = "DELETE FROM customer_coupon WHERE customer_id = :customerId LIMIT :limit", nativeQuery = true)
+	int deleteOwnershipsByCustomerId(long customerId, int limit);
+
+	@Modifying
+	@Query(value = "DELETE FROM coupon WHERE id IN :ids", nativeQuery = true)
+	int deleteAllByIds(Collection<Long> ids);
+
+	@Modifying
+	@Query("UPDATE Coupon c SET c.deletedMillis = :deletedMillis, c.changeVersion = :changeVersion WHERE c.id = :id")
+	int markDeleted(long id, long deletedMillis, long changeVersion);
+
+	@Query("SELECT c.id AS id, c.category AS category FROM Coupon c WHERE c.company.id = :companyId"
+			+ " AND c.id > :afterId ORDER BY c.id")
+	List<CouponCategory> findCategoriesByCompanyId(long companyId, long afterId, Pageable pageable);
+
+	@Modifying
+	@Query("UPDATE Coupon c SET c.deletedMillis = :deletedMillis, c.changeVersion = :changeVersion"
+			+ " WHERE c.id IN :ids")
+	int markDeletedByIds(Collection<Long> ids, long deletedMillis, long changeVersion);
+
+	@Query(value = "SELECT id FROM coupon WHERE deleted_millis <= :before ORDER BY deleted_millis LIMIT :limit",
+			nativeQuery = true)
+	List<Long> findDeletedIds(long before, int limit);
+
+	@Query("SELECT c.id AS id, c.endDate AS endDate FROM Coupon c WHERE c.endDate < :before"
+			+ " AND (c.endDate > :afterEndDate OR (c.endDate = :afterEndDate AND c.id > :afterId))"
+			+ " ORDER BY c.endDate, c.id")
+	List<CouponKey> findExpiredKeys(Date before, Date afterEndDate, long afterId, Pageable pageable);
+
+	@Query("SELECT MIN(c.endDate) FROM Coupon c WHERE c.endDate < :before")
+	Date findOldestEndDateBefore(Date before);
+
+	@Modifying
+	@Query(value = "INSERT INTO coupon_archive (id, title, start_date, end_date, category, amount, description, price,"
+			+ " image, company_id, archived_millis, change_version) SELECT id, title, start_date, end_date, category,"
+			+ " amount, description, price, image, company_id, :archivedMillis, :changeVersion FROM coupon"
+			+ " WHERE id IN :ids", nativeQuery = true)
+	int archiveAllByIds(Collection<Long> ids, long archivedMillis, long changeVersion);
+
+	@Modifying
+	@Query(value = "INSERT INTO customer_coupon_archive (customer_id, coupon_id)"
+			+ " SELECT customer_id, coupon_id FROM customer_coupon WHERE coupon_id IN :couponIds", nativeQuery = true)
+	int archiveOwnershipsByCouponIds(Collection<Long> couponIds);
+
+	@Modifying
+	@Query(value = "INSERT INTO customer_coupon (customer_id, coupon_id, change_version)"
+			+ " VALUES (:customerId, :couponId, :changeVersion)", nativeQuery = true)
+	int addOwnership(long customerId, long couponId, long changeVersion);
+
+	@Query(value = "SELECT id, change_version AS changeVersion, deleted_millis AS deletedMillis FROM coupon"
+			+ " WHERE change_version > :since AND change_version <= :upto ORDER BY change_version LIMIT :limit",
+			nativeQuery = true)
+	List<ChangedCoupon> findChangedIds(long since, long upto, int limit);
+
+	@Query(value = "SELECT id, change_version AS changeVersion, deleted_millis AS deletedMillis FROM coupon"
+			+ " WHERE category = :category AND change_version > :since AND change_version <= :upto"
+			+ " ORDER BY change_version LIMIT :limit", nativeQuery = true)
+	List<ChangedCoupon> findChangedIdsByCategory(int category, long since, long upto, int limit);
+
+	/**
+	 * The coupons whose ownership is new, then the owned coupons that changed
+	 */
+	@Query(value = "SELECT c.id AS id, c.change_version AS changeVersion, c.deleted_millis AS deletedMillis"
+			+ " FROM customer_coupon cc JOIN coupon c ON c.id = cc.coupon_id WHERE cc.customer_id = :customerId"
+			+ " AND cc.change_version > :since AND cc.change_version <= :upto AND c.change_version <= :upto"
+			+ " UNION SELECT c.id, c.change_version, c.deleted_millis FROM coupon c"
+			+ " JOIN customer_coupon cc ON cc.customer_id = :customerId AND cc.coupon_id = c.id"
+			+ " WHERE c.change_version > :since AND c.change_version <= :upto AND cc.change_version <= :upto"
+			+ " LIMIT :limit", nativeQuery = true)
+	List<ChangedCoupon> findChangedIdsByCustomerId(long customerId, long since, long upto, int limit);
+
+	@Query(value = "SELECT id FROM coupon_archive WHERE change_version > :since AND change_version <= :upto"
+			+ " AND (:category = 0 OR category = :category) LIMIT :limit", nativeQuery = true)
+	List<Long> findArchivedIds(int category, long since, long upto, int limit);
+
+	@Query(value = "SELECT a.id FROM customer_coupon_archive cca JOIN coupon_archive a ON a.id = cca.coupon_id"
+			+ " WHERE cca.customer_id = :customerId AND a.change_version > :since AND a.change_version <= :upto"
+			+ " LIMIT :limit", nativeQuery = true)
+	List<Long> findArchivedIdsByCustomerId(long customerId, long since, long upto, int limit);
+
+	@Query(value = "SELECT c.id AS id, c.category AS category, c.price AS price, c.end_date AS endDate"
+			+ " FROM customer_coupon cc JOIN coupon c ON c.id = cc.coupon_id WHERE cc.customer_id = :customerId"
+			+ " AND c.deleted_millis IS NULL ORDER BY c.id", nativeQuery = true)
+	List<WalletEntry> findWalletByCustomerId(long customerId);
+
+	@Query(value = "SELECT id, amount FROM coupon WHERE deleted_millis IS NULL", nativeQuery = true)
+	List<CouponStock> findAllStock();
+
+	/**
+	 * The id and the category of a coupon
+	 */
+	interface CouponCategory {
+
+		long getId();
+
+		int getCategory();
+	}
+
+	/**
+	 * The position of a coupon in the (end_date, id) order of idx_coupon_end_date
+	 */
+	interface CouponKey {
+
+		long getId();
+
+		Date getEndDate();
+	}
+
+	/**
+	 * A coupon changed since a version, deletedMillis is set for a tombstone
+	 */
+	interface ChangedCoupon {
+
+		long getId();
+
+		long getChangeVersion();
+
+		Long getDeletedMillis();
+	}
+
+	/**
+	 * The remaining amount of a coupon
+	 */
+	interface CouponStock {
+
+		long getId();
+
+		int getAmount();
+	}
+
+	/**
+	 * A coupon of a customer with the columns its endpoints filter on
+	 */
+	interface WalletEntry {
+
+		long getId();
+
+		int getCategory();
+
+		double getPrice();
+
+		Date getEndDate();
+	}
 }
@@ -1,6 +1,15 @@
 package com.jb.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.jb.entity.Customer;
@@ -8,5 +17,36 @@ import com.jb.entity.Customer;
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
 
+	// Never cached, the query cache would keep the credentials as keys
 	Customer findByEmailAndPassword(String email, String password);
+
+	/*
+	 * The email queries are native so that they also see the tombstones, an
+	 * email stays taken until its row is purged
+	 */
+	@Query(value = "SELECT email FROM customer WHERE email IN :emails", nativeQuery = true)
+	List<String> findExistingEmails(Collection<String> emails);
+
+	@Query(value = "SELECT COUNT(*) FROM customer WHERE email = :email", nativeQuery = true)
+	long countAllByEmail(String email);
+
+	default boolean existsByEmail(String email) {
+		return countAllByEmail(email) > 0;
+	}
+
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query(value = "SELECT email FROM customer", nativeQuery = true)
+	Stream<String> streamAllEmails();
+
+	@Modifying
+	@Query(value = "DELETE FROM customer WHERE id = :id", nativeQuery = true)
+	int deleteOne(long id);
+
+	@Modifying
+	@Query("UPDATE Customer c SET c.deletedMillis = :deletedMillis WHERE c.id = :id")
+	int markDeleted(long id, long deletedMillis);
+
+	@Query(value = "SELECT id FROM customer WHERE deleted_millis <= :before ORDER BY deleted_millis LIMIT :limit",
+			nativeQuery = true)
+	List<Long> findDeletedIds(long before, int limit);
 }
\ No newline at end of file
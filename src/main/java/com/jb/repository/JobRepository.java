@@ -0,0 +1,38 @@
+package com.jb.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.jb.entity.Job;
+
+@Repository
+public interface JobRepository extends JpaRepository<Job, Long> {
+
+	List<Job> findAllByStatusInOrderById(Collection<Job.Status> statuses);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Job j SET j.status = :status, j.startedMillis = :startedMillis WHERE j.id = :id")
+	int markStarted(long id, Job.Status status, long startedMillis);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Job j SET j.progress = :progress, j.checkpoint = :checkpoint WHERE j.id = :id")
+	int updateProgress(long id, long progress, long checkpoint);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Job j SET j.status = :status, j.message = :message, j.finishedMillis = :finishedMillis WHERE j.id = :id")
+	int markFinished(long id, Job.Status status, String message, long finishedMillis);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Job j SET j.cancelRequested = true WHERE j.id = :id")
+	int requestCancel(long id);
+}
@@ -13,12 +13,15 @@ import com.jb.rest.controller.LoginController;
 import com.jb.rest.ex.CompanyAlreadyExistsException;
 import com.jb.rest.ex.CouponAlreadyPurchasedException;
 import com.jb.rest.ex.CustomerAlreadyExistsException;
+import com.jb.rest.ex.InvalidImageException;
 import com.jb.rest.ex.InvalidLoginException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.InvalidTokenException;
 import com.jb.rest.ex.NoSuchCouponException;
+import com.jb.rest.ex.NoSuchJobException;
 import com.jb.rest.ex.NoSuchMemberException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 import com.jb.rest.ex.ZeroCouponAmountException;
 
 /**
@@ -60,6 +63,13 @@ public class CSRestExceptionHandler {
 		return CSErrorResponse.now(HttpStatus.BAD_REQUEST, String.format("Bad request %s", ex.getMessage()));
 	}
 
+	@ExceptionHandler(NoSuchJobException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	public CSErrorResponse handleNoSuchJob(NoSuchJobException ex) {
+		return CSErrorResponse.now(HttpStatus.BAD_REQUEST, String.format("Bad request %s", ex.getMessage()));
+	}
+
 	@ExceptionHandler(CouponAlreadyPurchasedException.class)
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	@ResponseBody
@@ -101,4 +111,18 @@ public class CSRestExceptionHandler {
 	public CSErrorResponse handleInvalidPrice(InvalidPriceException ex) {
 		return CSErrorResponse.now(HttpStatus.BAD_REQUEST, String.format("Bad request %s", ex.getMessage()));
 	}
+
+	@ExceptionHandler(InvalidImageException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	public CSErrorResponse handleInvalidImage(InvalidImageException ex) {
+		return CSErrorResponse.now(HttpStatus.BAD_REQUEST, String.format("Bad request %s", ex.getMessage()));
+	}
+
+	@ExceptionHandler(TooManyIdsException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	public CSErrorResponse handleTooManyIds(TooManyIdsException ex) {
+		return CSErrorResponse.now(HttpStatus.BAD_REQUEST, String.format("Bad request %s", ex.getMessage()));
+	}
 }
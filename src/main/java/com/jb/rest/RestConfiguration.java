@@ -5,6 +5,12 @@ import java.util.Map;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 /**
  * This class was created to allow Spring to manage objects that I did not
@@ -20,4 +26,29 @@ public class RestConfiguration {
 	public Map<String, ClientSession> tokensMap() {
 		return new HashMap<>();
 	}
+
+	/**
+	 * This function replaces the default Smile converter of Spring by one built
+	 * with the Jackson settings of the application, so the binary responses
+	 * (application/x-jackson-smile) have the same fields and date format as the
+	 * JSON ones
+	 * 
+	 * @param builder
+	 * @return MappingJackson2SmileHttpMessageConverter
+	 */
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+	}
+
+	/**
+	 * This function does the same for the CBOR converter (application/cbor)
+	 * 
+	 * @param builder
+	 * @return MappingJackson2CborHttpMessageConverter
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
 }
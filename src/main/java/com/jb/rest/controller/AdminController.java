@@ -1,31 +1,51 @@
 package com.jb.rest.controller;
 
+import java.io.IOException;
 import java.sql.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.jb.analytics.AnalyticsReport;
+import com.jb.cache.CacheStatistics;
+import com.jb.cache.FlightStatistics;
+import com.jb.cache.ResponseCache;
+import com.jb.cache.ScopeVersions;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
 import com.jb.entity.Customer;
+import com.jb.entity.Job;
+import com.jb.feed.FeedStatistics;
+import com.jb.ingest.ImportReport;
+import com.jb.journal.JournalRecord;
+import com.jb.maintenance.SweeperStatistics;
 import com.jb.rest.ClientSession;
 import com.jb.rest.ex.CompanyAlreadyExistsException;
 import com.jb.rest.ex.CustomerAlreadyExistsException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.InvalidTokenException;
+import com.jb.rest.ex.NoSuchJobException;
 import com.jb.rest.ex.NoSuchMemberException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.routing.RouteStatistics;
 import com.jb.service.AdminService;
 
 @RestController
@@ -33,6 +53,8 @@ import com.jb.service.AdminService;
 public class AdminController {
 
 	// Field
+	private static final int JOURNAL_LIMIT = 1000;
+
 	private Map<String, ClientSession> tokensMap;
 
 	/**
@@ -142,50 +164,55 @@ public class AdminController {
 	}
 
 	/**
-	 * This function returns us all coupons from the database
+	 * This function returns us all coupons from the database, already encoded in
+	 * the format of the Accept header, or answers 304 when the ETag sent in
+	 * If-None-Match is still current
 	 * 
 	 * @param token
-	 * @return ResponseEntity<List<Coupon>>
+	 * @param request
+	 * @return ResponseEntity<byte[]>
 	 * @throws InvalidTokenException
 	 */
 	@GetMapping("/admin/coupons/{token}")
-	public ResponseEntity<List<Coupon>> getAllCoupons(@PathVariable String token) throws InvalidTokenException {
+	public ResponseEntity<byte[]> getAllCoupons(@PathVariable String token, WebRequest request)
+			throws InvalidTokenException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
 		}
 		AdminService service = (AdminService) session.getService();
-		final List<Coupon> allCoupons = service.getAllCoupons();
-
-		if (allCoupons.isEmpty()) {
-			return ResponseEntity.noContent().build();
+		long version = service.getAllCouponsVersion();
+		if (request.checkNotModified(ScopeVersions.etag(version))) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
 		}
-		return ResponseEntity.ok(allCoupons);
+		return service.getAllCouponsResponse(ResponseCache.negotiate(request.getHeader(HttpHeaders.ACCEPT)))
+				.toResponseEntity(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
 	}
 
 	/**
-	 * This function returns us all coupons from the database by category
+	 * This function returns us all coupons from the database by category, already
+	 * encoded in the format of the Accept header
 	 * 
 	 * @param token
 	 * @param category
-	 * @return ResponseEntity<List<Coupon>>
+	 * @param accept
+	 * @param acceptEncoding
+	 * @return ResponseEntity<byte[]>
 	 * @throws InvalidTokenException
 	 * @throws NonExistingCategoryException
 	 */
 	@GetMapping("/admin/couponsByCategory/{token}")
-	public ResponseEntity<List<Coupon>> getAllCouponsByCategory(@PathVariable String token, @RequestParam int category)
+	public ResponseEntity<byte[]> getAllCouponsByCategory(@PathVariable String token, @RequestParam int category,
+			@RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+			@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
 			throws InvalidTokenException, NonExistingCategoryException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
 		}
 		AdminService service = (AdminService) session.getService();
-		final List<Coupon> allCouponsByCategory = service.getAllCouponsByCategory(category);
-
-		if (allCouponsByCategory.isEmpty()) {
-			return ResponseEntity.noContent().build();
-		}
-		return ResponseEntity.ok(allCouponsByCategory);
+		return service.getAllCouponsByCategoryResponse(category, ResponseCache.negotiate(accept))
+				.toResponseEntity(acceptEncoding);
 	}
 
 	/**
@@ -279,4 +306,415 @@ public class AdminController {
 		service.removeCustomer(id);
 		return ResponseEntity.ok(id);
 	}
+
+	/**
+	 * This function returns us the statistics of the second level cache
+	 * 
+	 * @param token
+	 * @return ResponseEntity<CacheStatistics>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/cacheStatistics/{token}")
+	public ResponseEntity<CacheStatistics> getCacheStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getCacheStatistics());
+	}
+
+	/**
+	 * This function returns us the statistics of the expired coupon sweeper
+	 * 
+	 * @param token
+	 * @return ResponseEntity<SweeperStatistics>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/sweeperStatistics/{token}")
+	public ResponseEntity<SweeperStatistics> getSweeperStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getSweeperStatistics());
+	}
+
+	/**
+	 * This function allows us to import many companies at once from a CSV
+	 * (text/csv) or JSON array (application/json) body
+	 * 
+	 * @param token
+	 * @param contentType
+	 * @param request
+	 * @return ResponseEntity<ImportReport>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@PostMapping("/admin/import/companies/{token}")
+	public ResponseEntity<ImportReport> importCompanies(@PathVariable String token,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, HttpServletRequest request)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.importCompanies(request.getInputStream(), contentType));
+	}
+
+	/**
+	 * This function allows us to import many customers at once from a CSV
+	 * (text/csv) or JSON array (application/json) body
+	 * 
+	 * @param token
+	 * @param contentType
+	 * @param request
+	 * @return ResponseEntity<ImportReport>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@PostMapping("/admin/import/customers/{token}")
+	public ResponseEntity<ImportReport> importCustomers(@PathVariable String token,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, HttpServletRequest request)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.importCustomers(request.getInputStream(), contentType));
+	}
+
+	/**
+	 * This function allows us to run the deletion of a company in the background, it returns
+	 * the job at once
+	 * 
+	 * @param token
+	 * @param id
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws NoSuchMemberException
+	 */
+	@PostMapping("/admin/jobs/removeCompany/{token}")
+	public ResponseEntity<Job> removeCompanyAsync(@PathVariable String token, @RequestParam long id)
+			throws InvalidTokenException, NoSuchMemberException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.removeCompanyAsync(id));
+	}
+
+	/**
+	 * This function allows us to run the deletion of a customer in the background, it returns
+	 * the job at once
+	 * 
+	 * @param token
+	 * @param id
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws NoSuchMemberException
+	 */
+	@PostMapping("/admin/jobs/removeCustomer/{token}")
+	public ResponseEntity<Job> removeCustomerAsync(@PathVariable String token, @RequestParam long id)
+			throws InvalidTokenException, NoSuchMemberException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.removeCustomerAsync(id));
+	}
+
+	/**
+	 * This function allows us to import many companies in the background from a CSV
+	 * (text/csv) or JSON array (application/json) body, it returns the job at once
+	 * 
+	 * @param token
+	 * @param contentType
+	 * @param request
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@PostMapping("/admin/jobs/import/companies/{token}")
+	public ResponseEntity<Job> importCompaniesAsync(@PathVariable String token,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, HttpServletRequest request)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.importCompaniesAsync(request.getInputStream(), contentType));
+	}
+
+	/**
+	 * This function allows us to import many customers in the background from a CSV
+	 * (text/csv) or JSON array (application/json) body, it returns the job at once
+	 * 
+	 * @param token
+	 * @param contentType
+	 * @param request
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@PostMapping("/admin/jobs/import/customers/{token}")
+	public ResponseEntity<Job> importCustomersAsync(@PathVariable String token,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, HttpServletRequest request)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.importCustomersAsync(request.getInputStream(), contentType));
+	}
+
+	/**
+	 * This function returns us the status and the progress of a background job
+	 * 
+	 * @param token
+	 * @param id
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws NoSuchJobException
+	 */
+	@GetMapping("/admin/jobs/{token}")
+	public ResponseEntity<Job> getJob(@PathVariable String token, @RequestParam long id)
+			throws InvalidTokenException, NoSuchJobException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getJob(id));
+	}
+
+	/**
+	 * This function allows us to cancel a background job
+	 * 
+	 * @param token
+	 * @param id
+	 * @return ResponseEntity<Job>
+	 * @throws InvalidTokenException
+	 * @throws NoSuchJobException
+	 */
+	@DeleteMapping("/admin/jobs/{token}")
+	public ResponseEntity<Job> cancelJob(@PathVariable String token, @RequestParam long id)
+			throws InvalidTokenException, NoSuchJobException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.cancelJob(id));
+	}
+
+	/**
+	 * This function returns us the whole platform report : sales per company, per
+	 * category and per day, the top customers and the inventory per company. The
+	 * request thread is released while the report is built
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<AnalyticsReport>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/{token}")
+	public CompletableFuture<ResponseEntity<AnalyticsReport>> getAnalyticsReport(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(ResponseEntity::ok);
+	}
+
+	/**
+	 * This function returns us the number of sales and their value per company
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/salesPerCompany/{token}")
+	public CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>> getAnalyticsSalesPerCompany(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(report -> rows(report.getSalesPerCompany()));
+	}
+
+	/**
+	 * This function returns us the number of sales and their value per category
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/salesPerCategory/{token}")
+	public CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>> getAnalyticsSalesPerCategory(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(report -> rows(report.getSalesPerCategory()));
+	}
+
+	/**
+	 * This function returns us the number of sales and their value per coupon start date
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/salesPerDay/{token}")
+	public CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>> getAnalyticsSalesPerDay(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(report -> rows(report.getSalesPerDay()));
+	}
+
+	/**
+	 * This function returns us the customers who spent the most
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/topCustomers/{token}")
+	public CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>> getAnalyticsTopCustomers(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(report -> rows(report.getTopCustomers()));
+	}
+
+	/**
+	 * This function returns us the coupons listed and the units remaining per company
+	 * 
+	 * @param token
+	 * @return CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/analytics/inventory/{token}")
+	public CompletableFuture<ResponseEntity<List<AnalyticsReport.Row>>> getAnalyticsInventory(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return service.getAnalyticsReport().thenApply(report -> rows(report.getInventoryPerCompany()));
+	}
+
+	/**
+	 * This function returns us the number of clients subscribed to the change feed
+	 * and how many events were sent, coalesced and dropped
+	 * 
+	 * @param token
+	 * @return ResponseEntity<FeedStatistics>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/feedStatistics/{token}")
+	public ResponseEntity<FeedStatistics> getFeedStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getFeedStatistics());
+	}
+
+	/**
+	 * This function returns us per catalog query how many requests called the
+	 * database and how many shared the result of the same query already running
+	 * 
+	 * @param token
+	 * @return ResponseEntity<List<FlightStatistics>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/singleFlightStatistics/{token}")
+	public ResponseEntity<List<FlightStatistics>> getSingleFlightStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getSingleFlightStatistics());
+	}
+
+	/**
+	 * This function returns us per database how many reads were sent to the read
+	 * replicas and to the primary, and how far behind the primary each replica is
+	 * 
+	 * @param token
+	 * @return ResponseEntity<List<RouteStatistics>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/admin/routeStatistics/{token}")
+	public ResponseEntity<List<RouteStatistics>> getRouteStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		return ResponseEntity.ok(service.getRouteStatistics());
+	}
+
+	/**
+	 * This function returns us the purchases and inventory changes written to the
+	 * purchase journal from a sequence, at most a thousand at a time
+	 * 
+	 * @param token
+	 * @param from
+	 * @param limit
+	 * @return ResponseEntity<List<JournalRecord>>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@GetMapping("/admin/journal/{token}")
+	public ResponseEntity<List<JournalRecord>> getJournal(@PathVariable String token,
+			@RequestParam(defaultValue = "0") long from, @RequestParam(defaultValue = "1000") int limit)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		AdminService service = (AdminService) session.getService();
+		List<JournalRecord> records = service.getJournal(from, Math.min(limit, JOURNAL_LIMIT));
+		if (records.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(records);
+	}
+
+	private static ResponseEntity<List<AnalyticsReport.Row>> rows(List<AnalyticsReport.Row> rows) {
+		if (rows.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(rows);
+	}
 }
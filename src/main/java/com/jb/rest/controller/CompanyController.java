@@ -1,30 +1,46 @@
 package com.jb.rest.controller;
 
+import java.io.IOException;
 import java.sql.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.jb.cache.ResponseCache;
+import com.jb.cache.ScopeVersions;
+import com.jb.entity.CategoryStats;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponPatch;
+import com.jb.entity.CouponResult;
+import com.jb.ingest.ImportReport;
 import com.jb.rest.ClientSession;
+import com.jb.rest.ex.InvalidImageException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.InvalidTokenException;
 import com.jb.rest.ex.NoSuchCouponException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 import com.jb.service.CompanyService;
 
 @RestController
@@ -49,10 +65,11 @@ public class CompanyController {
 	 * @param coupon
 	 * @return ResponseEntity<Coupon>
 	 * @throws InvalidTokenException
+	 * @throws InvalidImageException
 	 */
 	@PostMapping("/companies/coupons/{token}")
 	public ResponseEntity<Coupon> createCoupon(@PathVariable String token, @RequestBody Coupon coupon)
-			throws InvalidTokenException {
+			throws InvalidTokenException, InvalidImageException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
@@ -83,51 +100,78 @@ public class CompanyController {
 	}
 
 	/**
-	 * This function allows us to recover all the coupons of a certain company
+	 * This function allows us to retrieve many coupons in one call, in the order
+	 * of the ids, with found set to false for the ids that are not coupons of the
+	 * company
 	 * 
 	 * @param token
-	 * @return ResponseEntity<List<Coupon>>
+	 * @param ids   : comma separated or repeated
+	 * @return ResponseEntity<List<CouponResult>>
 	 * @throws InvalidTokenException
+	 * @throws TooManyIdsException
 	 */
-	@GetMapping("/companies/allCoupons/{token}")
-	public ResponseEntity<List<Coupon>> getAllCompanyCoupons(@PathVariable String token) throws InvalidTokenException {
+	@GetMapping("/companies/coupons/batch/{token}")
+	public ResponseEntity<List<CouponResult>> getCoupons(@PathVariable String token, @RequestParam List<Long> ids)
+			throws InvalidTokenException, TooManyIdsException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
 		}
 		CompanyService service = (CompanyService) session.getService();
-		final List<Coupon> allCompanyCoupons = service.getAllCompanyCoupons();
+		return ResponseEntity.ok(service.getCoupons(ids));
+	}
 
-		if (allCompanyCoupons.isEmpty()) {
-			return ResponseEntity.noContent().build();
+	/**
+	 * This function allows us to recover all the coupons of a certain company,
+	 * already encoded in the format of the Accept header, or answers 304 when the
+	 * ETag sent in If-None-Match is still current
+	 * 
+	 * @param token
+	 * @param request
+	 * @return ResponseEntity<byte[]>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/companies/allCoupons/{token}")
+	public ResponseEntity<byte[]> getAllCompanyCoupons(@PathVariable String token, WebRequest request)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
 		}
-		return ResponseEntity.ok(allCompanyCoupons);
+		CompanyService service = (CompanyService) session.getService();
+		long version = service.getAllCompanyCouponsVersion();
+		if (request.checkNotModified(ScopeVersions.etag(version))) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+		}
+		return service.getAllCompanyCouponsResponse(ResponseCache.negotiate(request.getHeader(HttpHeaders.ACCEPT)))
+				.toResponseEntity(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
 	}
 
 	/**
 	 * This function allows us to recover all the coupons of a certain company by
-	 * category
+	 * category, already encoded in the format of the Accept header
 	 * 
 	 * @param token
 	 * @param category
-	 * @return ResponseEntity<List<Coupon>>
+	 * @param accept
+	 * @param acceptEncoding
+	 * @return ResponseEntity<byte[]>
 	 * @throws InvalidTokenException
 	 * @throws NonExistingCategoryException
 	 */
 	@GetMapping("/companies/allCouponsByCategory/{token}")
-	public ResponseEntity<List<Coupon>> getAllCompanyCouponsByCategory(@PathVariable String token,
-			@RequestParam int category) throws InvalidTokenException, NonExistingCategoryException {
+	public ResponseEntity<byte[]> getAllCompanyCouponsByCategory(@PathVariable String token,
+			@RequestParam int category,
+			@RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+			@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
+			throws InvalidTokenException, NonExistingCategoryException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
 		}
 		CompanyService service = (CompanyService) session.getService();
-		final List<Coupon> allCompanyCouponsByCategory = service.getAllCompanyCouponsByCategory(category);
-
-		if (allCompanyCouponsByCategory.isEmpty()) {
-			return ResponseEntity.noContent().build();
-		}
-		return ResponseEntity.ok(allCompanyCouponsByCategory);
+		return service.getAllCompanyCouponsByCategoryResponse(category, ResponseCache.negotiate(accept))
+				.toResponseEntity(acceptEncoding);
 	}
 
 	/**
@@ -187,10 +231,12 @@ public class CompanyController {
 	 * @param coupon
 	 * @return ResponseEntity<Coupon>
 	 * @throws InvalidTokenException
+	 * @throws NoSuchCouponException
+	 * @throws InvalidImageException
 	 */
 	@PutMapping("/companies/coupons/{token}")
 	public ResponseEntity<Coupon> updateCoupon(@PathVariable String token, @RequestBody Coupon coupon)
-			throws InvalidTokenException {
+			throws InvalidTokenException, NoSuchCouponException, InvalidImageException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
@@ -199,6 +245,31 @@ public class CompanyController {
 		return ResponseEntity.ok(service.updateCoupon(coupon));
 	}
 
+	/**
+	 * This function allows us to modify only some fields of a coupon
+	 * 
+	 * @param token
+	 * @param id
+	 * @param patch
+	 * @return ResponseEntity<Coupon>
+	 * @throws InvalidTokenException
+	 * @throws NoSuchCouponException
+	 * @throws NonExistingCategoryException
+	 * @throws InvalidPriceException
+	 * @throws InvalidImageException
+	 */
+	@PatchMapping("/companies/coupons/{token}")
+	public ResponseEntity<Coupon> patchCoupon(@PathVariable String token, @RequestParam long id,
+			@RequestBody CouponPatch patch) throws InvalidTokenException, NoSuchCouponException,
+			NonExistingCategoryException, InvalidPriceException, InvalidImageException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CompanyService service = (CompanyService) session.getService();
+		return ResponseEntity.ok(service.patchCoupon(id, patch));
+	}
+
 	/**
 	 * This feature allows us to delete a coupon
 	 * 
@@ -239,4 +310,74 @@ public class CompanyController {
 		service.updateCompany(company);
 		return ResponseEntity.ok(company);
 	}
+
+	/**
+	 * This function allows us to import many coupons at once from a CSV
+	 * (text/csv) or JSON array (application/json) body
+	 * 
+	 * @param token
+	 * @param contentType
+	 * @param request
+	 * @return ResponseEntity<ImportReport>
+	 * @throws InvalidTokenException
+	 * @throws IOException
+	 */
+	@PostMapping("/companies/import/coupons/{token}")
+	public ResponseEntity<ImportReport> importCoupons(@PathVariable String token,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, HttpServletRequest request)
+			throws InvalidTokenException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CompanyService service = (CompanyService) session.getService();
+		return ResponseEntity.ok(service.importCoupons(request.getInputStream(), contentType));
+	}
+
+	/**
+	 * This function stores the image sent as the body of the request in the image
+	 * store and returns its hash, to be given as the image of the coupons. The
+	 * image is then served by /api/images/{hash}
+	 * 
+	 * @param token
+	 * @param request
+	 * @return ResponseEntity<String> : the hash of the image
+	 * @throws InvalidTokenException
+	 * @throws InvalidImageException
+	 * @throws IOException
+	 */
+	@PostMapping("/companies/images/{token}")
+	public ResponseEntity<String> uploadImage(@PathVariable String token, HttpServletRequest request)
+			throws InvalidTokenException, InvalidImageException, IOException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CompanyService service = (CompanyService) session.getService();
+		return ResponseEntity.ok(service.uploadImage(request.getInputStream()));
+	}
+
+	/**
+	 * This function allows us to recover the statistics of the company per
+	 * category : coupons listed, units remaining, units sold and gross value
+	 * 
+	 * @param token
+	 * @return ResponseEntity<List<CategoryStats>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/companies/statistics/{token}")
+	public ResponseEntity<List<CategoryStats>> getCompanyStatistics(@PathVariable String token)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CompanyService service = (CompanyService) session.getService();
+		final List<CategoryStats> statistics = service.getCompanyStatistics();
+
+		if (statistics.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(statistics);
+	}
 }
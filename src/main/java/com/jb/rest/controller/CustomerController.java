@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -15,16 +16,23 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.jb.cache.ScopeVersions;
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponResult;
 import com.jb.entity.Customer;
 import com.jb.rest.ClientSession;
 import com.jb.rest.ex.CouponAlreadyPurchasedException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.InvalidTokenException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 import com.jb.rest.ex.ZeroCouponAmountException;
 import com.jb.service.CustomerService;
+import com.jb.stock.Availability;
+import com.jb.sync.CouponChanges;
+import com.jb.trending.Trend;
 
 @RestController
 @RequestMapping("/api")
@@ -60,18 +68,25 @@ public class CustomerController {
 
 	/**
 	 * This feature allows us to recover all customer coupons
+	 * or answers 304 when the ETag sent in If-None-Match is still current
 	 * 
 	 * @param token
+	 * @param request
 	 * @return ResponseEntity<List<Coupon>>
 	 * @throws InvalidTokenException
 	 */
 	@GetMapping("/customers/coupons/{token}")
-	public ResponseEntity<List<Coupon>> getAllCustomerCoupons(@PathVariable String token) throws InvalidTokenException {
+	public ResponseEntity<List<Coupon>> getAllCustomerCoupons(@PathVariable String token, WebRequest request)
+			throws InvalidTokenException {
 		ClientSession session = getSession(token);
 		if (session == null) {
 			throw new InvalidTokenException("Invalid token");
 		}
 		CustomerService service = (CustomerService) session.getService();
+		long version = service.getAllCustomerCouponsVersion();
+		if (version >= 0 && request.checkNotModified(ScopeVersions.etag(version))) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+		}
 		final List<Coupon> allCustomerCoupons = service.getAllCustomerCoupons();
 
 		if (allCustomerCoupons.isEmpty()) {
@@ -194,4 +209,189 @@ public class CustomerController {
 		CustomerService service = (CustomerService) session.getService();
 		return ResponseEntity.ok(service.purchaseCoupon(id));
 	}
+
+	/**
+	 * This function allows us to retrieve many coupons of the catalog in one call,
+	 * in the order of the ids, with found set to false for the ids that are not
+	 * coupons
+	 * 
+	 * @param token
+	 * @param ids   : comma separated or repeated
+	 * @return ResponseEntity<List<CouponResult>>
+	 * @throws InvalidTokenException
+	 * @throws TooManyIdsException
+	 */
+	@GetMapping("/customers/coupons/batch/{token}")
+	public ResponseEntity<List<CouponResult>> getCoupons(@PathVariable String token, @RequestParam List<Long> ids)
+			throws InvalidTokenException, TooManyIdsException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		return ResponseEntity.ok(service.getCoupons(ids));
+	}
+
+	/**
+	 * This function allows us to know how many units of many coupons are left, -1
+	 * for an unknown coupon, with the age of the oldest change that may be missing
+	 * 
+	 * @param token
+	 * @param ids   : comma separated or repeated
+	 * @return ResponseEntity<Availability>
+	 * @throws InvalidTokenException
+	 * @throws TooManyIdsException
+	 */
+	@GetMapping("/customers/availability/{token}")
+	public ResponseEntity<Availability> getAvailability(@PathVariable String token, @RequestParam long[] ids)
+			throws InvalidTokenException, TooManyIdsException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		return ResponseEntity.ok(service.getAvailability(ids));
+	}
+
+	/**
+	 * This function allows us to search the coupons by keywords in their title and
+	 * description
+	 * 
+	 * @param token
+	 * @param query
+	 * @param category : optional, 0 for all the categories
+	 * @return ResponseEntity<List<Coupon>>
+	 * @throws InvalidTokenException
+	 * @throws NonExistingCategoryException
+	 */
+	@GetMapping("/customers/search/{token}")
+	public ResponseEntity<List<Coupon>> searchCoupons(@PathVariable String token, @RequestParam String query,
+			@RequestParam(defaultValue = "0") int category) throws InvalidTokenException, NonExistingCategoryException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		final List<Coupon> coupons = service.searchCoupons(query, category);
+
+		if (coupons.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(coupons);
+	}
+
+	/**
+	 * This function allows us to suggest the words starting with a prefix while
+	 * the customer is typing
+	 * 
+	 * @param token
+	 * @param prefix
+	 * @return ResponseEntity<List<String>>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/customers/autocomplete/{token}")
+	public ResponseEntity<List<String>> autocomplete(@PathVariable String token, @RequestParam String prefix)
+			throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		return ResponseEntity.ok(service.autocomplete(prefix));
+	}
+
+	/**
+	 * This function allows us to recover the coupons purchased the most in the last hour
+	 * 
+	 * @param token
+	 * @param category : optional, 0 for all the categories
+	 * @return ResponseEntity<List<Trend>>
+	 * @throws InvalidTokenException
+	 * @throws NonExistingCategoryException
+	 */
+	@GetMapping("/customers/trending/{token}")
+	public ResponseEntity<List<Trend>> getTrendingCoupons(@PathVariable String token,
+			@RequestParam(defaultValue = "0") int category) throws InvalidTokenException, NonExistingCategoryException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		final List<Trend> trends = service.getTrendingCoupons(category);
+
+		if (trends.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(trends);
+	}
+
+	/**
+	 * This function allows us to recover the coupons purchased the most in the last day
+	 * 
+	 * @param token
+	 * @param category : optional, 0 for all the categories
+	 * @return ResponseEntity<List<Trend>>
+	 * @throws InvalidTokenException
+	 * @throws NonExistingCategoryException
+	 */
+	@GetMapping("/customers/topSellers/{token}")
+	public ResponseEntity<List<Trend>> getTopSellers(@PathVariable String token,
+			@RequestParam(defaultValue = "0") int category) throws InvalidTokenException, NonExistingCategoryException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		final List<Trend> trends = service.getTopSellers(category);
+
+		if (trends.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		return ResponseEntity.ok(trends);
+	}
+
+	/**
+	 * This function allows us to recover only the coupons of the customer
+	 * purchased, updated or removed since the version returned by the previous
+	 * call, instead of all the coupons of the customer
+	 * 
+	 * @param token
+	 * @param since : optional, 0 for all the coupons of the customer
+	 * @return ResponseEntity<CouponChanges>
+	 * @throws InvalidTokenException
+	 */
+	@GetMapping("/customers/coupons/changes/{token}")
+	public ResponseEntity<CouponChanges> getCouponChanges(@PathVariable String token,
+			@RequestParam(defaultValue = "0") long since) throws InvalidTokenException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		return ResponseEntity.ok(service.getCouponChanges(since));
+	}
+
+	/**
+	 * This function allows us to recover only the coupons created, updated or
+	 * removed since the version returned by the previous call, instead of the
+	 * whole catalog
+	 * 
+	 * @param token
+	 * @param since    : optional, 0 for the first call
+	 * @param category : optional, 0 for all the categories
+	 * @return ResponseEntity<CouponChanges>
+	 * @throws InvalidTokenException
+	 * @throws NonExistingCategoryException
+	 */
+	@GetMapping("/customers/catalog/changes/{token}")
+	public ResponseEntity<CouponChanges> getCatalogChanges(@PathVariable String token,
+			@RequestParam(defaultValue = "0") long since, @RequestParam(defaultValue = "0") int category)
+			throws InvalidTokenException, NonExistingCategoryException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		CustomerService service = (CustomerService) session.getService();
+		return ResponseEntity.ok(service.getCatalogChanges(since, category));
+	}
 }
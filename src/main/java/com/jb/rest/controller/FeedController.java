@@ -0,0 +1,67 @@
+package com.jb.rest.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.jb.feed.ChangeFeed;
+import com.jb.rest.ClientSession;
+import com.jb.rest.ex.InvalidTokenException;
+import com.jb.rest.ex.NonExistingCategoryException;
+
+@RestController
+@RequestMapping("/api")
+public class FeedController {
+
+	// Fields
+	private ChangeFeed changeFeed;
+	private Map<String, ClientSession> tokensMap;
+
+	// Constructor
+	@Autowired
+	public FeedController(ChangeFeed changeFeed, @Qualifier("tokens") Map<String, ClientSession> tokensMap) {
+		this.changeFeed = changeFeed;
+		this.tokensMap = tokensMap;
+	}
+
+	private ClientSession getSession(String token) {
+		return tokensMap.get(token);
+	}
+
+	/**
+	 * This function subscribes any logged in client to the changes of the coupons
+	 * as server-sent events, instead of polling the coupon lists. The topic
+	 * CATALOG sends the created, updated and removed coupons, the topic INVENTORY
+	 * sends the units left of a coupon after every change
+	 * 
+	 * @param token
+	 * @param topic
+	 * @param category  : 0 for all the categories
+	 * @param companyId : 0 for all the companies
+	 * @return SseEmitter
+	 * @throws InvalidTokenException
+	 * @throws NonExistingCategoryException
+	 */
+	@GetMapping(path = "/feed/{token}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter subscribe(@PathVariable String token,
+			@RequestParam(defaultValue = "CATALOG") ChangeFeed.Topic topic,
+			@RequestParam(defaultValue = "0") int category, @RequestParam(defaultValue = "0") long companyId)
+			throws InvalidTokenException, NonExistingCategoryException {
+		ClientSession session = getSession(token);
+		if (session == null) {
+			throw new InvalidTokenException("Invalid token");
+		}
+		if (category > 8 || category < 0) {
+			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
+		}
+		return changeFeed.subscribe(topic, category, companyId);
+	}
+}
@@ -0,0 +1,138 @@
+package com.jb.rest.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.jb.image.ImageStore;
+import com.jb.image.StoredImage;
+
+@RestController
+@RequestMapping("/api")
+public class ImageController {
+
+	// Fields
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	private ImageStore imageStore;
+
+	// Constructor
+	@Autowired
+	public ImageController(ImageStore imageStore) {
+		this.imageStore = imageStore;
+	}
+
+	/**
+	 * This function sends an image of the image store. The images are found by
+	 * their hash and never change, so they need no token and can be cached for
+	 * ever by the clients
+	 * 
+	 * @param hash
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	@GetMapping("/images/{hash}")
+	public void getImage(@PathVariable String hash, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		send(imageStore.find(hash, false), request, response);
+	}
+
+	/**
+	 * This function sends the thumbnail of an image, or the image itself while
+	 * its thumbnail is being made
+	 * 
+	 * @param hash
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	@GetMapping("/images/{hash}/thumbnail")
+	public void getThumbnail(@PathVariable String hash, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		send(imageStore.find(hash, true), request, response);
+	}
+
+	/**
+	 * This function answers 304 to a matching If-None-Match and 206 to a single
+	 * byte range. The file is sent by Tomcat with sendfile when the connector
+	 * supports it, otherwise with FileChannel.transferTo, so it is never copied
+	 * into the heap
+	 */
+	private void send(StoredImage image, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		if (image == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		if (new ServletWebRequest(request, response).checkNotModified(image.getEtag())) {
+			return;
+		}
+		long length = image.getLength();
+		long start = 0;
+		long count = length;
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		List<HttpRange> ranges = ifRange == null || ifRange.equals(image.getEtag())
+				? ranges(request.getHeader(HttpHeaders.RANGE))
+				: Collections.emptyList();
+		if (ranges.size() == 1) {
+			HttpRange range = ranges.get(0);
+			start = range.getRangeStart(length);
+			count = range.getRangeEnd(length) - start + 1;
+			if (start < 0 || start >= length || count <= 0) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader(HttpHeaders.CONTENT_RANGE,
+					"bytes " + start + "-" + (start + count - 1) + "/" + length);
+		}
+		response.setContentType(image.getMediaType());
+		response.setContentLengthLong(count);
+		if ("HEAD".equals(request.getMethod())) {
+			return;
+		}
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, image.getPath().toRealPath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, start + count);
+			return;
+		}
+		image.transferTo(Channels.newChannel(response.getOutputStream()), start, count);
+	}
+
+	/**
+	 * Several ranges are answered with the whole image, as the specification
+	 * allows
+	 */
+	private static List<HttpRange> ranges(String header) {
+		if (header == null) {
+			return Collections.emptyList();
+		}
+		try {
+			return HttpRange.parseRanges(header);
+		} catch (IllegalArgumentException e) {
+			return Collections.emptyList();
+		}
+	}
+}
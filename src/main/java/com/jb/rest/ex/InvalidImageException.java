@@ -0,0 +1,9 @@
+package com.jb.rest.ex;
+
+@SuppressWarnings("serial")
+public class InvalidImageException extends Exception {
+	public InvalidImageException(String message) {
+		super(message);
+	}
+
+}
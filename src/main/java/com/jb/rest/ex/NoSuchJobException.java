@@ -0,0 +1,9 @@
+package com.jb.rest.ex;
+
+@SuppressWarnings("serial")
+public class NoSuchJobException extends Exception {
+	public NoSuchJobException(String message) {
+		super(message);
+	}
+
+}
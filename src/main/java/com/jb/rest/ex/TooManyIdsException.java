@@ -0,0 +1,9 @@
+package com.jb.rest.ex;
+
+@SuppressWarnings("serial")
+public class TooManyIdsException extends Exception {
+	public TooManyIdsException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.jb.routing;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * This class tells the router which session a request belongs to, by the token
+ * in its path, and that the session writes when the request is not a read. The
+ * write is told when the request starts, so the client cannot read before it,
+ * and again when it ends, so the next reads go to the primary for the whole
+ * delay after the commit
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+	// Fields
+	private final ReplicaRouter router;
+
+	// Constructor
+	public ReadYourWritesInterceptor(ReplicaRouter router) {
+		this.router = router;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		String token = token(request);
+		router.setSession(token);
+		if (token != null && writes(request)) {
+			router.sessionWrote(token);
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		String token = token(request);
+		if (token != null && writes(request)) {
+			router.sessionWrote(token);
+		}
+		router.setSession(null);
+	}
+
+	private static boolean writes(HttpServletRequest request) {
+		String method = request.getMethod();
+		return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String token(HttpServletRequest request) {
+		Map<String, String> variables = (Map<String, String>) request
+				.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+		return variables == null ? null : variables.get("token");
+	}
+}
@@ -0,0 +1,22 @@
+package com.jb.routing;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks a service function that only reads and can be answered
+ * by a read replica a little behind the primary. It must not be put on the
+ * functions that fill the caches stamped with the scope versions, their
+ * entries would be kept under a version newer than their rows
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
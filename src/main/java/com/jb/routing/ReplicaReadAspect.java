@@ -0,0 +1,95 @@
+package com.jb.routing;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class runs the functions marked with {@link ReplicaRead} in a read only
+ * transaction of their own, on the database chosen by the router. The entity
+ * manager kept open for the view is put aside during the call, its connection
+ * may already be on the primary and a connection taken for the read must not be
+ * kept for the writes of the rest of the request. A function called inside a
+ * transaction stays in it
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Aspect
+@Component
+public class ReplicaReadAspect {
+
+	// Fields
+	private final ReplicaRouter router;
+	private final EntityManagerFactory entityManagerFactory;
+	private final TransactionTemplate readOnly;
+
+	// Constructor
+	@Autowired
+	public ReplicaReadAspect(ReplicaRouter router, EntityManagerFactory entityManagerFactory,
+			PlatformTransactionManager transactionManager) {
+		this.router = router;
+		this.entityManagerFactory = entityManagerFactory;
+		this.readOnly = new TransactionTemplate(transactionManager);
+		this.readOnly.setReadOnly(true);
+	}
+
+	/**
+	 * This function runs a replica read. The entities read from a replica may be
+	 * a little old, so they are not put in the second level cache, where they
+	 * would outlive the lag
+	 * 
+	 * @param point
+	 * @return the result of the function
+	 * @throws Throwable : the exception of the function
+	 */
+	@Around("@annotation(com.jb.routing.ReplicaRead)")
+	public Object read(ProceedingJoinPoint point) throws Throwable {
+		if (!router.isEnabled() || TransactionSynchronizationManager.isActualTransactionActive()) {
+			return point.proceed();
+		}
+		Object viewHolder = TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+		router.startRead();
+		try {
+			return readOnly.execute(status -> {
+				EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory).unwrap(Session.class)
+						.setCacheMode(CacheMode.GET);
+				try {
+					return point.proceed();
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new ReadFailure(e);
+				}
+			});
+		} catch (ReadFailure e) {
+			throw e.getCause();
+		} finally {
+			router.endRead();
+			if (viewHolder != null) {
+				TransactionSynchronizationManager.bindResource(entityManagerFactory, viewHolder);
+			}
+		}
+	}
+
+	/**
+	 * Carries the checked exceptions of the function out of the transaction
+	 */
+	@SuppressWarnings("serial")
+	private static class ReadFailure extends RuntimeException {
+
+		private ReadFailure(Throwable cause) {
+			super(cause);
+		}
+	}
+}
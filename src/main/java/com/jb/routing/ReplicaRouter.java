@@ -0,0 +1,264 @@
+package com.jb.routing;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class chooses the database of every replica read. The replicas are
+ * taken in turn, skipping the ones that are unreachable or further behind the
+ * primary than the maximum lag, and the primary answers when none is left. A
+ * session that has just written reads the primary for a while, so it always
+ * sees its own changes. The lag is measured with a heartbeat row written on the
+ * primary and read back from every replica. Without replicas configured, every
+ * read goes to the primary and this class does nothing
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ReplicaRouter {
+
+	// Fields
+	public static final String PRIMARY = "primary";
+
+	private static final String WRITE_BEAT = "UPDATE replica_heartbeat SET beat_millis = ? WHERE id = 1";
+	private static final String READ_BEAT = "SELECT beat_millis FROM replica_heartbeat WHERE id = 1";
+
+	private static final ThreadLocal<String> ROUTE = new ThreadLocal<>();
+	private static final ThreadLocal<String> NEXT_CONNECTION = new ThreadLocal<>();
+	private static final ThreadLocal<String> SESSION = new ThreadLocal<>();
+
+	private final long maxLagMillis;
+	private final long readYourWritesMillis;
+
+	private final Map<String, Long> sessionWrites = new ConcurrentHashMap<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private final LongAdder sessionFallbacks = new LongAdder();
+	private final LongAdder lagFallbacks = new LongAdder();
+
+	private volatile Route primary = new Route(PRIMARY, null);
+	private volatile List<Route> replicas = Collections.emptyList();
+
+	// Constructor
+	@Autowired
+	public ReplicaRouter(@Value("${cs.replicas.max-lag-millis:2000}") long maxLagMillis,
+			@Value("${cs.replicas.read-your-writes-millis:5000}") long readYourWritesMillis) {
+		this.maxLagMillis = maxLagMillis;
+		this.readYourWritesMillis = readYourWritesMillis;
+	}
+
+	/**
+	 * This function gives the databases to the router, the replicas by name
+	 * 
+	 * @param primaryDataSource
+	 * @param replicaDataSources
+	 */
+	public void setDataSources(DataSource primaryDataSource, Map<String, DataSource> replicaDataSources) {
+		List<Route> routes = new ArrayList<>();
+		replicaDataSources.forEach((name, dataSource) -> routes.add(new Route(name, dataSource)));
+		primary = new Route(PRIMARY, primaryDataSource);
+		replicas = routes;
+	}
+
+	public boolean isEnabled() {
+		return !replicas.isEmpty();
+	}
+
+	/**
+	 * This function chooses the database of a replica read. The next connection
+	 * of the current thread, the one of the transaction of the read, comes from
+	 * it
+	 * 
+	 * @return the name of the database
+	 */
+	public String startRead() {
+		String route = choose(System.currentTimeMillis());
+		ROUTE.set(route);
+		NEXT_CONNECTION.set(route);
+		return route;
+	}
+
+	public void endRead() {
+		ROUTE.remove();
+		NEXT_CONNECTION.remove();
+	}
+
+	/**
+	 * This function tells whether the current thread reads a replica, so the
+	 * results of a replica are not shared with a read that needs the primary
+	 * 
+	 * @return true during a replica read sent to a replica
+	 */
+	public static boolean isReadingReplica() {
+		String route = ROUTE.get();
+		return route != null && !PRIMARY.equals(route);
+	}
+
+	/**
+	 * This function gives the database of a new connection. Only the connection
+	 * taken when the transaction of a replica read begins goes to a replica,
+	 * anything else started on the same thread, like a transaction of its own,
+	 * goes to the primary
+	 * 
+	 * @return the name of the database
+	 */
+	String lookup() {
+		String route = NEXT_CONNECTION.get();
+		NEXT_CONNECTION.remove();
+		if (route == null) {
+			route = PRIMARY;
+		}
+		find(route).connections.increment();
+		return route;
+	}
+
+	/**
+	 * This function sets the session of the current request, which is the token
+	 * of the client
+	 * 
+	 * @param token : null at the end of the request
+	 */
+	public void setSession(String token) {
+		if (token == null) {
+			SESSION.remove();
+		} else {
+			SESSION.set(token);
+		}
+	}
+
+	/**
+	 * This function remembers that a session has written, its reads go to the
+	 * primary for the next few seconds
+	 * 
+	 * @param token
+	 */
+	public void sessionWrote(String token) {
+		if (isEnabled()) {
+			sessionWrites.put(token, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * This function writes the time on the primary and reads back the time each
+	 * replica has received. A replica that cannot be read is skipped until the
+	 * next heartbeat
+	 */
+	@Scheduled(fixedDelayString = "${cs.replicas.heartbeat-millis:500}",
+			initialDelayString = "${cs.replicas.heartbeat-millis:500}")
+	public void heartbeat() {
+		if (!isEnabled()) {
+			return;
+		}
+		try (Connection connection = primary.dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(WRITE_BEAT)) {
+			statement.setLong(1, System.currentTimeMillis());
+			statement.executeUpdate();
+		} catch (SQLException e) {
+			// The replicas look older until the primary is back, which is true
+		}
+		for (Route replica : replicas) {
+			try (Connection connection = replica.dataSource.getConnection();
+					PreparedStatement statement = connection.prepareStatement(READ_BEAT);
+					ResultSet result = statement.executeQuery()) {
+				replica.beatMillis = result.next() ? result.getLong(1) : 0;
+				replica.available = true;
+			} catch (SQLException e) {
+				replica.available = false;
+			}
+		}
+		long now = System.currentTimeMillis();
+		sessionWrites.values().removeIf(written -> now - written >= readYourWritesMillis);
+	}
+
+	/**
+	 * This function returns the reads and connections of every database and the
+	 * lag of the replicas, in milliseconds, at the time of the call
+	 * 
+	 * @return List<RouteStatistics>
+	 */
+	public List<RouteStatistics> getStatistics() {
+		long now = System.currentTimeMillis();
+		List<RouteStatistics> statistics = new ArrayList<>();
+		statistics.add(new RouteStatistics(PRIMARY, primary.reads.sum(), primary.connections.sum(), 0, true,
+				sessionFallbacks.sum(), lagFallbacks.sum()));
+		for (Route replica : replicas) {
+			statistics.add(new RouteStatistics(replica.name, replica.reads.sum(), replica.connections.sum(),
+					replica.lag(now), replica.available, 0, 0));
+		}
+		return statistics;
+	}
+
+	/**
+	 * The lag of a replica grows between two heartbeats, a replica that stopped
+	 * answering is never chosen again with the lag it had
+	 */
+	private String choose(long now) {
+		String session = SESSION.get();
+		Long written = session == null ? null : sessionWrites.get(session);
+		if (written != null && now - written < readYourWritesMillis) {
+			sessionFallbacks.increment();
+			primary.reads.increment();
+			return PRIMARY;
+		}
+		List<Route> routes = replicas;
+		int start = Math.floorMod(next.getAndIncrement(), Math.max(1, routes.size()));
+		for (int i = 0; i < routes.size(); i++) {
+			Route replica = routes.get((start + i) % routes.size());
+			if (replica.available && replica.lag(now) <= maxLagMillis) {
+				replica.reads.increment();
+				return replica.name;
+			}
+		}
+		lagFallbacks.increment();
+		primary.reads.increment();
+		return PRIMARY;
+	}
+
+	private Route find(String name) {
+		for (Route replica : replicas) {
+			if (replica.name.equals(name)) {
+				return replica;
+			}
+		}
+		return primary;
+	}
+
+	/**
+	 * A database and its counters. The beat is the time written on the primary
+	 * that the replica has received, the replica has every change older than it
+	 */
+	private static class Route {
+
+		private final String name;
+		private final DataSource dataSource;
+		private final LongAdder reads = new LongAdder();
+		private final LongAdder connections = new LongAdder();
+		private volatile long beatMillis;
+		private volatile boolean available;
+
+		private Route(String name, DataSource dataSource) {
+			this.name = name;
+			this.dataSource = dataSource;
+		}
+
+		private long lag(long now) {
+			return beatMillis == 0 ? Long.MAX_VALUE : Math.max(0, now - beatMillis);
+		}
+	}
+}
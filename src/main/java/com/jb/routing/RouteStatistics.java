@@ -0,0 +1,63 @@
+package com.jb.routing;
+
+/**
+ * This class is the report of one database returned to the admin : how many
+ * replica reads were sent to it, how many connections were taken from it and
+ * how far behind the primary it was at the last heartbeat. For the primary, it
+ * also tells how many replica reads it answered because the session had just
+ * written or because no replica was close enough
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class RouteStatistics {
+
+	// Fields
+	private String name;
+	private long reads;
+	private long connections;
+	private long lagMillis;
+	private boolean available;
+	private long sessionFallbacks;
+	private long lagFallbacks;
+
+	// Constructor
+	public RouteStatistics(String name, long reads, long connections, long lagMillis, boolean available,
+			long sessionFallbacks, long lagFallbacks) {
+		this.name = name;
+		this.reads = reads;
+		this.connections = connections;
+		this.lagMillis = lagMillis;
+		this.available = available;
+		this.sessionFallbacks = sessionFallbacks;
+		this.lagFallbacks = lagFallbacks;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getConnections() {
+		return connections;
+	}
+
+	public long getLagMillis() {
+		return lagMillis;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	public long getSessionFallbacks() {
+		return sessionFallbacks;
+	}
+
+	public long getLagFallbacks() {
+		return lagFallbacks;
+	}
+}
@@ -0,0 +1,104 @@
+package com.jb.routing;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * This class registers the sessions of the requests with the router and, when
+ * read replicas are configured, replaces the data source of Spring by one that
+ * routes the connections. The replicas are given as a comma separated list of
+ * JDBC urls in cs.replicas.urls, with the user of the primary unless
+ * cs.replicas.username and cs.replicas.password are set. The pool of the
+ * primary keeps the spring.datasource.hikari settings and the pools of the
+ * replicas take theirs from cs.replicas.hikari
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Configuration
+public class RoutingConfiguration implements WebMvcConfigurer {
+
+	// Fields
+	private final ReplicaRouter router;
+
+	// Constructor
+	@Autowired
+	public RoutingConfiguration(ReplicaRouter router) {
+		this.router = router;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new ReadYourWritesInterceptor(router)).addPathPatterns("/api/**");
+	}
+
+	@Configuration
+	@ConditionalOnProperty("cs.replicas.urls")
+	public static class ReplicaDataSources {
+
+		/**
+		 * This function builds a pool for the primary and one for every replica,
+		 * named replica-1, replica-2... in the order of the urls. The settings are
+		 * bound the way Spring Boot binds them on its own pool, the pools are not
+		 * beans of their own because a second data source bean would be initialized
+		 * with the routing one
+		 * 
+		 * @param properties : the spring.datasource settings of the primary
+		 * @param router
+		 * @param environment
+		 * @param urls
+		 * @param username
+		 * @param password
+		 * @return DataSource
+		 */
+		@Bean
+		@Primary
+		public DataSource dataSource(DataSourceProperties properties, ReplicaRouter router, Environment environment,
+				@Value("${cs.replicas.urls}") String[] urls,
+				@Value("${cs.replicas.username:${spring.datasource.username:}}") String username,
+				@Value("${cs.replicas.password:${spring.datasource.password:}}") String password) {
+			Binder binder = Binder.get(environment);
+			HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+			if (StringUtils.hasText(properties.getName())) {
+				primary.setPoolName(properties.getName());
+			}
+			binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+			Map<String, DataSource> replicas = new LinkedHashMap<>();
+			for (int i = 0; i < urls.length; i++) {
+				HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+						.url(urls[i].trim()).username(username).password(password).build();
+				binder.bind("cs.replicas.hikari", Bindable.ofInstance(replica));
+				replica.setPoolName("replica-" + (i + 1));
+				replicas.put(replica.getPoolName(), replica);
+			}
+			router.setDataSources(primary, replicas);
+
+			Map<Object, Object> targets = new HashMap<>(replicas);
+			targets.put(ReplicaRouter.PRIMARY, primary);
+			RoutingDataSource routing = new RoutingDataSource(router);
+			routing.setTargetDataSources(targets);
+			routing.setDefaultTargetDataSource(primary);
+			return routing;
+		}
+	}
+}
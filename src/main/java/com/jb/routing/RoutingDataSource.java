@@ -0,0 +1,26 @@
+package com.jb.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * This class is the data source given to JPA when there are read replicas. It
+ * asks the router which database every new connection comes from
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+	// Fields
+	private final ReplicaRouter router;
+
+	// Constructor
+	public RoutingDataSource(ReplicaRouter router) {
+		this.router = router;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return router.lookup();
+	}
+}
@@ -0,0 +1,388 @@
+package com.jb.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+import com.jb.repository.CouponRepository;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class is an in memory inverted index over the title and the description
+ * of the coupons. It is built from the coupon table when the application starts
+ * and is then updated by the company service every time a coupon is created,
+ * updated or removed, so a keyword search never scans the coupon table. The
+ * updates are applied once their transaction is committed
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class CouponSearchIndex {
+
+	// Fields
+	private static final int TITLE_WEIGHT = 3;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+	private final CouponRepository couponRepository;
+
+	// The term dictionary is sorted so that all the terms of a prefix are a range
+	private final TreeMap<String, PostingList> terms = new TreeMap<>();
+	private final Map<Long, String[]> couponTerms = new HashMap<>();
+	private final Map<Long, Integer> couponCategories = new HashMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Constructor
+	@Autowired
+	public CouponSearchIndex(CouponRepository couponRepository) {
+		this.couponRepository = couponRepository;
+	}
+
+	/**
+	 * This function rebuilds the whole index from the coupon table, it is called
+	 * once the application is ready
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		List<Coupon> coupons = couponRepository.findAll();
+		lock.writeLock().lock();
+		try {
+			terms.clear();
+			couponTerms.clear();
+			couponCategories.clear();
+			add(coupons);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * This function adds a coupon to the index or replaces the previous version
+	 * of the coupon if it is already indexed
+	 * 
+	 * @param coupon
+	 */
+	public void index(Coupon coupon) {
+		indexAll(Collections.singletonList(coupon));
+	}
+
+	/**
+	 * This function adds or replaces a batch of coupons, like the chunks of an
+	 * import. The postings list of every term is rewritten once for the whole
+	 * batch instead of once per coupon
+	 * 
+	 * @param coupons
+	 */
+	public void indexAll(Collection<Coupon> coupons) {
+		List<Coupon> committed = new ArrayList<>(coupons);
+		TransactionHooks.afterCommit(() -> reindex(committed));
+	}
+
+	private void reindex(List<Coupon> coupons) {
+		lock.writeLock().lock();
+		try {
+			List<Long> couponIds = new ArrayList<>(coupons.size());
+			for (Coupon coupon : coupons) {
+				couponIds.add(coupon.getId());
+			}
+			delete(couponIds);
+			add(coupons);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * This function removes a coupon from the index
+	 * 
+	 * @param couponId
+	 */
+	public void remove(long couponId) {
+		removeAll(Collections.singletonList(couponId));
+	}
+
+	/**
+	 * This function removes a batch of coupons from the index, the postings list
+	 * of every term is rewritten once for the whole batch
+	 * 
+	 * @param couponIds
+	 */
+	public void removeAll(Collection<Long> couponIds) {
+		List<Long> committed = new ArrayList<>(couponIds);
+		TransactionHooks.afterCommit(() -> unindex(committed));
+	}
+
+	private void unindex(List<Long> couponIds) {
+		lock.writeLock().lock();
+		try {
+			delete(couponIds);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * This function returns the ids of the coupons that contain every word of the
+	 * query, the best matches first. The last word is matched as a prefix so the
+	 * search can be used while the user is typing
+	 * 
+	 * @param query
+	 * @param category : 0 for all the categories
+	 * @param limit
+	 * @return List<Long>
+	 */
+	public List<Long> search(String query, int category, int limit) {
+		List<String> tokens = tokenize(query);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Map<Long, Double> scores = null;
+			for (int i = 0; i < tokens.size(); i++) {
+				boolean prefix = i == tokens.size() - 1;
+				Map<Long, Double> matches = match(tokens.get(i), prefix, category);
+				if (scores == null) {
+					scores = matches;
+				} else {
+					scores.keySet().retainAll(matches.keySet());
+					for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+						entry.setValue(entry.getValue() + matches.get(entry.getKey()));
+					}
+				}
+				if (scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+			return top(scores, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * This function returns the indexed words starting with the prefix, the words
+	 * found in the most coupons first
+	 * 
+	 * @param prefix
+	 * @param limit
+	 * @return List<String>
+	 */
+	public List<String> autocomplete(String prefix, int limit) {
+		List<String> tokens = tokenize(prefix);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			PriorityQueue<Map.Entry<String, PostingList>> best = new PriorityQueue<>(
+					(a, b) -> Integer.compare(a.getValue().size(), b.getValue().size()));
+			for (Map.Entry<String, PostingList> entry : prefixRange(tokens.get(tokens.size() - 1)).entrySet()) {
+				best.add(entry);
+				if (best.size() > limit) {
+					best.poll();
+				}
+			}
+			List<String> suggestions = new ArrayList<>(best.size());
+			while (!best.isEmpty()) {
+				suggestions.add(best.poll().getKey());
+			}
+			Collections.reverse(suggestions);
+			return suggestions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * This function returns the number of distinct words in the index
+	 * 
+	 * @return int
+	 */
+	public int termCount() {
+		lock.readLock().lock();
+		try {
+			return terms.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * This function returns the number of bytes used by all the postings lists
+	 * 
+	 * @return long
+	 */
+	public long postingsSizeInBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = 0;
+			for (PostingList postings : terms.values()) {
+				bytes += postings.sizeInBytes();
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * This function splits a text in lower case words made of letters and digits
+	 * 
+	 * @param text
+	 * @return List<String>
+	 */
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	// Must be called with the write lock held. The coupons are taken by id so the
+	// additions of every term are sorted and merged into its list at once
+	private void add(Collection<Coupon> coupons) {
+		List<Coupon> sorted = new ArrayList<>(coupons);
+		sorted.sort(Comparator.comparingLong(Coupon::getId));
+		Map<String, Batch> additions = new HashMap<>();
+		for (Coupon coupon : sorted) {
+			Map<String, Integer> weights = new LinkedHashMap<>();
+			for (String token : tokenize(coupon.getTitle())) {
+				weights.merge(token, TITLE_WEIGHT, Integer::sum);
+			}
+			for (String token : tokenize(coupon.getDescription())) {
+				weights.merge(token, DESCRIPTION_WEIGHT, Integer::sum);
+			}
+			for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+				additions.computeIfAbsent(entry.getKey(), term -> new Batch()).add(coupon.getId(),
+						entry.getValue());
+			}
+			couponTerms.put(coupon.getId(), weights.keySet().toArray(new String[0]));
+			couponCategories.put(coupon.getId(), coupon.getCategory());
+		}
+		for (Map.Entry<String, Batch> entry : additions.entrySet()) {
+			Batch added = entry.getValue();
+			PostingList postings = terms.getOrDefault(entry.getKey(), PostingList.EMPTY);
+			terms.put(entry.getKey(), postings.withAll(added.ids, added.weights, added.count));
+		}
+	}
+
+	// Must be called with the write lock held
+	private void delete(Collection<Long> couponIds) {
+		Map<String, Batch> removals = new HashMap<>();
+		long[] sorted = couponIds.stream().mapToLong(Long::longValue).sorted().toArray();
+		for (long couponId : sorted) {
+			String[] previous = couponTerms.remove(couponId);
+			couponCategories.remove(couponId);
+			if (previous == null) {
+				continue;
+			}
+			for (String term : previous) {
+				removals.computeIfAbsent(term, key -> new Batch()).add(couponId, 0);
+			}
+		}
+		for (Map.Entry<String, Batch> entry : removals.entrySet()) {
+			Batch removed = entry.getValue();
+			PostingList postings = terms.get(entry.getKey()).withoutAll(removed.ids, removed.count);
+			if (postings.size() == 0) {
+				terms.remove(entry.getKey());
+			} else {
+				terms.put(entry.getKey(), postings);
+			}
+		}
+	}
+
+	// Must be called with the read lock held
+	private Map<Long, Double> match(String token, boolean prefix, int category) {
+		Map<Long, Double> matches = new HashMap<>();
+		Map<String, PostingList> candidates = prefix ? prefixRange(token)
+				: Collections.singletonMap(token, terms.get(token));
+		int expansions = 0;
+		for (PostingList postings : candidates.values()) {
+			if (postings == null || expansions++ == MAX_PREFIX_EXPANSIONS) {
+				break;
+			}
+			double idf = Math.log(1.0 + (double) couponTerms.size() / postings.size());
+			long[] ids = new long[postings.size()];
+			int[] weights = new int[postings.size()];
+			postings.decode(ids, weights);
+			for (int i = 0; i < ids.length; i++) {
+				if (category != 0 && couponCategories.get(ids[i]) != category) {
+					continue;
+				}
+				matches.merge(ids[i], weights[i] * idf, Math::max);
+			}
+		}
+		return matches;
+	}
+
+	private SortedMap<String, PostingList> prefixRange(String prefix) {
+		return terms.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	private static List<Long> top(Map<Long, Double> scores, int limit) {
+		PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(
+				(a, b) -> Double.compare(a.getValue(), b.getValue()));
+		for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+			best.add(entry);
+			if (best.size() > limit) {
+				best.poll();
+			}
+		}
+		List<Long> ids = new ArrayList<>(best.size());
+		while (!best.isEmpty()) {
+			ids.add(best.poll().getKey());
+		}
+		Collections.reverse(ids);
+		return ids;
+	}
+
+	/**
+	 * The coupons of a batch that contain a term, in the order of their ids, with
+	 * their weights
+	 */
+	private static class Batch {
+
+		private long[] ids = new long[4];
+		private int[] weights = new int[4];
+		private int count;
+
+		private void add(long id, int weight) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				weights = Arrays.copyOf(weights, count * 2);
+			}
+			ids[count] = id;
+			weights[count++] = weight;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.jb.search;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * This class is an immutable compressed postings list. Each posting is a coupon
+ * id and a weight, the ids are sorted and stored as deltas, and both values are
+ * written as variable length integers so that a frequent term costs only a few
+ * bytes per coupon
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class PostingList {
+
+	static final PostingList EMPTY = new PostingList(new byte[0], 0);
+
+	// Fields
+	private final byte[] data;
+	private final int size;
+
+	// Constructor
+	private PostingList(byte[] data, int size) {
+		this.data = data;
+		this.size = size;
+	}
+
+	/**
+	 * This function returns the number of coupons that contain the term
+	 * 
+	 * @return int
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * This function returns the number of bytes used by the encoded postings
+	 * 
+	 * @return int
+	 */
+	int sizeInBytes() {
+		return data.length;
+	}
+
+	/**
+	 * This function decodes the postings into the two arrays given in parameter,
+	 * they must have at least size() elements
+	 * 
+	 * @param ids
+	 * @param weights
+	 */
+	void decode(long[] ids, int[] weights) {
+		int pos = 0;
+		long id = 0;
+		for (int i = 0; i < size; i++) {
+			long delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[pos++];
+				delta |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			int weight = 0;
+			shift = 0;
+			do {
+				b = data[pos++];
+				weight |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			id += delta;
+			ids[i] = id;
+			weights[i] = weight;
+		}
+	}
+
+	/**
+	 * This function returns a new postings list with the coupon added or replaced
+	 * 
+	 * @param couponId
+	 * @param weight
+	 * @return PostingList
+	 */
+	PostingList with(long couponId, int weight) {
+		return withAll(new long[] { couponId }, new int[] { weight }, 1);
+	}
+
+	/**
+	 * This function returns a new postings list with the first count coupons
+	 * added or replaced, the list is decoded and encoded only once whatever the
+	 * number of coupons. The ids must be sorted and distinct
+	 * 
+	 * @param addedIds
+	 * @param addedWeights
+	 * @param count
+	 * @return PostingList
+	 */
+	PostingList withAll(long[] addedIds, int[] addedWeights, int count) {
+		if (count == 0) {
+			return this;
+		}
+		long[] ids = new long[size];
+		int[] weights = new int[size];
+		decode(ids, weights);
+
+		long[] mergedIds = new long[size + count];
+		int[] mergedWeights = new int[size + count];
+		int merged = 0;
+		int i = 0;
+		int j = 0;
+		while (i < size || j < count) {
+			if (j == count || (i < size && ids[i] < addedIds[j])) {
+				mergedIds[merged] = ids[i];
+				mergedWeights[merged++] = weights[i++];
+			} else {
+				if (i < size && ids[i] == addedIds[j]) {
+					i++;
+				}
+				mergedIds[merged] = addedIds[j];
+				mergedWeights[merged++] = addedWeights[j++];
+			}
+		}
+		return encode(mergedIds, mergedWeights, merged);
+	}
+
+	/**
+	 * This function returns a new postings list without the coupon
+	 * 
+	 * @param couponId
+	 * @return PostingList
+	 */
+	PostingList without(long couponId) {
+		return withoutAll(new long[] { couponId }, 1);
+	}
+
+	/**
+	 * This function returns a new postings list without the first count coupons,
+	 * decoded and encoded only once. The ids must be sorted
+	 * 
+	 * @param removedIds
+	 * @param count
+	 * @return PostingList
+	 */
+	PostingList withoutAll(long[] removedIds, int count) {
+		long[] ids = new long[size];
+		int[] weights = new int[size];
+		decode(ids, weights);
+
+		int kept = 0;
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			while (j < count && removedIds[j] < ids[i]) {
+				j++;
+			}
+			if (j < count && removedIds[j] == ids[i]) {
+				continue;
+			}
+			ids[kept] = ids[i];
+			weights[kept++] = weights[i];
+		}
+		return kept == size ? this : encode(ids, weights, kept);
+	}
+
+	/**
+	 * This function encodes the first count postings, the ids must be sorted
+	 * 
+	 * @param ids
+	 * @param weights
+	 * @param count
+	 * @return PostingList
+	 */
+	static PostingList encode(long[] ids, int[] weights, int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * 3);
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			writeVarLong(out, ids[i] - previous);
+			writeVarLong(out, weights[i]);
+			previous = ids[i];
+		}
+		return new PostingList(out.toByteArray(), count);
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
@@ -1,16 +1,32 @@
 package com.jb.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import org.springframework.http.MediaType;
+
+import com.jb.analytics.AnalyticsReport;
+import com.jb.cache.CacheStatistics;
+import com.jb.cache.CachedResponse;
+import com.jb.cache.FlightStatistics;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
 import com.jb.entity.Customer;
+import com.jb.entity.Job;
+import com.jb.feed.FeedStatistics;
+import com.jb.ingest.ImportReport;
+import com.jb.journal.JournalRecord;
+import com.jb.maintenance.SweeperStatistics;
 import com.jb.rest.ex.CompanyAlreadyExistsException;
 import com.jb.rest.ex.CustomerAlreadyExistsException;
 import com.jb.rest.ex.InvalidPriceException;
+import com.jb.rest.ex.NoSuchJobException;
 import com.jb.rest.ex.NoSuchMemberException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.routing.RouteStatistics;
 
 public interface AdminService extends Service {
 
@@ -20,6 +36,10 @@ public interface AdminService extends Service {
 
 	List<Coupon> getAllCoupons();
 
+	long getAllCouponsVersion();
+
+	CachedResponse getAllCouponsResponse(MediaType format);
+
 	Company createCompany(Company company) throws CompanyAlreadyExistsException;
 
 	Customer createCustomer(Customer customer) throws CustomerAlreadyExistsException;
@@ -30,7 +50,40 @@ public interface AdminService extends Service {
 
 	List<Coupon> getAllCouponsByCategory(int category) throws NonExistingCategoryException;
 
+	CachedResponse getAllCouponsByCategoryResponse(int category, MediaType format)
+			throws NonExistingCategoryException;
+
 	List<Coupon> getAllCouponsBeforeEndDate(Date endDate);
 
 	List<Coupon> getAllCouponsBelowPrice(double price) throws InvalidPriceException;
+
+	CacheStatistics getCacheStatistics();
+
+	SweeperStatistics getSweeperStatistics();
+
+	CompletableFuture<AnalyticsReport> getAnalyticsReport();
+
+	FeedStatistics getFeedStatistics();
+
+	List<FlightStatistics> getSingleFlightStatistics();
+
+	List<RouteStatistics> getRouteStatistics();
+
+	List<JournalRecord> getJournal(long fromSequence, int limit) throws IOException;
+
+	ImportReport importCompanies(InputStream in, String contentType) throws IOException;
+
+	ImportReport importCustomers(InputStream in, String contentType) throws IOException;
+
+	Job removeCompanyAsync(long id) throws NoSuchMemberException;
+
+	Job removeCustomerAsync(long id) throws NoSuchMemberException;
+
+	Job importCompaniesAsync(InputStream in, String contentType) throws IOException;
+
+	Job importCustomersAsync(InputStream in, String contentType) throws IOException;
+
+	Job getJob(long id) throws NoSuchJobException;
+
+	Job cancelJob(long id) throws NoSuchJobException;
 }
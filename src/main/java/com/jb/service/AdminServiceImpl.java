@@ -1,23 +1,58 @@
 package com.jb.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
+import com.jb.analytics.AnalyticsEngine;
+import com.jb.analytics.AnalyticsReport;
+import com.jb.cache.CacheStatistics;
+import com.jb.cache.CachedResponse;
+import com.jb.cache.EmailRegistry;
+import com.jb.cache.FlightStatistics;
+import com.jb.cache.ResponseCache;
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.SingleFlight;
+import com.jb.cache.WalletCache;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
 import com.jb.entity.Customer;
+import com.jb.entity.Job;
+import com.jb.feed.ChangeFeed;
+import com.jb.feed.FeedStatistics;
+import com.jb.ingest.BulkImporter;
+import com.jb.ingest.ImportReport;
+import com.jb.job.JobRunner;
+import com.jb.journal.JournalRecord;
+import com.jb.journal.PurchaseJournal;
+import com.jb.maintenance.CouponSweeper;
+import com.jb.maintenance.SoftDeleter;
+import com.jb.maintenance.SweeperStatistics;
 import com.jb.repository.CompanyRepository;
 import com.jb.repository.CouponRepository;
 import com.jb.repository.CustomerRepository;
 import com.jb.rest.ex.CompanyAlreadyExistsException;
 import com.jb.rest.ex.CustomerAlreadyExistsException;
 import com.jb.rest.ex.InvalidPriceException;
+import com.jb.rest.ex.NoSuchJobException;
 import com.jb.rest.ex.NoSuchMemberException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.routing.ReplicaRead;
+import com.jb.routing.ReplicaRouter;
+import com.jb.routing.RouteStatistics;
 
 /**
  * In this class I create all the functions that will be used later by the admin
@@ -33,20 +68,54 @@ public class AdminServiceImpl implements AdminService {
 	private CompanyRepository companyRepository;
 	private CouponRepository couponRepository;
 	private CustomerRepository customerRepository;
+	private EntityManagerFactory entityManagerFactory;
+	private BulkImporter bulkImporter;
+	private EmailRegistry emailRegistry;
+	private SoftDeleter softDeleter;
+	private JobRunner jobRunner;
+	private CouponSweeper couponSweeper;
+	private AnalyticsEngine analyticsEngine;
+	private PurchaseJournal purchaseJournal;
+	private ChangeFeed changeFeed;
+	private ScopeVersions scopeVersions;
+	private ResponseCache responseCache;
+	private SingleFlight singleFlight;
+	private WalletCache walletCache;
+	private ReplicaRouter replicaRouter;
 
 	// Constructor
 	@Autowired
 	public AdminServiceImpl(CompanyRepository companyRepository, CustomerRepository customerRepository,
-			CouponRepository couponRepository) {
+			CouponRepository couponRepository, EntityManagerFactory entityManagerFactory,
+			BulkImporter bulkImporter, EmailRegistry emailRegistry, SoftDeleter softDeleter, JobRunner jobRunner,
+			CouponSweeper couponSweeper, AnalyticsEngine analyticsEngine, PurchaseJournal purchaseJournal,
+			ChangeFeed changeFeed, ScopeVersions scopeVersions, ResponseCache responseCache,
+			SingleFlight singleFlight, WalletCache walletCache, ReplicaRouter replicaRouter) {
 		this.companyRepository = companyRepository;
 		this.customerRepository = customerRepository;
 		this.couponRepository = couponRepository;
+		this.entityManagerFactory = entityManagerFactory;
+		this.bulkImporter = bulkImporter;
+		this.emailRegistry = emailRegistry;
+		this.softDeleter = softDeleter;
+		this.jobRunner = jobRunner;
+		this.couponSweeper = couponSweeper;
+		this.analyticsEngine = analyticsEngine;
+		this.purchaseJournal = purchaseJournal;
+		this.changeFeed = changeFeed;
+		this.scopeVersions = scopeVersions;
+		this.responseCache = responseCache;
+		this.singleFlight = singleFlight;
+		this.walletCache = walletCache;
+		this.replicaRouter = replicaRouter;
 	}
 
 	/**
 	 * This function uses the already existing save function in JpaRepository to
 	 * insert a new company to the database The company's id is initialized to 0 in
-	 * order to create a new company and not to modify an existing company
+	 * order to create a new company and not to modify an existing company. The
+	 * unique index on the email rejects a company created at the same time with
+	 * the same email
 	 * 
 	 * @throws CompanyAlreadyExistsException : if the company email give already
 	 *                                       exists in the database
@@ -60,7 +129,15 @@ public class AdminServiceImpl implements AdminService {
 		}
 		if (company != null) {
 			company.setId(0);
-			return companyRepository.save(company);
+			Company saved;
+			try {
+				saved = companyRepository.save(company);
+			} catch (DataIntegrityViolationException e) {
+				throw new CompanyAlreadyExistsException(
+						String.format("This email : %s , is already exists", company.getEmail()));
+			}
+			emailRegistry.companyEmailAdded(saved.getEmail());
+			return saved;
 		}
 		return null;
 	}
@@ -68,7 +145,9 @@ public class AdminServiceImpl implements AdminService {
 	/**
 	 * this function uses the already existing save function in JpaRepository to
 	 * insert a new customer to the database the customer id is initialized to 0 in
-	 * order to create a new company and not modify an existing customer
+	 * order to create a new company and not modify an existing customer. The
+	 * unique index on the email rejects a customer created at the same time with
+	 * the same email
 	 * 
 	 * @param customer
 	 * @throws CustomerAlreadyExistsException : if the customer email give already
@@ -83,7 +162,15 @@ public class AdminServiceImpl implements AdminService {
 		}
 		if (customer != null) {
 			customer.setId(0);
-			return customerRepository.save(customer);
+			Customer saved;
+			try {
+				saved = customerRepository.save(customer);
+			} catch (DataIntegrityViolationException e) {
+				throw new CustomerAlreadyExistsException(
+						String.format("This email : %s , is already exists", customer.getEmail()));
+			}
+			emailRegistry.customerEmailAdded(saved.getEmail());
+			return saved;
 		}
 		return null;
 	}
@@ -95,6 +182,7 @@ public class AdminServiceImpl implements AdminService {
 	 * @return List<Company>
 	 */
 	@Override
+	@ReplicaRead
 	public List<Company> getAllCompanies() {
 		return companyRepository.findAll();
 	}
@@ -106,23 +194,49 @@ public class AdminServiceImpl implements AdminService {
 	 * @return List<Customer>
 	 */
 	@Override
+	@ReplicaRead
 	public List<Customer> getAllCustomers() {
 		return customerRepository.findAll();
 	}
 
 	/**
 	 * This function calls the already existing getAll function in the JpaRepository
-	 * in order to retrieve all the data from the coupon table of the database
+	 * in order to retrieve all the data from the coupon table of the database. The
+	 * requests arriving while the query runs share its result
 	 */
 	@Override
 	public List<Coupon> getAllCoupons() {
-		return couponRepository.findAll();
+		return singleFlight.run("coupons", "", scopeVersions.catalogVersion(), couponRepository::findAll);
+	}
+
+	/**
+	 * This function returns the version of the list of all the coupons, it changes
+	 * with every change of a coupon and is read without a query
+	 * 
+	 * @return the version
+	 */
+	@Override
+	public long getAllCouponsVersion() {
+		return scopeVersions.catalogVersion();
+	}
+
+	/**
+	 * This function returns all the coupons already encoded by the response cache,
+	 * they are only read and encoded again after a change of the catalog
+	 * 
+	 * @param format : JSON, Smile or CBOR
+	 * @return CachedResponse
+	 */
+	@Override
+	public CachedResponse getAllCouponsResponse(MediaType format) {
+		return responseCache.get("coupons", scopeVersions.catalogVersion(), format, this::getAllCoupons);
 	}
 
 	/**
 	 * This function calls the getAllCouponsByCategory function that I created in
 	 * company repository in order to retrieve all of them from the coupon table
-	 * corresponding to the parameter category
+	 * corresponding to the parameter category. The requests arriving while the
+	 * query runs share its result
 	 * 
 	 * @throws NonExistingCategoryException : if the given category does not exist
 	 * @return List<Coupon>
@@ -132,7 +246,24 @@ public class AdminServiceImpl implements AdminService {
 		if (category > 8 || category < 1) {
 			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
 		}
-		return couponRepository.findAllByCategory(category);
+		return singleFlight.run("coupons:category", category, scopeVersions.catalogVersion(),
+				() -> couponRepository.findAllByCategory(category));
+	}
+
+	/**
+	 * This function returns the coupons of the category already encoded by the
+	 * response cache
+	 * 
+	 * @throws NonExistingCategoryException : if the given category does not exist
+	 * @param category
+	 * @param format   : JSON, Smile or CBOR
+	 * @return CachedResponse
+	 */
+	@Override
+	public CachedResponse getAllCouponsByCategoryResponse(int category, MediaType format)
+			throws NonExistingCategoryException {
+		return responseCache.get("coupons:category:" + category, scopeVersions.catalogVersion(), format,
+				() -> getAllCouponsByCategory(category));
 	}
 
 	/**
@@ -143,6 +274,7 @@ public class AdminServiceImpl implements AdminService {
 	 * @return List<Coupon>
 	 */
 	@Override
+	@ReplicaRead
 	public List<Coupon> getAllCouponsBeforeEndDate(Date endDate) {
 		return couponRepository.findAllBeforeEndDate(endDate);
 	}
@@ -150,79 +282,287 @@ public class AdminServiceImpl implements AdminService {
 	/**
 	 * This function uses the findAllBelowPrice function that I created in
 	 * CouponRepository to retrieve all coupons that are priced below the parameter
-	 * price.
+	 * price. The requests arriving while the query runs share its result
 	 * 
 	 * @return List<Coupon>
 	 */
 	@Override
+	@ReplicaRead
 	public List<Coupon> getAllCouponsBelowPrice(double price) throws InvalidPriceException {
 		if (price <= 0) {
 			throw new InvalidPriceException("Invalid price : " + price);
 		}
-		return couponRepository.findAllBelowPrice(price);
+		return singleFlight.run("coupons:belowPrice", price, scopeVersions.catalogVersion(),
+				() -> couponRepository.findAllBelowPrice(price));
 	}
 
 	/**
-	 * This function uses the existing deleteById function in JpaRepository to
-	 * delete a company from the database
+	 * This function uses the soft deleter to delete a company and its coupons,
+	 * their rows are purged later in the background
 	 * 
 	 * @param id
 	 * @throws NoSuchMemberException : if the given id does not exist
 	 */
 	@Override
 	public void removeCompany(long id) throws NoSuchMemberException {
-		Optional<Company> company = companyRepository.findById(id);
-		if (!company.isPresent()) {
+		if (!companyRepository.existsById(id)) {
 			throw new NoSuchMemberException("Invalid company id");
 		}
-		companyRepository.deleteById(id);
+		softDeleter.deleteCompany(id);
 	}
 
 	/**
-	 * this function uses the existing deleteById function in JpaRepository to
-	 * delete a customer from the database
+	 * this function uses the soft deleter to delete a customer, its row and its
+	 * customer_coupon rows are purged later in the background
 	 * 
 	 * @param id
 	 * @throws NoSuchMemberException : if the given id does not exist
 	 */
 	@Override
 	public void removeCustomer(long id) throws NoSuchMemberException {
-		Optional<Customer> customer = customerRepository.findById(id);
-		if (!customer.isPresent()) {
+		if (!customerRepository.existsById(id)) {
 			throw new NoSuchMemberException("Invalid customer id");
 		}
-		customerRepository.deleteById(id);
+		softDeleter.deleteCustomer(id);
+	}
+
+	/**
+	 * This function reads the hibernate statistics to report the number of
+	 * statements sent to the database and the hits and misses of every second
+	 * level cache region, of the query cache, of the response cache and of the
+	 * wallet cache. The hibernate counters stay at 0 unless
+	 * hibernate.generate_statistics is on, as in the dev profile
+	 * 
+	 * @return CacheStatistics
+	 */
+	@Override
+	public CacheStatistics getCacheStatistics() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		CacheStatistics report = new CacheStatistics(statistics.getPrepareStatementCount(),
+				statistics.getEntityLoadCount());
+		for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+			CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+			if (region != null) {
+				report.add(new CacheStatistics.Region(regionName, region.getHitCount(), region.getMissCount(),
+						region.getPutCount(), region.getElementCountInMemory()));
+			}
+		}
+		report.add(responseCache.getStatistics());
+		report.add(walletCache.getStatistics());
+		return report;
+	}
+
+	/**
+	 * This function uses the bulk importer to insert all the companies of a CSV or
+	 * JSON stream in chunks
+	 * 
+	 * @param in
+	 * @param contentType
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	@Override
+	public ImportReport importCompanies(InputStream in, String contentType) throws IOException {
+		return bulkImporter.importCompanies(in, contentType, 0, null);
+	}
+
+	/**
+	 * This function uses the bulk importer to insert all the customers of a CSV or
+	 * JSON stream in chunks
+	 * 
+	 * @param in
+	 * @param contentType
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	@Override
+	public ImportReport importCustomers(InputStream in, String contentType) throws IOException {
+		return bulkImporter.importCustomers(in, contentType, 0, null);
+	}
+
+	/**
+	 * This function queues the deletion of a company as a background job and
+	 * returns the job at once
+	 * 
+	 * @param id
+	 * @return Job
+	 * @throws NoSuchMemberException : if the given id does not exist
+	 */
+	@Override
+	public Job removeCompanyAsync(long id) throws NoSuchMemberException {
+		if (!companyRepository.existsById(id)) {
+			throw new NoSuchMemberException("Invalid company id");
+		}
+		return jobRunner.submit(Job.Type.REMOVE_COMPANY, id);
+	}
+
+	/**
+	 * This function queues the deletion of a customer as a background job and
+	 * returns the job at once
+	 * 
+	 * @param id
+	 * @return Job
+	 * @throws NoSuchMemberException : if the given id does not exist
+	 */
+	@Override
+	public Job removeCustomerAsync(long id) throws NoSuchMemberException {
+		if (!customerRepository.existsById(id)) {
+			throw new NoSuchMemberException("Invalid customer id");
+		}
+		return jobRunner.submit(Job.Type.REMOVE_CUSTOMER, id);
+	}
+
+	/**
+	 * This function returns the counters of the expired coupon sweeper
+	 * 
+	 * @return SweeperStatistics
+	 */
+	@Override
+	public SweeperStatistics getSweeperStatistics() {
+		return couponSweeper.getStatistics();
+	}
+
+	/**
+	 * This function returns the platform wide sales and inventory report, it is
+	 * built in the background and kept for a minute
+	 * 
+	 * @return CompletableFuture<AnalyticsReport>
+	 */
+	@Override
+	public CompletableFuture<AnalyticsReport> getAnalyticsReport() {
+		return analyticsEngine.report();
+	}
+
+	/**
+	 * This function returns the number of clients subscribed to the change feed
+	 * and the counters of the events sent, coalesced and dropped
+	 * 
+	 * @return FeedStatistics
+	 */
+	@Override
+	public FeedStatistics getFeedStatistics() {
+		return changeFeed.getStatistics();
+	}
+
+	/**
+	 * This function returns per query how many requests called the database and
+	 * how many shared the result of a query already running
+	 * 
+	 * @return List<FlightStatistics>
+	 */
+	@Override
+	public List<FlightStatistics> getSingleFlightStatistics() {
+		return singleFlight.getStatistics();
+	}
+
+	/**
+	 * This function returns per database how many replica reads and connections
+	 * it served, how far behind the primary each replica is and why the primary
+	 * answered replica reads
+	 * 
+	 * @return List<RouteStatistics>
+	 */
+	@Override
+	public List<RouteStatistics> getRouteStatistics() {
+		return replicaRouter.getStatistics();
+	}
+
+	/**
+	 * This function reads the purchases and inventory changes from the purchase
+	 * journal, in the order they were written
+	 * 
+	 * @param fromSequence
+	 * @param limit
+	 * @return List<JournalRecord>
+	 * @throws IOException
+	 */
+	@Override
+	public List<JournalRecord> getJournal(long fromSequence, int limit) throws IOException {
+		List<JournalRecord> records = new ArrayList<>();
+		if (limit > 0) {
+			purchaseJournal.replay(fromSequence, record -> records.add(record) && records.size() < limit);
+		}
+		return records;
+	}
+
+	/**
+	 * This function saves the stream of companies to a file and queues its import
+	 * as a background job
+	 * 
+	 * @param in
+	 * @param contentType
+	 * @return Job
+	 * @throws IOException
+	 */
+	@Override
+	public Job importCompaniesAsync(InputStream in, String contentType) throws IOException {
+		return jobRunner.submit(Job.Type.IMPORT_COMPANIES, in, contentType);
+	}
+
+	/**
+	 * This function saves the stream of customers to a file and queues its import
+	 * as a background job
+	 * 
+	 * @param in
+	 * @param contentType
+	 * @return Job
+	 * @throws IOException
+	 */
+	@Override
+	public Job importCustomersAsync(InputStream in, String contentType) throws IOException {
+		return jobRunner.submit(Job.Type.IMPORT_CUSTOMERS, in, contentType);
+	}
+
+	/**
+	 * This function returns the status and the progress of a background job
+	 * 
+	 * @param id
+	 * @return Job
+	 * @throws NoSuchJobException : if the given id does not exist
+	 */
+	@Override
+	public Job getJob(long id) throws NoSuchJobException {
+		return jobRunner.find(id).orElseThrow(() -> new NoSuchJobException("Invalid job id"));
+	}
+
+	/**
+	 * This function asks a background job to stop
+	 * 
+	 * @param id
+	 * @return Job
+	 * @throws NoSuchJobException : if the given id does not exist
+	 */
+	@Override
+	public Job cancelJob(long id) throws NoSuchJobException {
+		if (!jobRunner.cancel(id)) {
+			throw new NoSuchJobException("Invalid job id");
+		}
+		return getJob(id);
 	}
 
 	/**
 	 * This function is a private function that allows me to check if the company
-	 * already exists in the database by email
+	 * already exists in the database by email. The email registry answers without
+	 * a query when the email is new, otherwise the indexed existsByEmail decides
 	 * 
 	 * @param company
 	 * @return true if exist and false otherwise
 	 */
 	private boolean companyAlreadyExistsByEmail(Company company) {
-		for (Company c : getAllCompanies()) {
-			if (c.getEmail().equals(company.getEmail())) {
-				return true;
-			}
-		}
-		return false;
+		return emailRegistry.companyEmailMayExist(company.getEmail())
+				&& companyRepository.existsByEmail(company.getEmail());
 	}
 
 	/**
 	 * This function is a private function that allows me to check if the customer
-	 * already exists in the database by email
+	 * already exists in the database by email. The email registry answers without
+	 * a query when the email is new, otherwise the indexed existsByEmail decides
 	 * 
 	 * @param customer
 	 * @return true if exist and false otherwise
 	 */
 	private boolean customerAlreadyExistsByEmail(Customer customer) {
-		for (Customer c : getAllCustomers()) {
-			if (c.getEmail().equals(customer.getEmail())) {
-				return true;
-			}
-		}
-		return false;
+		return emailRegistry.customerEmailMayExist(customer.getEmail())
+				&& customerRepository.existsByEmail(customer.getEmail());
 	}
 }
@@ -1,32 +1,61 @@
 package com.jb.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.http.MediaType;
+
+import com.jb.cache.CachedResponse;
+import com.jb.entity.CategoryStats;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponPatch;
+import com.jb.entity.CouponResult;
+import com.jb.ingest.ImportReport;
+import com.jb.rest.ex.InvalidImageException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.NoSuchCouponException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 
 public interface CompanyService extends Service {
 
-	Coupon createCoupon(Coupon coupon);
+	Coupon createCoupon(Coupon coupon) throws InvalidImageException;
 
 	Optional<Coupon> getCoupon(long id) throws NoSuchCouponException;
 
+	List<CouponResult> getCoupons(List<Long> ids) throws TooManyIdsException;
+
 	List<Coupon> getAllCompanyCoupons();
 
-	Coupon updateCoupon(Coupon coupon);
+	long getAllCompanyCouponsVersion();
+
+	CachedResponse getAllCompanyCouponsResponse(MediaType format);
+
+	Coupon updateCoupon(Coupon coupon) throws NoSuchCouponException, InvalidImageException;
+
+	Coupon patchCoupon(long id, CouponPatch patch) throws NoSuchCouponException, NonExistingCategoryException,
+			InvalidPriceException, InvalidImageException;
 
 	void removeCoupon(long id) throws NoSuchCouponException;
 
 	Company updateCompany(Company company);
 
+	ImportReport importCoupons(InputStream in, String contentType) throws IOException;
+
+	String uploadImage(InputStream in) throws IOException, InvalidImageException;
+
 	List<Coupon> getAllCompanyCouponsByCategory(int category) throws NonExistingCategoryException;
 
+	CachedResponse getAllCompanyCouponsByCategoryResponse(int category, MediaType format)
+			throws NonExistingCategoryException;
+
 	List<Coupon> getAllCompanyCouponsBeforeEndDate(Date endDate);
 
 	List<Coupon> getAllCompanyCouponsBelowPrice(double price) throws InvalidPriceException;
+
+	List<CategoryStats> getCompanyStatistics();
 }
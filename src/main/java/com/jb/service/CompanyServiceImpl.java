@@ -1,19 +1,44 @@
 package com.jb.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.jb.cache.CachedResponse;
+import com.jb.cache.CouponBatchLoader;
+import com.jb.cache.ResponseCache;
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.SingleFlight;
+import com.jb.cache.WalletCache;
+import com.jb.entity.CategoryStats;
 import com.jb.entity.Company;
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponPatch;
+import com.jb.entity.CouponResult;
+import com.jb.feed.ChangeFeed;
+import com.jb.image.ImageStore;
+import com.jb.ingest.BulkImporter;
+import com.jb.ingest.ImportReport;
+import com.jb.journal.PurchaseJournal;
+import com.jb.maintenance.SoftDeleter;
 import com.jb.repository.CompanyRepository;
 import com.jb.repository.CouponRepository;
+import com.jb.rest.ex.InvalidImageException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.NoSuchCouponException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
+import com.jb.routing.ReplicaRead;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+import com.jb.stock.StockCounters;
 
 /**
  * In this class I create all the functions that will be used later by the
@@ -30,12 +55,43 @@ public class CompanyServiceImpl implements CompanyService {
 
 	private CompanyRepository companyRepository;
 	private CouponRepository couponRepository;
+	private CouponSearchIndex couponSearchIndex;
+	private BulkImporter bulkImporter;
+	private SoftDeleter softDeleter;
+	private CompanyStats companyStats;
+	private PurchaseJournal purchaseJournal;
+	private ChangeFeed changeFeed;
+	private ScopeVersions scopeVersions;
+	private ResponseCache responseCache;
+	private ImageStore imageStore;
+	private SingleFlight singleFlight;
+	private CouponBatchLoader couponBatchLoader;
+	private StockCounters stockCounters;
+	private WalletCache walletCache;
 
 	// Constructor
 	@Autowired
-	public CompanyServiceImpl(CompanyRepository companyRepository, CouponRepository couponRepository) {
+	public CompanyServiceImpl(CompanyRepository companyRepository, CouponRepository couponRepository,
+			CouponSearchIndex couponSearchIndex, BulkImporter bulkImporter, SoftDeleter softDeleter,
+			CompanyStats companyStats, PurchaseJournal purchaseJournal, ChangeFeed changeFeed,
+			ScopeVersions scopeVersions, ResponseCache responseCache, ImageStore imageStore,
+			SingleFlight singleFlight, CouponBatchLoader couponBatchLoader, StockCounters stockCounters,
+			WalletCache walletCache) {
 		this.companyRepository = companyRepository;
 		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.bulkImporter = bulkImporter;
+		this.softDeleter = softDeleter;
+		this.companyStats = companyStats;
+		this.purchaseJournal = purchaseJournal;
+		this.changeFeed = changeFeed;
+		this.scopeVersions = scopeVersions;
+		this.responseCache = responseCache;
+		this.imageStore = imageStore;
+		this.singleFlight = singleFlight;
+		this.couponBatchLoader = couponBatchLoader;
+		this.stockCounters = stockCounters;
+		this.walletCache = walletCache;
 	}
 
 	// is use in loginSystem.companyLogin()
@@ -46,16 +102,29 @@ public class CompanyServiceImpl implements CompanyService {
 	/**
 	 * This function uses the existing save function in JpaRepository to insert a
 	 * new coupon into the database the coupon id is initialized to 0 in order to
-	 * create a new coupon and not modify an existing coupon
+	 * create a new coupon and not modify an existing coupon. The company is set
+	 * with a reference so that only its id is used and the company is not loaded
+	 * from the database. The new coupon is then added to the search index, to the
+	 * statistics of the company and to the purchase journal, and pushed to the
+	 * change feed. An image given inline as a data URI is moved to the image store
 	 * 
+	 * @throws InvalidImageException : if the inline image is not a valid image
 	 * @param Coupon
 	 * @return Coupon
 	 */
 	@Override
-	public Coupon createCoupon(Coupon coupon) {
-		coupon.setCompany(companyRepository.findById(companyId).orElse(null));
+	public Coupon createCoupon(Coupon coupon) throws InvalidImageException {
+		coupon.setCompany(companyRepository.getOne(companyId));
 		coupon.setId(0);
-		return couponRepository.save(coupon);
+		coupon.setImage(imageStore.intern(coupon.getImage()));
+		Coupon saved = couponRepository.save(coupon);
+		couponSearchIndex.index(saved);
+		companyStats.couponAdded(companyId, saved);
+		purchaseJournal.inventoryChanged(saved.getId(), saved.getAmount());
+		stockCounters.amountChanged(saved.getId(), saved.getAmount());
+		changeFeed.couponCreated(saved);
+		scopeVersions.couponChanged(companyId, saved.getId());
+		return saved;
 	}
 
 	/**
@@ -67,6 +136,7 @@ public class CompanyServiceImpl implements CompanyService {
 	 * @return Optional<Coupon>
 	 */
 	@Override
+	@ReplicaRead
 	public Optional<Coupon> getCoupon(long id) throws NoSuchCouponException {
 		Optional<Coupon> coupon = couponRepository.findByIdAndCompanyId(id, companyId);
 		if (!coupon.isPresent()) {
@@ -75,6 +145,21 @@ public class CompanyServiceImpl implements CompanyService {
 		return coupon;
 	}
 
+	/**
+	 * This function retrieves many coupons of the company in one call, in the
+	 * order of the ids. The coupons of other companies are answered as not found
+	 * 
+	 * @param ids
+	 * @return List<CouponResult>
+	 * @throws TooManyIdsException
+	 */
+	@Override
+	@ReplicaRead
+	public List<CouponResult> getCoupons(List<Long> ids) throws TooManyIdsException {
+		long id = companyId;
+		return couponBatchLoader.load(ids, coupon -> coupon.getCompany() != null && coupon.getCompany().getId() == id);
+	}
+
 	/**
 	 * this function uses the function findAllByCompanyId that I created in company
 	 * repository to retrieve all the coupons of the company
@@ -86,9 +171,36 @@ public class CompanyServiceImpl implements CompanyService {
 		return couponRepository.findAllByCompanyId(companyId);
 	}
 
+	/**
+	 * This function returns the version of the list of the coupons of the company,
+	 * it changes with every change of one of them and is read without a query
+	 * 
+	 * @return the version
+	 */
+	@Override
+	public long getAllCompanyCouponsVersion() {
+		return scopeVersions.companyVersion(companyId);
+	}
+
+	/**
+	 * This function returns the coupons of the company already encoded by the
+	 * response cache, they are only read and encoded again after a change of one
+	 * of them
+	 * 
+	 * @param format : JSON, Smile or CBOR
+	 * @return CachedResponse
+	 */
+	@Override
+	public CachedResponse getAllCompanyCouponsResponse(MediaType format) {
+		long id = companyId;
+		return responseCache.get("company:" + id, scopeVersions.companyVersion(id), format,
+				() -> couponRepository.findAllByCompanyId(id));
+	}
+
 	/**
 	 * This function uses the findAllByCompanyIdAndCategory function I created in
-	 * company repository to retrieve all company coupons by category
+	 * company repository to retrieve all company coupons by category. The requests
+	 * arriving while the query runs share its result
 	 * 
 	 * @throws NonExistingCategoryException : if the category is not exists
 	 * @param category
@@ -99,7 +211,26 @@ public class CompanyServiceImpl implements CompanyService {
 		if (category > 8 || category < 1) {
 			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
 		}
-		return couponRepository.findAllByCompanyIdAndCategory(companyId, category);
+		long id = companyId;
+		return singleFlight.run("company:coupons:category", id + ":" + category, scopeVersions.companyVersion(id),
+				() -> couponRepository.findAllByCompanyIdAndCategory(id, category));
+	}
+
+	/**
+	 * This function returns the coupons of the company in the category already
+	 * encoded by the response cache
+	 * 
+	 * @throws NonExistingCategoryException : if the given category does not exist
+	 * @param category
+	 * @param format   : JSON, Smile or CBOR
+	 * @return CachedResponse
+	 */
+	@Override
+	public CachedResponse getAllCompanyCouponsByCategoryResponse(int category, MediaType format)
+			throws NonExistingCategoryException {
+		long id = companyId;
+		return responseCache.get("company:" + id + ":category:" + category, scopeVersions.companyVersion(id), format,
+				() -> getAllCompanyCouponsByCategory(category));
 	}
 
 	/**
@@ -111,6 +242,7 @@ public class CompanyServiceImpl implements CompanyService {
 	 * @return List<Coupon>
 	 */
 	@Override
+	@ReplicaRead
 	public List<Coupon> getAllCompanyCouponsBeforeEndDate(Date endDate) {
 		return couponRepository.findAllByCompanyIdAndBeforeEndDate(companyId, endDate);
 	}
@@ -118,34 +250,112 @@ public class CompanyServiceImpl implements CompanyService {
 	/**
 	 * This function uses the function findAllByCompanyIdAndBelowPrice that I
 	 * created in CouponRepository to retrieve all the coupons of the company whose
-	 * price is lower than the price in parameter
+	 * price is lower than the price in parameter. The requests arriving while the
+	 * query runs share its result
 	 * 
 	 * @return List<Coupon>
 	 * @throws InvalidPriceException 
 	 */
 	@Override
+	@ReplicaRead
 	public List<Coupon> getAllCompanyCouponsBelowPrice(double price) throws InvalidPriceException {
 		if (price <= 0) {
 			throw new InvalidPriceException("Invalid price : " + price);
 		}
-		return couponRepository.findAllByCompanyIdAndBelowPrice(companyId, price);
+		long id = companyId;
+		return singleFlight.run("company:coupons:belowPrice", id + ":" + price, scopeVersions.companyVersion(id),
+				() -> couponRepository.findAllByCompanyIdAndBelowPrice(id, price));
 	}
 
 	/**
 	 * This function uses the already existing save function in JpaRepository to
-	 * modify an already existing coupon
+	 * modify an already existing coupon of the company and reindexes it. The
+	 * company is set with a reference because it is not part of the request body.
+	 * The previous version is read first, from the second level cache, to check
+	 * that it belongs to the company and to update the statistics and the
+	 * purchase journal
 	 * 
+	 * @throws NoSuchCouponException : if the coupon does not belong to the company
+	 * @throws InvalidImageException : if the inline image is not a valid image
 	 * @param coupon
 	 * @return Coupon
 	 */
 	@Override
-	public Coupon updateCoupon(Coupon coupon) {
-		return couponRepository.save(coupon);
+	@Transactional(rollbackFor = Exception.class)
+	public Coupon updateCoupon(Coupon coupon) throws NoSuchCouponException, InvalidImageException {
+		Coupon previous = couponRepository.findById(coupon.getId()).orElse(null);
+		if (previous == null || previous.getCompany() == null || previous.getCompany().getId() != companyId) {
+			throw new NoSuchCouponException("Invalid coupon id");
+		}
+		int previousCategory = previous.getCategory();
+		int previousAmount = previous.getAmount();
+		coupon.setCompany(companyRepository.getOne(companyId));
+		coupon.setImage(imageStore.intern(coupon.getImage()));
+		Coupon saved = couponRepository.save(coupon);
+		couponSearchIndex.index(saved);
+		companyStats.couponRemoved(companyId, previousCategory, previousAmount);
+		companyStats.couponAdded(companyId, saved);
+		if (saved.getAmount() != previousAmount) {
+			purchaseJournal.inventoryChanged(saved.getId(), saved.getAmount() - previousAmount);
+		}
+		stockCounters.amountChanged(saved.getId(), saved.getAmount());
+		walletCache.couponChanged(saved);
+		changeFeed.couponUpdated(saved, previousAmount);
+		scopeVersions.couponChanged(companyId, saved.getId());
+		return saved;
+	}
+
+	/**
+	 * This function modifies only the fields of the coupon given in the patch. The
+	 * coupon is read through findById, which is served by the second level cache,
+	 * and the changes are flushed at the end of the transaction as an UPDATE of
+	 * the changed columns only
+	 * 
+	 * @throws NoSuchCouponException        : if the coupon does not belong to the
+	 *                                      company
+	 * @throws NonExistingCategoryException : if the new category does not exist
+	 * @throws InvalidPriceException        : if the new price is not positive
+	 * @throws InvalidImageException        : if the inline image is not a valid
+	 *                                      image
+	 * @param id
+	 * @param patch
+	 * @return Coupon
+	 */
+	@Override
+	@Transactional(rollbackFor = Exception.class)
+	public Coupon patchCoupon(long id, CouponPatch patch) throws NoSuchCouponException, NonExistingCategoryException,
+			InvalidPriceException, InvalidImageException {
+		if (patch.getCategory() != null && (patch.getCategory() > 8 || patch.getCategory() < 1)) {
+			throw new NonExistingCategoryException(
+					String.format("This category : %d, is not exists", patch.getCategory()));
+		}
+		if (patch.getPrice() != null && patch.getPrice() <= 0) {
+			throw new InvalidPriceException("Invalid price : " + patch.getPrice());
+		}
+		Coupon coupon = couponRepository.findById(id).orElse(null);
+		if (coupon == null || coupon.getCompany() == null || coupon.getCompany().getId() != companyId) {
+			throw new NoSuchCouponException("Invalid coupon id");
+		}
+		int previousCategory = coupon.getCategory();
+		int previousAmount = coupon.getAmount();
+		patch.setImage(imageStore.intern(patch.getImage()));
+		patch.applyTo(coupon);
+		couponSearchIndex.index(coupon);
+		companyStats.couponRemoved(companyId, previousCategory, previousAmount);
+		companyStats.couponAdded(companyId, coupon);
+		if (coupon.getAmount() != previousAmount) {
+			purchaseJournal.inventoryChanged(id, coupon.getAmount() - previousAmount);
+		}
+		stockCounters.amountChanged(id, coupon.getAmount());
+		walletCache.couponChanged(coupon);
+		changeFeed.couponUpdated(coupon, previousAmount);
+		scopeVersions.couponChanged(companyId, id);
+		return coupon;
 	}
 
 	/**
-	 * This function uses the already existing deleteById function in JpaRepository
-	 * to delete a coupon by its id
+	 * This function uses the soft deleter to delete a coupon by its id and remove it
+	 * from the search index
 	 * 
 	 * @throws NoSuchCouponException : if the id is not valid
 	 * @param id
@@ -157,7 +367,13 @@ public class CompanyServiceImpl implements CompanyService {
 		if (!coupon.isPresent()) {
 			throw new NoSuchCouponException("Invalid coupon id");
 		}
-		couponRepository.deleteById(id);
+		softDeleter.deleteCoupon(id);
+		companyStats.couponRemoved(companyId, coupon.get().getCategory(), coupon.get().getAmount());
+		purchaseJournal.inventoryChanged(id, -coupon.get().getAmount());
+		stockCounters.couponRemoved(id);
+		walletCache.couponRemoved(id);
+		changeFeed.couponRemoved(id, companyId, coupon.get().getCategory());
+		scopeVersions.couponChanged(companyId, id);
 	}
 
 	/**
@@ -172,4 +388,44 @@ public class CompanyServiceImpl implements CompanyService {
 		company.setId(companyId);
 		return companyRepository.save(company);
 	}
+
+	/**
+	 * This function uses the bulk importer to insert all the coupons of a CSV or
+	 * JSON stream for the company in chunks
+	 * 
+	 * @param in
+	 * @param contentType
+	 * @return ImportReport
+	 * @throws IOException
+	 */
+	@Override
+	public ImportReport importCoupons(InputStream in, String contentType) throws IOException {
+		return bulkImporter.importCoupons(companyId, in, contentType, 0, null);
+	}
+
+	/**
+	 * This function stores an image in the image store, the returned hash is then
+	 * given as the image of the coupons instead of the image itself
+	 * 
+	 * @param in
+	 * @return the hash of the image
+	 * @throws IOException
+	 * @throws InvalidImageException : if the image is too large or not in an
+	 *                               accepted format
+	 */
+	@Override
+	public String uploadImage(InputStream in) throws IOException, InvalidImageException {
+		return imageStore.store(in);
+	}
+
+	/**
+	 * This function returns the statistics of the company per category, they are
+	 * kept up to date in memory so the coupons are not read
+	 * 
+	 * @return List<CategoryStats>
+	 */
+	@Override
+	public List<CategoryStats> getCompanyStatistics() {
+		return companyStats.get(companyId);
+	}
 }
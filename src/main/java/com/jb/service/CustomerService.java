@@ -4,11 +4,16 @@ import java.sql.Date;
 import java.util.List;
 
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponResult;
 import com.jb.entity.Customer;
 import com.jb.rest.ex.CouponAlreadyPurchasedException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 import com.jb.rest.ex.ZeroCouponAmountException;
+import com.jb.stock.Availability;
+import com.jb.sync.CouponChanges;
+import com.jb.trending.Trend;
 
 public interface CustomerService extends Service {
 
@@ -18,6 +23,8 @@ public interface CustomerService extends Service {
 
 	List<Coupon> getAllCustomerCoupons();
 
+	long getAllCustomerCouponsVersion();
+
 	Coupon purchaseCoupon(long id) throws CouponAlreadyPurchasedException, ZeroCouponAmountException;
 
 	List<Coupon> getAllCustomerCouponsByCatergory(int category) throws NonExistingCategoryException;
@@ -25,4 +32,20 @@ public interface CustomerService extends Service {
 	List<Coupon> getAllCustomerCouponsBeforeEndDate(Date endDate);
 
 	List<Coupon> getAllCustomerCouponsBelowPrice(double price) throws InvalidPriceException;
+
+	List<CouponResult> getCoupons(List<Long> ids) throws TooManyIdsException;
+
+	Availability getAvailability(long[] ids) throws TooManyIdsException;
+
+	List<Coupon> searchCoupons(String query, int category) throws NonExistingCategoryException;
+
+	List<String> autocomplete(String prefix);
+
+	List<Trend> getTrendingCoupons(int category) throws NonExistingCategoryException;
+
+	List<Trend> getTopSellers(int category) throws NonExistingCategoryException;
+
+	CouponChanges getCouponChanges(long since);
+
+	CouponChanges getCatalogChanges(long since, int category) throws NonExistingCategoryException;
 }
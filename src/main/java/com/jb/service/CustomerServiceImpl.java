@@ -1,19 +1,41 @@
 package com.jb.service;
 
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.jb.cache.CouponBatchLoader;
+import com.jb.cache.ScopeVersions;
+import com.jb.cache.WalletCache;
 import com.jb.entity.Coupon;
+import com.jb.entity.CouponResult;
 import com.jb.entity.Customer;
+import com.jb.feed.ChangeFeed;
+import com.jb.journal.PurchaseJournal;
 import com.jb.repository.CouponRepository;
 import com.jb.repository.CustomerRepository;
 import com.jb.rest.ex.CouponAlreadyPurchasedException;
 import com.jb.rest.ex.InvalidPriceException;
 import com.jb.rest.ex.NonExistingCategoryException;
+import com.jb.rest.ex.TooManyIdsException;
 import com.jb.rest.ex.ZeroCouponAmountException;
+import com.jb.routing.ReplicaRead;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stats.CompanyStats;
+import com.jb.stock.Availability;
+import com.jb.stock.StockCounters;
+import com.jb.sync.ChangeVersions;
+import com.jb.sync.CouponChanges;
+import com.jb.sync.DeltaSync;
+import com.jb.trending.Trend;
+import com.jb.trending.TrendingTracker;
 
 /**
  * In this class I create all the functions that will be used later by the
@@ -26,16 +48,46 @@ import com.jb.rest.ex.ZeroCouponAmountException;
 public class CustomerServiceImpl implements CustomerService {
 
 	// Fields
+	private static final int SEARCH_LIMIT = 50;
+	private static final int AUTOCOMPLETE_LIMIT = 10;
+	private static final int TRENDING_LIMIT = 10;
+
 	private long customerId;
 
 	private CustomerRepository customerRepository;
 	private CouponRepository couponRepository;
+	private CouponSearchIndex couponSearchIndex;
+	private CompanyStats companyStats;
+	private TrendingTracker trendingTracker;
+	private PurchaseJournal purchaseJournal;
+	private ChangeFeed changeFeed;
+	private ChangeVersions changeVersions;
+	private DeltaSync deltaSync;
+	private ScopeVersions scopeVersions;
+	private CouponBatchLoader couponBatchLoader;
+	private StockCounters stockCounters;
+	private WalletCache walletCache;
 
 	// Constructor
 	@Autowired
-	public CustomerServiceImpl(CustomerRepository customerRepository, CouponRepository couponRepository) {
+	public CustomerServiceImpl(CustomerRepository customerRepository, CouponRepository couponRepository,
+			CouponSearchIndex couponSearchIndex, CompanyStats companyStats, TrendingTracker trendingTracker,
+			PurchaseJournal purchaseJournal, ChangeFeed changeFeed, ChangeVersions changeVersions,
+			DeltaSync deltaSync, ScopeVersions scopeVersions, CouponBatchLoader couponBatchLoader,
+			StockCounters stockCounters, WalletCache walletCache) {
 		this.customerRepository = customerRepository;
 		this.couponRepository = couponRepository;
+		this.couponSearchIndex = couponSearchIndex;
+		this.companyStats = companyStats;
+		this.trendingTracker = trendingTracker;
+		this.purchaseJournal = purchaseJournal;
+		this.changeFeed = changeFeed;
+		this.changeVersions = changeVersions;
+		this.deltaSync = deltaSync;
+		this.scopeVersions = scopeVersions;
+		this.couponBatchLoader = couponBatchLoader;
+		this.stockCounters = stockCounters;
+		this.walletCache = walletCache;
 	}
 
 	// Is use in loginSystem.customerLogin()
@@ -50,6 +102,7 @@ public class CustomerServiceImpl implements CustomerService {
 	 * @return Customer
 	 */
 	@Override
+	@ReplicaRead
 	public Customer getCustomer() {
 		return customerRepository.findById(customerId).orElse(null);
 	}
@@ -68,19 +121,36 @@ public class CustomerServiceImpl implements CustomerService {
 	}
 
 	/**
-	 * This function uses the findAllByCustomerId function that I created in coupon
-	 * repository to retrieve all customer coupons
+	 * This function retrieves all customer coupons from the wallet cache, which
+	 * reads them with a single query the first time. Their ids are kept to compute
+	 * the version of the list without a query
 	 * 
 	 * @return List<Coupon>
 	 */
 	@Override
 	public List<Coupon> getAllCustomerCoupons() {
-		return couponRepository.findAllByCustomerId(customerId);
+		long version = scopeVersions.customerBaseVersion(customerId);
+		List<Coupon> coupons = walletCache.get(customerId, (category, price, endDate) -> true);
+		scopeVersions.rememberCustomer(customerId, version, coupons);
+		return coupons;
+	}
+
+	/**
+	 * This function returns the version of the list of the coupons of the
+	 * customer, it changes with the purchases of the customer and with every
+	 * change of one of its coupons
+	 * 
+	 * @return the version, -1 when the coupons of the customer have not been
+	 *         listed since its last change
+	 */
+	@Override
+	public long getAllCustomerCouponsVersion() {
+		return scopeVersions.customerVersion(customerId);
 	}
 
 	/**
-	 * This function uses the function findAllByCustomerIdAndCategory that I created
-	 * in coupon repository to retrieve all customer's coupons by category
+	 * This function retrieves all customer's coupons by category, filtered in the
+	 * wallet cache
 	 * 
 	 * @throws NonExistingCategoryException : if the category is not valid
 	 * @param category
@@ -91,26 +161,25 @@ public class CustomerServiceImpl implements CustomerService {
 		if (category > 8 || category < 1) {
 			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
 		}
-		return couponRepository.findAllByCustomerIdAndCategory(customerId, category);
+		return walletCache.get(customerId, (couponCategory, price, endDate) -> couponCategory == category);
 	}
 
 	/**
-	 * This function uses the function findAllByCustomerIdAndBeforeEndDate that I
-	 * created in coupon repository to retrieve all the coupons of the customer
-	 * whose date has not yet expired
+	 * This function retrieves all the coupons of the customer whose end date is
+	 * not after the date in parameter, filtered in the wallet cache
 	 * 
 	 * @param endDate
 	 * @return List<Coupon>
 	 */
 	@Override
 	public List<Coupon> getAllCustomerCouponsBeforeEndDate(Date endDate) {
-		return couponRepository.findAllByCustomerIdAndBeforeEndDate(customerId, endDate);
+		long limit = endDate.getTime();
+		return walletCache.get(customerId, (category, price, couponEndDate) -> couponEndDate <= limit);
 	}
 
 	/**
-	 * This function uses the function findAllByCustomerIdAndBelowPrice that I
-	 * created in coupon repository to retrieve all the coupons of the customer
-	 * whose price is lower than the price in parameter
+	 * This function retrieves all the coupons of the customer whose price is lower
+	 * than the price in parameter, filtered in the wallet cache
 	 * 
 	 * @param price
 	 * @return List<Coupon>
@@ -120,13 +189,85 @@ public class CustomerServiceImpl implements CustomerService {
 		if (price <= 0) {
 			throw new InvalidPriceException("Invalid price : " + price);
 		}
-		return couponRepository.findAllByCustomerIdAndBelowPrice(customerId, price);
+		return walletCache.get(customerId, (category, couponPrice, endDate) -> couponPrice <= price);
+	}
+
+	/**
+	 * This function retrieves many coupons of the catalog in one call, for a cart
+	 * or a wallet, in the order of the ids
+	 * 
+	 * @param ids
+	 * @return List<CouponResult>
+	 * @throws TooManyIdsException
+	 */
+	@Override
+	@ReplicaRead
+	public List<CouponResult> getCoupons(List<Long> ids) throws TooManyIdsException {
+		return couponBatchLoader.load(ids, coupon -> true);
+	}
+
+	/**
+	 * This function returns how many units of every coupon are left, from the
+	 * stock counters, without loading the coupons
+	 * 
+	 * @param ids
+	 * @return Availability
+	 * @throws TooManyIdsException
+	 */
+	@Override
+	public Availability getAvailability(long[] ids) throws TooManyIdsException {
+		return stockCounters.get(ids);
+	}
+
+	/**
+	 * This function uses the search index to find the coupons whose title or
+	 * description contain the words of the query, then loads them with a single
+	 * findAllById and returns them in the order of the ranking
+	 * 
+	 * @throws NonExistingCategoryException : if the category is not valid
+	 * @param query
+	 * @param category : 0 for all the categories
+	 * @return List<Coupon>
+	 */
+	@Override
+	@ReplicaRead
+	public List<Coupon> searchCoupons(String query, int category) throws NonExistingCategoryException {
+		if (category != 0 && (category > 8 || category < 1)) {
+			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
+		}
+		List<Long> ids = couponSearchIndex.search(query, category, SEARCH_LIMIT);
+		Map<Long, Coupon> coupons = new HashMap<>();
+		for (Coupon coupon : couponRepository.findAllById(ids)) {
+			coupons.put(coupon.getId(), coupon);
+		}
+		List<Coupon> ranked = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			Coupon coupon = coupons.get(id);
+			if (coupon != null) {
+				ranked.add(coupon);
+			}
+		}
+		return ranked;
+	}
+
+	/**
+	 * This function uses the search index to suggest the words starting with the
+	 * prefix
+	 * 
+	 * @param prefix
+	 * @return List<String>
+	 */
+	@Override
+	public List<String> autocomplete(String prefix) {
+		return couponSearchIndex.autocomplete(prefix, AUTOCOMPLETE_LIMIT);
 	}
 
 	/**
 	 * This function uses the 2 private functions addCoupon and
 	 * decrementAmountCoupon in order to make a purchase by adding the coupon to the
-	 * customer and remove a unit from the basic quantity
+	 * customer and remove a unit from the basic quantity, in one transaction. The
+	 * purchase is then appended to the purchase journal and the new quantity is
+	 * pushed to the change feed
 	 * 
 	 * @throws CouponAlreadyPurchasedException : if the coupon has already been
 	 *                                         purchased by the customer
@@ -136,40 +277,55 @@ public class CustomerServiceImpl implements CustomerService {
 	 * @return Coupon
 	 */
 	@Override
+	@Transactional(rollbackFor = Exception.class)
 	public Coupon purchaseCoupon(long couponId) throws CouponAlreadyPurchasedException, ZeroCouponAmountException {
 		if (couponAlreadyPurchased(couponId)) {
 			throw new CouponAlreadyPurchasedException(
 					String.format("This coupon : %s , is already purchased", couponId));
 		}
-		return addCoupon(decrementAmountCoupon(couponId));
+		Coupon coupon;
+		try {
+			coupon = addCoupon(decrementAmountCoupon(couponId));
+		} catch (DataIntegrityViolationException e) {
+			// The same purchase committed by a concurrent request
+			throw new CouponAlreadyPurchasedException(
+					String.format("This coupon : %s , is already purchased", couponId));
+		}
+		if (coupon.getCompany() != null) {
+			companyStats.couponSold(coupon.getCompany().getId(), coupon);
+		}
+		trendingTracker.purchased(coupon.getId(), coupon.getCategory());
+		purchaseJournal.purchase(customerId, coupon.getId());
+		stockCounters.amountChanged(coupon.getId(), coupon.getAmount());
+		walletCache.couponPurchased(customerId, coupon);
+		changeFeed.couponPurchased(coupon);
+		scopeVersions.couponChanged(coupon.getCompany() == null ? 0 : coupon.getCompany().getId(), coupon.getId());
+		scopeVersions.customerChanged(customerId);
+		return coupon;
 	}
 
 	/**
 	 * This function is a private function that allows me to check if the coupon has
-	 * already been purchased by the customer
+	 * already been purchased by the customer, among the ids of its wallet
 	 * 
 	 * @param couponId
 	 * @return True if already purchased and false otherwise
 	 */
 	private boolean couponAlreadyPurchased(long couponId) {
-		for (Coupon c : getAllCustomerCoupons()) {
-			return c.getId() == couponId;
-		}
-		return false;
+		return walletCache.contains(customerId, couponId);
 	}
 
 	/**
-	 * This function is a private function that uses the existing save function in
-	 * JpaRepository to add a coupon to the customer and save the transaction
+	 * This function is a private function that adds a coupon to the customer by
+	 * inserting its customer_coupon row with a change version. Adding the coupon
+	 * to the list of the customer would make Hibernate delete and insert again
+	 * all the other rows of the customer
 	 * 
 	 * @param coupon
 	 * @return Coupon
 	 */
 	private Coupon addCoupon(Coupon coupon) {
-		Customer customer = getCustomer();
-
-		customer.add(coupon);
-		customerRepository.save(customer);
+		couponRepository.addOwnership(customerId, coupon.getId(), changeVersions.next());
 
 		return coupon;
 	}
@@ -193,4 +349,65 @@ public class CustomerServiceImpl implements CustomerService {
 
 		return coupon;
 	}
+
+	/**
+	 * This function returns the coupons purchased the most in the last hour, read
+	 * from the trending tracker
+	 * 
+	 * @param category : 0 for all the categories
+	 * @return List<Trend>
+	 * @throws NonExistingCategoryException : if the category is not exists
+	 */
+	@Override
+	public List<Trend> getTrendingCoupons(int category) throws NonExistingCategoryException {
+		if (category != 0 && (category > 8 || category < 1)) {
+			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
+		}
+		return trendingTracker.trending(category, TRENDING_LIMIT);
+	}
+
+	/**
+	 * This function returns the coupons purchased the most in the last day, read
+	 * from the trending tracker
+	 * 
+	 * @param category : 0 for all the categories
+	 * @return List<Trend>
+	 * @throws NonExistingCategoryException : if the category is not exists
+	 */
+	@Override
+	public List<Trend> getTopSellers(int category) throws NonExistingCategoryException {
+		if (category != 0 && (category > 8 || category < 1)) {
+			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
+		}
+		return trendingTracker.topSellers(category, TRENDING_LIMIT);
+	}
+
+	/**
+	 * This function returns the coupons of the customer purchased, updated or
+	 * removed since the version of the client
+	 * 
+	 * @param since : 0 for all the coupons of the customer
+	 * @return CouponChanges
+	 */
+	@Override
+	public CouponChanges getCouponChanges(long since) {
+		return deltaSync.walletChanges(customerId, since);
+	}
+
+	/**
+	 * This function returns the coupons created, updated or removed since the
+	 * version of the client
+	 * 
+	 * @param since
+	 * @param category : 0 for all the categories
+	 * @return CouponChanges
+	 * @throws NonExistingCategoryException : if the category is not exists
+	 */
+	@Override
+	public CouponChanges getCatalogChanges(long since, int category) throws NonExistingCategoryException {
+		if (category != 0 && (category > 8 || category < 1)) {
+			throw new NonExistingCategoryException(String.format("This category : %d, is not exists", category));
+		}
+		return deltaSync.catalogChanges(since, category);
+	}
 }
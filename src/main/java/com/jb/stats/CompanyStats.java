@@ -0,0 +1,314 @@
+package com.jb.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jb.entity.CategoryStats;
+import com.jb.entity.Coupon;
+import com.jb.repository.CategoryStatsRepository;
+import com.jb.repository.CategoryStatsRepository.Aggregate;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class keeps the dashboard of every company: per category, the number of
+ * coupons listed, the units remaining, the units sold and the gross value of
+ * the sales. The counters are LongAdders updated by the services every time a
+ * coupon is created, updated, removed or purchased, once the transaction of the
+ * change is committed, so reading a dashboard never touches the coupon table
+ * and a change that rolls back is never counted. They are written to
+ * company_category_stats every few seconds and rebuilt when the application
+ * starts, the listings from the coupon table and the sales from the last
+ * snapshot
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class CompanyStats {
+
+	// Fields
+	private final CategoryStatsRepository categoryStatsRepository;
+	private final TransactionTemplate transactionTemplate;
+
+	private final Map<Long, Map<Integer, Counters>> companies = new ConcurrentHashMap<>();
+	private final Set<CategoryStats.Key> dirty = ConcurrentHashMap.newKeySet();
+
+	// The changes share the read lock, a reload takes the write lock to swap in
+	// the listings it has counted
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Map<CategoryStats.Key, Listing> changedDuringReload;
+
+	// Constructor
+	@Autowired
+	public CompanyStats(CategoryStatsRepository categoryStatsRepository,
+			PlatformTransactionManager transactionManager) {
+		this.categoryStatsRepository = categoryStatsRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * This function rebuilds every counter once the application is ready. The
+	 * sales come from the last snapshot, or from the customer_coupon table the
+	 * first time
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		companies.clear();
+		List<CategoryStats> snapshot = categoryStatsRepository.findAll();
+		if (snapshot.isEmpty()) {
+			for (Aggregate sales : categoryStatsRepository.sumSales()) {
+				Counters counters = counters(sales.getCompanyId(), sales.getCategory());
+				counters.unitsSold.add(sales.getRowCount());
+				counters.grossCents.add(toCents(sales.getTotal().doubleValue()));
+			}
+		} else {
+			for (CategoryStats row : snapshot) {
+				Counters counters = counters(row.getCompanyId(), row.getCategory());
+				counters.unitsSold.add(row.getUnitsSold());
+				counters.grossCents.add(row.getGrossCents());
+			}
+		}
+		reloadListings();
+	}
+
+	/**
+	 * This function recounts the coupons listed and the units remaining from the
+	 * coupon table, it is used when coupons leave the table without going through
+	 * the services. The new counts are built aside while the changes go on, the
+	 * changes made during the query are added to them and they replace the
+	 * current ones at once
+	 */
+	public void reloadListings() {
+		lock.writeLock().lock();
+		try {
+			changedDuringReload = new ConcurrentHashMap<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Map<CategoryStats.Key, Listing> counted = null;
+		try {
+			counted = new HashMap<>();
+			for (Aggregate listings : categoryStatsRepository.sumListings()) {
+				Listing listing = counted.computeIfAbsent(
+						new CategoryStats.Key(listings.getCompanyId(), listings.getCategory()), key -> new Listing());
+				listing.listed = listings.getRowCount();
+				listing.unitsRemaining = listings.getTotal().longValue();
+			}
+		} catch (RuntimeException e) {
+			counted = null;
+			throw e;
+		} finally {
+			lock.writeLock().lock();
+			try {
+				swap(counted);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * This function counts a new coupon
+	 * 
+	 * @param companyId
+	 * @param coupon
+	 */
+	public void couponAdded(long companyId, Coupon coupon) {
+		int category = coupon.getCategory();
+		int amount = coupon.getAmount();
+		TransactionHooks.afterCommit(() -> change(companyId, category, 1, amount, 0, 0));
+	}
+
+	/**
+	 * This function uncounts a coupon that was removed or that is about to be
+	 * replaced by its updated version
+	 * 
+	 * @param companyId
+	 * @param category
+	 * @param amount
+	 */
+	public void couponRemoved(long companyId, int category, int amount) {
+		TransactionHooks.afterCommit(() -> change(companyId, category, -1, -amount, 0, 0));
+	}
+
+	/**
+	 * This function counts the sale of one unit of a coupon
+	 * 
+	 * @param companyId
+	 * @param coupon
+	 */
+	public void couponSold(long companyId, Coupon coupon) {
+		int category = coupon.getCategory();
+		long cents = toCents(coupon.getPrice());
+		TransactionHooks.afterCommit(() -> change(companyId, category, 0, -1, 1, cents));
+	}
+
+	/**
+	 * This function forgets a removed company and deletes its snapshot
+	 * 
+	 * @param companyId
+	 */
+	public void companyRemoved(long companyId) {
+		companies.remove(companyId);
+		dirty.removeIf(key -> key.getCompanyId() == companyId);
+		categoryStatsRepository.deleteAllByCompanyId(companyId);
+	}
+
+	/**
+	 * This function returns the counters of a company, one entry per category
+	 * 
+	 * @param companyId
+	 * @return List<CategoryStats>
+	 */
+	public List<CategoryStats> get(long companyId) {
+		Map<Integer, Counters> categories = companies.get(companyId);
+		if (categories == null) {
+			return Collections.emptyList();
+		}
+		List<CategoryStats> stats = new ArrayList<>(categories.size());
+		for (Map.Entry<Integer, Counters> category : categories.entrySet()) {
+			stats.add(category.getValue().snapshot(companyId, category.getKey()));
+		}
+		stats.sort((a, b) -> Integer.compare(a.getCategory(), b.getCategory()));
+		return stats;
+	}
+
+	/**
+	 * This function writes the counters changed since the last call to
+	 * company_category_stats, every 10 seconds by default
+	 */
+	@Scheduled(fixedDelayString = "${cs.company-stats.flush-millis:10000}")
+	public void flush() {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		List<CategoryStats> rows = new ArrayList<>();
+		for (CategoryStats.Key key : dirty) {
+			dirty.remove(key);
+			Map<Integer, Counters> categories = companies.get(key.getCompanyId());
+			Counters counters = categories == null ? null : categories.get(key.getCategory());
+			if (counters != null) {
+				rows.add(counters.snapshot(key.getCompanyId(), key.getCategory()));
+			}
+		}
+		transactionTemplate.execute(status -> {
+			for (CategoryStats row : rows) {
+				categoryStatsRepository.upsert(row.getCompanyId(), row.getCategory(), row.getListed(),
+						row.getUnitsRemaining(), row.getUnitsSold(), row.getGrossCents());
+			}
+			return rows.size();
+		});
+	}
+
+	private void change(long companyId, int category, long listed, long unitsRemaining, long unitsSold,
+			long grossCents) {
+		lock.readLock().lock();
+		try {
+			Counters counters = counters(companyId, category);
+			counters.listed.add(listed);
+			counters.unitsRemaining.add(unitsRemaining);
+			counters.unitsSold.add(unitsSold);
+			counters.grossCents.add(grossCents);
+			Map<CategoryStats.Key, Listing> changed = changedDuringReload;
+			if (changed != null && (listed != 0 || unitsRemaining != 0)) {
+				Listing listing = changed.computeIfAbsent(new CategoryStats.Key(companyId, category),
+						key -> new Listing());
+				synchronized (listing) {
+					listing.listed += listed;
+					listing.unitsRemaining += unitsRemaining;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		dirty.add(new CategoryStats.Key(companyId, category));
+	}
+
+	/**
+	 * Called with the write lock, the listings counted by a reload plus the
+	 * changes made during it replace the current ones. A failed reload only
+	 * stops recording the changes
+	 */
+	private void swap(Map<CategoryStats.Key, Listing> counted) {
+		Map<CategoryStats.Key, Listing> changed = changedDuringReload;
+		changedDuringReload = null;
+		if (counted == null) {
+			return;
+		}
+		for (Map.Entry<CategoryStats.Key, Listing> entry : changed.entrySet()) {
+			Listing listing = counted.computeIfAbsent(entry.getKey(), key -> new Listing());
+			listing.listed += entry.getValue().listed;
+			listing.unitsRemaining += entry.getValue().unitsRemaining;
+		}
+		for (Map.Entry<Long, Map<Integer, Counters>> company : companies.entrySet()) {
+			for (Map.Entry<Integer, Counters> category : company.getValue().entrySet()) {
+				CategoryStats.Key key = new CategoryStats.Key(company.getKey(), category.getKey());
+				Listing listing = counted.remove(key);
+				category.getValue().setListing(listing == null ? new Listing() : listing);
+				dirty.add(key);
+			}
+		}
+		for (Map.Entry<CategoryStats.Key, Listing> entry : counted.entrySet()) {
+			counters(entry.getKey().getCompanyId(), entry.getKey().getCategory()).setListing(entry.getValue());
+			dirty.add(entry.getKey());
+		}
+	}
+
+	private Counters counters(long companyId, int category) {
+		return companies.computeIfAbsent(companyId, id -> new ConcurrentHashMap<>()).computeIfAbsent(category,
+				c -> new Counters());
+	}
+
+	private static long toCents(double value) {
+		return Math.round(value * 100);
+	}
+
+	/**
+	 * The counters of one company and one category
+	 */
+	private static class Counters {
+
+		private final LongAdder listed = new LongAdder();
+		private final LongAdder unitsRemaining = new LongAdder();
+		private final LongAdder unitsSold = new LongAdder();
+		private final LongAdder grossCents = new LongAdder();
+
+		private void setListing(Listing listing) {
+			listed.reset();
+			listed.add(listing.listed);
+			unitsRemaining.reset();
+			unitsRemaining.add(listing.unitsRemaining);
+		}
+
+		private CategoryStats snapshot(long companyId, int category) {
+			return new CategoryStats(companyId, category, listed.sum(), unitsRemaining.sum(), unitsSold.sum(),
+					grossCents.sum());
+		}
+	}
+
+	/**
+	 * The listings of one company and one category counted by a reload, or
+	 * changed while it runs
+	 */
+	private static class Listing {
+
+		private long listed;
+		private long unitsRemaining;
+	}
+}
@@ -0,0 +1,44 @@
+package com.jb.stock;
+
+/**
+ * This class is the answer of the availability endpoint: the remaining amount
+ * of every requested coupon, at the same index as its id, -1 for an unknown
+ * coupon. The amounts include every change made through the services, the
+ * other changes (expired coupons, removed companies) can be missing for at
+ * most stalenessMillis
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class Availability {
+
+	// Fields
+	private final long[] ids;
+	private final int[] remaining;
+	private final long reloadedMillis;
+	private final long stalenessMillis;
+
+	// Constructor
+	public Availability(long[] ids, int[] remaining, long reloadedMillis, long stalenessMillis) {
+		this.ids = ids;
+		this.remaining = remaining;
+		this.reloadedMillis = reloadedMillis;
+		this.stalenessMillis = stalenessMillis;
+	}
+
+	public long[] getIds() {
+		return ids;
+	}
+
+	public int[] getRemaining() {
+		return remaining;
+	}
+
+	public long getReloadedMillis() {
+		return reloadedMillis;
+	}
+
+	public long getStalenessMillis() {
+		return stalenessMillis;
+	}
+}
@@ -0,0 +1,133 @@
+package com.jb.stock;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CouponRepository.CouponStock;
+import com.jb.rest.ex.TooManyIdsException;
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class keeps the remaining amount of every coupon in a primitive table,
+ * so the product pages can ask how many are left without loading the coupons.
+ * The services set the amount of a coupon once their transaction is committed,
+ * and the whole table is rebuilt from the coupon table every minute by default
+ * for the changes that do not go through them. A lookup reads the table
+ * without a lock and allocates only the array of the answer
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class StockCounters {
+
+	// Fields
+	private final CouponRepository couponRepository;
+	private final int maxIds;
+
+	private volatile StockTable table = new StockTable(0);
+	private volatile long reloadedMillis;
+	private Set<Long> changedDuringReload;
+
+	// Constructor
+	@Autowired
+	public StockCounters(CouponRepository couponRepository, @Value("${cs.availability.max-ids:1000}") int maxIds) {
+		this.couponRepository = couponRepository;
+		this.maxIds = maxIds;
+	}
+
+	/**
+	 * This function rebuilds the table from the coupon table. The coupons set by
+	 * the services while the rows are read keep the amount they were given
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(fixedDelayString = "${cs.availability.reload-millis:60000}",
+			initialDelayString = "${cs.availability.reload-millis:60000}")
+	public void reload() {
+		long started = System.currentTimeMillis();
+		synchronized (this) {
+			changedDuringReload = new HashSet<>();
+		}
+		List<CouponStock> rows = couponRepository.findAllStock();
+		StockTable fresh = new StockTable(rows.size());
+		for (CouponStock row : rows) {
+			fresh.put(row.getId(), Math.max(0, row.getAmount()));
+		}
+		synchronized (this) {
+			for (Long id : changedDuringReload) {
+				fresh.put(id, table.get(id));
+				if (fresh.isFull()) {
+					fresh = fresh.grow();
+				}
+			}
+			changedDuringReload = null;
+			table = fresh;
+			reloadedMillis = started;
+		}
+	}
+
+	/**
+	 * This function sets the remaining amount of a coupon at the end of the
+	 * current transaction
+	 * 
+	 * @param couponId
+	 * @param amount
+	 */
+	public void amountChanged(long couponId, int amount) {
+		TransactionHooks.afterCommit(() -> set(couponId, Math.max(0, amount)));
+	}
+
+	/**
+	 * This function forgets a removed coupon at the end of the current transaction
+	 * 
+	 * @param couponId
+	 */
+	public void couponRemoved(long couponId) {
+		TransactionHooks.afterCommit(() -> set(couponId, StockTable.UNKNOWN));
+	}
+
+	/**
+	 * This function returns the remaining amount of every coupon, in the order of
+	 * the ids
+	 * 
+	 * @param ids
+	 * @return Availability
+	 * @throws TooManyIdsException : if there are more ids than
+	 *                             cs.availability.max-ids
+	 */
+	public Availability get(long[] ids) throws TooManyIdsException {
+		if (ids.length > maxIds) {
+			throw new TooManyIdsException(String.format("%d ids, at most %d are allowed", ids.length, maxIds));
+		}
+		StockTable current = table;
+		long reloaded = reloadedMillis;
+		int[] remaining = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			remaining[i] = current.get(ids[i]);
+		}
+		return new Availability(ids, remaining, reloaded, reloaded == 0 ? -1 : System.currentTimeMillis() - reloaded);
+	}
+
+	private synchronized void set(long couponId, int amount) {
+		if (couponId <= 0) {
+			return;
+		}
+		table.put(couponId, amount);
+		if (table.isFull()) {
+			table = table.grow();
+		}
+		if (changedDuringReload != null) {
+			changedDuringReload.add(couponId);
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.jb.stock;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is an open addressing hash map from a coupon id to its remaining
+ * amount. It is written by one thread at a time and read by any number of
+ * threads without a lock: the amount of a new entry is written before its key,
+ * so a reader that finds the key also finds the amount. A removed coupon keeps
+ * its slot with an unknown amount until the table is rebuilt
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class StockTable {
+
+	// Fields
+	static final int UNKNOWN = -1;
+
+	private final AtomicLongArray keys;
+	private final AtomicIntegerArray amounts;
+	private final int mask;
+	private int size;
+
+	// Constructor
+	StockTable(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+		keys = new AtomicLongArray(capacity);
+		amounts = new AtomicIntegerArray(capacity);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * This function returns the remaining amount of a coupon, or UNKNOWN
+	 * 
+	 * @param id
+	 * @return int
+	 */
+	int get(long id) {
+		int slot = hash(id);
+		long key;
+		while ((key = keys.get(slot)) != 0) {
+			if (key == id) {
+				return amounts.get(slot);
+			}
+			slot = (slot + 1) & mask;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * This function sets the remaining amount of a coupon, UNKNOWN forgets it.
+	 * The caller must grow the table when it is full
+	 * 
+	 * @param id
+	 * @param amount
+	 */
+	void put(long id, int amount) {
+		int slot = hash(id);
+		long key;
+		while ((key = keys.get(slot)) != 0) {
+			if (key == id) {
+				amounts.set(slot, amount);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (amount == UNKNOWN) {
+			return;
+		}
+		amounts.set(slot, amount);
+		keys.set(slot, id);
+		size++;
+	}
+
+	boolean isFull() {
+		return size * 2 > mask;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * This function copies the known amounts into a table twice as large
+	 * 
+	 * @return StockTable
+	 */
+	StockTable grow() {
+		StockTable grown = new StockTable(size * 2);
+		for (int slot = 0; slot <= mask; slot++) {
+			long key = keys.get(slot);
+			int amount = amounts.get(slot);
+			if (key != 0 && amount != UNKNOWN) {
+				grown.put(key, amount);
+			}
+		}
+		return grown;
+	}
+
+	private int hash(long id) {
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
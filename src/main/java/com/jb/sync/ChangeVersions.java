@@ -0,0 +1,88 @@
+package com.jb.sync;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class gives the change versions of the coupons and of the ownerships.
+ * A version is the time of the change in milliseconds shifted left by 12 bits
+ * plus a counter, so the versions always increase, also after a restart, and
+ * the version of a date can be computed.
+ * 
+ * A version is taken inside the transaction of the change and is in flight
+ * until the transaction ends. The stable version is the highest version below
+ * every version in flight, a delta read up to it never misses a change that
+ * commits later with a smaller version
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class ChangeVersions {
+
+	// Fields
+	private static final int COUNTER_BITS = 12;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	// Guarded by this
+	private final NavigableSet<Long> inFlight = new TreeSet<>();
+	private long last = -1;
+
+	// Constructor
+	@Autowired
+	public ChangeVersions(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * This function takes a new version. It is released when the current
+	 * transaction ends
+	 * 
+	 * @return the version
+	 */
+	public synchronized long next() {
+		long version = Math.max(current() + 1, versionAt(System.currentTimeMillis()));
+		last = version;
+		if (TransactionHooks.afterCompletion(() -> release(version))) {
+			inFlight.add(version);
+		}
+		return version;
+	}
+
+	/**
+	 * @return the highest version whose changes and the changes of all the
+	 *         versions before it are visible
+	 */
+	public synchronized long stableVersion() {
+		return inFlight.isEmpty() ? current() : inFlight.first() - 1;
+	}
+
+	/**
+	 * @param millis
+	 * @return the first version that can be given at this time
+	 */
+	public static long versionAt(long millis) {
+		return millis << COUNTER_BITS;
+	}
+
+	private synchronized void release(long version) {
+		inFlight.remove(version);
+	}
+
+	// The clock may be behind the last version written before a restart
+	private long current() {
+		if (last < 0) {
+			last = jdbcTemplate.queryForObject("SELECT GREATEST((SELECT COALESCE(MAX(change_version), 0) FROM coupon),"
+					+ " (SELECT COALESCE(MAX(change_version), 0) FROM customer_coupon),"
+					+ " (SELECT COALESCE(MAX(change_version), 0) FROM coupon_archive))", Long.class);
+		}
+		return last;
+	}
+}
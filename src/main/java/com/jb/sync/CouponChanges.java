@@ -0,0 +1,47 @@
+package com.jb.sync;
+
+import java.util.List;
+
+import com.jb.entity.Coupon;
+
+/**
+ * This class is the answer to a delta sync : the coupons inserted or updated
+ * and the ids of the coupons removed since the version of the client, and the
+ * version to send next time. When reset is true the changes are not listed and
+ * the client reloads the whole list, then asks for the changes since version
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CouponChanges {
+
+	// Fields
+	private long version;
+	private boolean reset;
+	private List<Coupon> coupons;
+	private List<Long> removed;
+
+	// Constructor
+	public CouponChanges(long version, boolean reset, List<Coupon> coupons, List<Long> removed) {
+		this.version = version;
+		this.reset = reset;
+		this.coupons = coupons;
+		this.removed = removed;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isReset() {
+		return reset;
+	}
+
+	public List<Coupon> getCoupons() {
+		return coupons;
+	}
+
+	public List<Long> getRemoved() {
+		return removed;
+	}
+}
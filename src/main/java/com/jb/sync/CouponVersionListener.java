@@ -0,0 +1,36 @@
+package com.jb.sync;
+
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+
+/**
+ * This class gives a new change version to a coupon every time it is inserted
+ * or updated through the entity manager. The bulk updates of the repository
+ * set the version themselves
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class CouponVersionListener {
+
+	// Fields
+	private final ChangeVersions changeVersions;
+
+	// Constructor
+	@Autowired
+	public CouponVersionListener(ChangeVersions changeVersions) {
+		this.changeVersions = changeVersions;
+	}
+
+	@PrePersist
+	@PreUpdate
+	public void stamp(Coupon coupon) {
+		coupon.setChangeVersion(changeVersions.next());
+	}
+}
@@ -0,0 +1,109 @@
+package com.jb.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jb.entity.Coupon;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CouponRepository.ChangedCoupon;
+
+/**
+ * This class builds the changes of the catalog or of the coupons of a customer
+ * since a version. Every delta reads one range of a change_version index, so
+ * its cost follows the number of changes and not the number of coupons. The
+ * removed coupons are found among the soft deleted rows and in the archive.
+ * 
+ * The client reloads everything when there are more than cs.sync.max-changes
+ * changes, or when its version is older than the retention of the tombstones
+ * because the coupons removed since then may already be purged
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class DeltaSync {
+
+	// Fields
+	private final CouponRepository couponRepository;
+	private final ChangeVersions changeVersions;
+	private final int maxChanges;
+	private final long retentionMillis;
+
+	// Constructor
+	@Autowired
+	public DeltaSync(CouponRepository couponRepository, ChangeVersions changeVersions,
+			@Value("${cs.sync.max-changes:1000}") int maxChanges,
+			@Value("${cs.purger.retention-millis:604800000}") long retentionMillis) {
+		this.couponRepository = couponRepository;
+		this.changeVersions = changeVersions;
+		this.maxChanges = maxChanges;
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * This function returns the changes of the coupons of all the companies
+	 * 
+	 * @param since
+	 * @param category : 0 for all the categories
+	 * @return CouponChanges
+	 */
+	public CouponChanges catalogChanges(long since, int category) {
+		long upto = changeVersions.stableVersion();
+		if (expired(since, upto)) {
+			return reset(upto);
+		}
+		List<ChangedCoupon> changed = category == 0 ? couponRepository.findChangedIds(since, upto, maxChanges + 1)
+				: couponRepository.findChangedIdsByCategory(category, since, upto, maxChanges + 1);
+		List<Long> archived = couponRepository.findArchivedIds(category, since, upto, maxChanges + 1);
+		return changes(upto, changed, archived);
+	}
+
+	/**
+	 * This function returns the changes of the coupons purchased by a customer
+	 * 
+	 * @param customerId
+	 * @param since
+	 * @return CouponChanges
+	 */
+	public CouponChanges walletChanges(long customerId, long since) {
+		long upto = changeVersions.stableVersion();
+		if (expired(since, upto)) {
+			return reset(upto);
+		}
+		List<ChangedCoupon> changed = couponRepository.findChangedIdsByCustomerId(customerId, since, upto,
+				maxChanges + 1);
+		List<Long> archived = couponRepository.findArchivedIdsByCustomerId(customerId, since, upto, maxChanges + 1);
+		return changes(upto, changed, archived);
+	}
+
+	private boolean expired(long since, long upto) {
+		return since < 0 || since > upto || since > 0
+				&& since < ChangeVersions.versionAt(System.currentTimeMillis() - retentionMillis);
+	}
+
+	private CouponChanges changes(long upto, List<ChangedCoupon> changed, List<Long> archived) {
+		if (changed.size() + archived.size() > maxChanges) {
+			return reset(upto);
+		}
+		List<Long> live = new ArrayList<>(changed.size());
+		List<Long> removed = new ArrayList<>(archived);
+		for (ChangedCoupon coupon : changed) {
+			if (coupon.getDeletedMillis() == null) {
+				live.add(coupon.getId());
+			} else {
+				removed.add(coupon.getId());
+			}
+		}
+		List<Coupon> coupons = live.isEmpty() ? Collections.emptyList() : couponRepository.findAllById(live);
+		return new CouponChanges(upto, false, coupons, removed);
+	}
+
+	private static CouponChanges reset(long upto) {
+		return new CouponChanges(upto, true, Collections.emptyList(), Collections.emptyList());
+	}
+}
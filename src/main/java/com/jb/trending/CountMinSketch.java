@@ -0,0 +1,83 @@
+package com.jb.trending;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a thread safe count-min sketch of long keys. estimate never
+ * answers less than the real count of a key, and answers more by at most
+ * e / width of the total count with probability 1 - e^-depth, whatever the
+ * number of different keys
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class CountMinSketch {
+
+	// Fields
+	private final int width;
+	private final int depth;
+	private final AtomicLongArray counters;
+
+	// Constructor
+	CountMinSketch(int width, int depth) {
+		this.width = width;
+		this.depth = depth;
+		this.counters = new AtomicLongArray(width * depth);
+	}
+
+	/**
+	 * This function adds a count to a key
+	 * 
+	 * @param key
+	 * @param count
+	 */
+	void add(long key, long count) {
+		long hash1 = mix(key);
+		long hash2 = mix(hash1);
+		for (int row = 0; row < depth; row++) {
+			counters.addAndGet(index(hash1, hash2, row), count);
+		}
+	}
+
+	/**
+	 * This function returns the estimated count of a key
+	 * 
+	 * @param key
+	 * @return long
+	 */
+	long estimate(long key) {
+		long hash1 = mix(key);
+		long hash2 = mix(hash1);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters.get(index(hash1, hash2, row)));
+		}
+		return estimate;
+	}
+
+	void clear() {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+	}
+
+	long sizeInBytes() {
+		return counters.length() * 8L;
+	}
+
+	// Every row is mixed again, with plain double hashing two keys that collide
+	// in one row would collide in all of them much more often than by chance
+	private int index(long hash1, long hash2, int row) {
+		return row * width + (int) Long.remainderUnsigned(mix(hash1 + row * hash2) >>> 1, width);
+	}
+
+	// Finalizer of murmur3
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash | 1;
+	}
+}
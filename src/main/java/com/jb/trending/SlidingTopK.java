@@ -0,0 +1,125 @@
+package com.jb.trending;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class finds the most frequent keys of a sliding time window in a fixed
+ * amount of memory. The window is a ring of buckets, each one a count-min
+ * sketch of the events of its period, and the oldest bucket is cleared when
+ * the window moves. The candidates for the top are a small set of keys whose
+ * estimate is updated on every event, a new key replaces the smallest candidate
+ * once it has been seen more often
+ * 
+ * @author Solal Arroues
+ *
+ */
+final class SlidingTopK {
+
+	// Fields
+	private final long bucketMillis;
+	private final CountMinSketch[] sketches;
+	private final AtomicLongArray periods;
+	private final int capacity;
+	private final Map<Long, Long> candidates = new HashMap<>();
+
+	// Constructor
+	SlidingTopK(int buckets, long bucketMillis, int width, int depth, int capacity) {
+		this.bucketMillis = bucketMillis;
+		this.sketches = new CountMinSketch[buckets];
+		this.periods = new AtomicLongArray(buckets);
+		for (int i = 0; i < buckets; i++) {
+			sketches[i] = new CountMinSketch(width, depth);
+			periods.set(i, -1);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * This function counts one event of the key
+	 * 
+	 * @param key
+	 * @param nowMillis
+	 */
+	void add(long key, long nowMillis) {
+		long period = nowMillis / bucketMillis;
+		bucket(period).add(key, 1);
+		long estimate = estimate(key, period);
+		synchronized (candidates) {
+			if (candidates.containsKey(key) || candidates.size() < capacity) {
+				candidates.put(key, estimate);
+				return;
+			}
+			Map.Entry<Long, Long> smallest = null;
+			for (Map.Entry<Long, Long> candidate : candidates.entrySet()) {
+				if (smallest == null || candidate.getValue() < smallest.getValue()) {
+					smallest = candidate;
+				}
+			}
+			if (estimate > smallest.getValue()) {
+				candidates.remove(smallest.getKey());
+				candidates.put(key, estimate);
+			}
+		}
+	}
+
+	/**
+	 * This function returns the most frequent keys of the window with their
+	 * estimated count, the most frequent first
+	 * 
+	 * @param limit
+	 * @param nowMillis
+	 * @return a list of {key, count}
+	 */
+	List<long[]> top(int limit, long nowMillis) {
+		long period = nowMillis / bucketMillis;
+		List<Long> keys;
+		synchronized (candidates) {
+			keys = new ArrayList<>(candidates.keySet());
+		}
+		List<long[]> top = new ArrayList<>(keys.size());
+		for (Long key : keys) {
+			top.add(new long[] { key, estimate(key, period) });
+		}
+		synchronized (candidates) {
+			// Refresh the candidates so the ones that left the window can be replaced
+			for (long[] entry : top) {
+				candidates.computeIfPresent(entry[0], (key, old) -> entry[1]);
+			}
+		}
+		top.removeIf(entry -> entry[1] == 0);
+		top.sort((a, b) -> Long.compare(b[1], a[1]));
+		return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+	}
+
+	long sizeInBytes() {
+		return sketches.length * sketches[0].sizeInBytes();
+	}
+
+	private long estimate(long key, long period) {
+		long estimate = 0;
+		for (int i = 0; i < sketches.length; i++) {
+			long bucketPeriod = periods.get(i);
+			if (bucketPeriod > period - sketches.length && bucketPeriod <= period) {
+				estimate += sketches[i].estimate(key);
+			}
+		}
+		return estimate;
+	}
+
+	private CountMinSketch bucket(long period) {
+		int index = (int) (period % sketches.length);
+		if (periods.get(index) != period) {
+			synchronized (sketches[index]) {
+				if (periods.get(index) < period) {
+					sketches[index].clear();
+					periods.set(index, period);
+				}
+			}
+		}
+		return sketches[index];
+	}
+}
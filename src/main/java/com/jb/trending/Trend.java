@@ -0,0 +1,29 @@
+package com.jb.trending;
+
+/**
+ * This class is one line of a trending or top sellers feed, a coupon and its
+ * estimated number of purchases in the window
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class Trend {
+
+	// Fields
+	private long couponId;
+	private long purchases;
+
+	// Constructor
+	public Trend(long couponId, long purchases) {
+		this.couponId = couponId;
+		this.purchases = purchases;
+	}
+
+	public long getCouponId() {
+		return couponId;
+	}
+
+	public long getPurchases() {
+		return purchases;
+	}
+}
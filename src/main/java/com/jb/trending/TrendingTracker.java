@@ -0,0 +1,105 @@
+package com.jb.trending;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.jb.tx.TransactionHooks;
+
+/**
+ * This class follows the purchases as they happen to serve two feeds without
+ * querying customer_coupon : the trending coupons of the last hour and the top
+ * sellers of the last day, both for all the categories and per category. Each
+ * feed is a SlidingTopK per category so the memory does not depend on the size
+ * of the catalogue
+ * 
+ * @author Solal Arroues
+ *
+ */
+@Component
+public class TrendingTracker {
+
+	// Fields
+	private static final int CATEGORIES = 8;
+	private static final int WIDTH = 512;
+	private static final int DEPTH = 4;
+	private static final int CANDIDATES = 32;
+
+	// Index 0 is all the categories
+	private final SlidingTopK[] trending = new SlidingTopK[CATEGORIES + 1];
+	private final SlidingTopK[] topSellers = new SlidingTopK[CATEGORIES + 1];
+
+	// Constructor
+	public TrendingTracker() {
+		for (int category = 0; category <= CATEGORIES; category++) {
+			trending[category] = new SlidingTopK(12, TimeUnit.MINUTES.toMillis(5), WIDTH, DEPTH, CANDIDATES);
+			topSellers[category] = new SlidingTopK(24, TimeUnit.HOURS.toMillis(1), WIDTH, DEPTH, CANDIDATES);
+		}
+	}
+
+	/**
+	 * This function counts a purchase once its transaction is committed, a
+	 * purchase that rolls back is not a sale
+	 * 
+	 * @param couponId
+	 * @param category
+	 */
+	public void purchased(long couponId, int category) {
+		TransactionHooks.afterCommit(() -> count(couponId, category));
+	}
+
+	/**
+	 * This function returns the coupons bought the most in the last hour
+	 * 
+	 * @param category : 0 for all the categories
+	 * @param limit
+	 * @return List<Trend>
+	 */
+	public List<Trend> trending(int category, int limit) {
+		return trends(trending[category], limit);
+	}
+
+	/**
+	 * This function returns the coupons bought the most in the last day
+	 * 
+	 * @param category : 0 for all the categories
+	 * @param limit
+	 * @return List<Trend>
+	 */
+	public List<Trend> topSellers(int category, int limit) {
+		return trends(topSellers[category], limit);
+	}
+
+	/**
+	 * This function returns the number of bytes used by the sketches
+	 * 
+	 * @return long
+	 */
+	public long sizeInBytes() {
+		long size = 0;
+		for (int category = 0; category <= CATEGORIES; category++) {
+			size += trending[category].sizeInBytes() + topSellers[category].sizeInBytes();
+		}
+		return size;
+	}
+
+	private void count(long couponId, int category) {
+		long now = System.currentTimeMillis();
+		trending[0].add(couponId, now);
+		topSellers[0].add(couponId, now);
+		if (category >= 1 && category <= CATEGORIES) {
+			trending[category].add(couponId, now);
+			topSellers[category].add(couponId, now);
+		}
+	}
+
+	private static List<Trend> trends(SlidingTopK topK, int limit) {
+		List<Trend> trends = new ArrayList<>();
+		for (long[] entry : topK.top(limit, System.currentTimeMillis())) {
+			trends.add(new Trend(entry[0], entry[1]));
+		}
+		return trends;
+	}
+}
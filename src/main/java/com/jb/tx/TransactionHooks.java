@@ -0,0 +1,57 @@
+package com.jb.tx;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class runs the side effects of a change, on the caches, the counters,
+ * the journal or the subscribers, at the end of the transaction of the change,
+ * so a transaction that rolls back leaves nothing behind. Outside a
+ * transaction the side effect runs at once
+ * 
+ * @author Solal Arroues
+ *
+ */
+public final class TransactionHooks {
+
+	private TransactionHooks() {
+	}
+
+	/**
+	 * This function runs the change once the current transaction is committed
+	 * 
+	 * @param change
+	 */
+	public static void afterCommit(Runnable change) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					change.run();
+				}
+			});
+		} else {
+			change.run();
+		}
+	}
+
+	/**
+	 * This function runs the action once the current transaction is over,
+	 * committed or rolled back
+	 * 
+	 * @param action
+	 * @return false if there is no transaction, the action is then not run
+	 */
+	public static boolean afterCompletion(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return false;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				action.run();
+			}
+		});
+		return true;
+	}
+}
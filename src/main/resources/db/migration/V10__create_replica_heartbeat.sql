@@ -0,0 +1,10 @@
+-- Replica lag: com.jb.routing.ReplicaRouter writes the time into the single row
+-- on the primary and reads it back from every replica, the difference with the
+-- time of the reading is how far behind the replica is
+CREATE TABLE replica_heartbeat (
+	id INTEGER NOT NULL,
+	beat_millis BIGINT NOT NULL,
+	PRIMARY KEY (id)
+);
+
+INSERT INTO replica_heartbeat (id, beat_millis) VALUES (1, 0);
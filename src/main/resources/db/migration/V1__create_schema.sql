@@ -0,0 +1,39 @@
+-- Tables as they were previously generated by hibernate ddl-auto=update
+CREATE TABLE IF NOT EXISTS company (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	name VARCHAR(255),
+	email VARCHAR(255),
+	password VARCHAR(255),
+	PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS customer (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	first_name VARCHAR(255),
+	last_name VARCHAR(255),
+	email VARCHAR(255),
+	password VARCHAR(255),
+	PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS coupon (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	title VARCHAR(255),
+	start_date DATE,
+	end_date DATE,
+	category INTEGER NOT NULL,
+	amount INTEGER NOT NULL,
+	description VARCHAR(255),
+	price DOUBLE NOT NULL,
+	image VARCHAR(255),
+	company_id BIGINT,
+	PRIMARY KEY (id),
+	CONSTRAINT fk_coupon_company FOREIGN KEY (company_id) REFERENCES company (id)
+);
+
+CREATE TABLE IF NOT EXISTS customer_coupon (
+	customer_id BIGINT NOT NULL,
+	coupon_id BIGINT NOT NULL,
+	CONSTRAINT fk_customer_coupon_customer FOREIGN KEY (customer_id) REFERENCES customer (id),
+	CONSTRAINT fk_customer_coupon_coupon FOREIGN KEY (coupon_id) REFERENCES coupon (id)
+);
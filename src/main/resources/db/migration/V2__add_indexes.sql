@@ -0,0 +1,38 @@
+-- One index per access path of the repositories
+
+-- CompanyRepository.findByEmailAndPassword
+CREATE INDEX idx_company_email ON company (email);
+
+-- CustomerRepository.findByEmailAndPassword
+CREATE INDEX idx_customer_email ON customer (email);
+
+-- CouponRepository.findAllByCompanyId, findByIdAndCompanyId, findAllByCompanyIdAndCategory,
+-- findAllByCompanyIdAndBeforeEndDate and findAllByCompanyIdAndBelowPrice
+CREATE INDEX idx_coupon_company_category ON coupon (company_id, category);
+
+-- CouponRepository.findAllByCategory
+CREATE INDEX idx_coupon_category ON coupon (category);
+
+-- CouponRepository.findAllBeforeEndDate
+CREATE INDEX idx_coupon_end_date ON coupon (end_date);
+
+-- CouponRepository.findAllBelowPrice
+CREATE INDEX idx_coupon_price ON coupon (price);
+
+-- CouponRepository.findAllByCustomerId* go from the customer to its coupons,
+-- the reverse index is used when a coupon is deleted. The purchase check used
+-- to look at the first coupon of the customer only, so a coupon may have been
+-- bought twice: the duplicate rows are removed before the key is added
+CREATE TABLE customer_coupon_distinct (
+	customer_id BIGINT NOT NULL,
+	coupon_id BIGINT NOT NULL
+);
+INSERT INTO customer_coupon_distinct (customer_id, coupon_id)
+	SELECT DISTINCT customer_id, coupon_id FROM customer_coupon;
+DELETE FROM customer_coupon;
+INSERT INTO customer_coupon (customer_id, coupon_id)
+	SELECT customer_id, coupon_id FROM customer_coupon_distinct;
+DROP TABLE customer_coupon_distinct;
+
+ALTER TABLE customer_coupon ADD PRIMARY KEY (customer_id, coupon_id);
+CREATE INDEX idx_customer_coupon_coupon ON customer_coupon (coupon_id);
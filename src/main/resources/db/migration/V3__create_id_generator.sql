@@ -0,0 +1,11 @@
+-- Pooled ids handed out by hibernate so that inserts can be sent in JDBC batches,
+-- which is not possible with AUTO_INCREMENT ids
+CREATE TABLE id_generator (
+	sequence_name VARCHAR(64) NOT NULL,
+	next_val BIGINT,
+	PRIMARY KEY (sequence_name)
+);
+
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'company', COALESCE(MAX(id), 0) + 1 FROM company;
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'customer', COALESCE(MAX(id), 0) + 1 FROM customer;
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'coupon', COALESCE(MAX(id), 0) + 1 FROM coupon;
@@ -0,0 +1,7 @@
+-- The uniqueness of the emails is enforced by the database so that two
+-- concurrent creations with the same email cannot both succeed
+DROP INDEX idx_company_email ON company;
+CREATE UNIQUE INDEX uq_company_email ON company (email);
+
+DROP INDEX idx_customer_email ON customer;
+CREATE UNIQUE INDEX uq_customer_email ON customer (email);
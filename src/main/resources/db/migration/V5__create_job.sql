@@ -0,0 +1,20 @@
+-- Background jobs of the admin, see com.jb.job.JobRunner
+CREATE TABLE job (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	type VARCHAR(32) NOT NULL,
+	status VARCHAR(16) NOT NULL,
+	target_id BIGINT,
+	input_file VARCHAR(1024),
+	content_type VARCHAR(255),
+	progress BIGINT NOT NULL DEFAULT 0,
+	checkpoint BIGINT NOT NULL DEFAULT 0,
+	message VARCHAR(2000),
+	cancel_requested BOOLEAN NOT NULL DEFAULT FALSE,
+	created_millis BIGINT NOT NULL,
+	started_millis BIGINT,
+	finished_millis BIGINT,
+	PRIMARY KEY (id)
+);
+
+-- Unfinished jobs are resumed at startup
+CREATE INDEX idx_job_status ON job (status);
@@ -0,0 +1,27 @@
+-- Expired coupons and their purchases are moved here, see
+-- com.jb.maintenance.CouponSweeper. No foreign keys so that the history
+-- survives the removal of the company or the customer
+CREATE TABLE coupon_archive (
+	id BIGINT NOT NULL,
+	title VARCHAR(255),
+	start_date DATE,
+	end_date DATE,
+	category INTEGER NOT NULL,
+	amount INTEGER NOT NULL,
+	description VARCHAR(255),
+	price DOUBLE NOT NULL,
+	image VARCHAR(255),
+	company_id BIGINT,
+	archived_millis BIGINT NOT NULL,
+	PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_coupon_archive_company ON coupon_archive (company_id);
+
+CREATE TABLE customer_coupon_archive (
+	customer_id BIGINT NOT NULL,
+	coupon_id BIGINT NOT NULL,
+	PRIMARY KEY (customer_id, coupon_id)
+);
+
+CREATE INDEX idx_customer_coupon_archive_coupon ON customer_coupon_archive (coupon_id);
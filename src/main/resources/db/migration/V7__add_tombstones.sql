@@ -0,0 +1,17 @@
+-- Soft delete: a row whose deleted_millis is set is a tombstone, it is hidden
+-- by the @Where filter of the entity and physically removed later by
+-- com.jb.maintenance.TombstonePurger
+ALTER TABLE company ADD COLUMN deleted_millis BIGINT NULL;
+ALTER TABLE customer ADD COLUMN deleted_millis BIGINT NULL;
+ALTER TABLE coupon ADD COLUMN deleted_millis BIGINT NULL;
+
+-- The filter of the coupon queries is checked inside the index
+CREATE INDEX idx_coupon_company_category_deleted ON coupon (company_id, category, deleted_millis);
+DROP INDEX idx_coupon_company_category ON coupon;
+CREATE INDEX idx_coupon_category_deleted ON coupon (category, deleted_millis);
+DROP INDEX idx_coupon_category ON coupon;
+
+-- TombstonePurger finds the tombstones
+CREATE INDEX idx_company_deleted ON company (deleted_millis);
+CREATE INDEX idx_customer_deleted ON customer (deleted_millis);
+CREATE INDEX idx_coupon_deleted ON coupon (deleted_millis);
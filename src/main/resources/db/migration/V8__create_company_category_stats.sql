@@ -0,0 +1,11 @@
+-- Snapshot of the dashboard counters of com.jb.stats.CompanyStats, written
+-- periodically. The values are in cents so that they add up exactly
+CREATE TABLE company_category_stats (
+	company_id BIGINT NOT NULL,
+	category INTEGER NOT NULL,
+	listed BIGINT NOT NULL,
+	units_remaining BIGINT NOT NULL,
+	units_sold BIGINT NOT NULL,
+	gross_cents BIGINT NOT NULL,
+	PRIMARY KEY (company_id, category)
+);
@@ -0,0 +1,12 @@
+-- Delta sync: every change of a coupon or of an ownership takes a new version
+-- from com.jb.sync.ChangeVersions, the clients ask for the changes since the
+-- last version they have seen
+ALTER TABLE coupon ADD COLUMN change_version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE customer_coupon ADD COLUMN change_version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE coupon_archive ADD COLUMN change_version BIGINT NOT NULL DEFAULT 0;
+
+-- CouponRepository.findChangedIds*, one range of the index per delta
+CREATE INDEX idx_coupon_change_version ON coupon (change_version);
+CREATE INDEX idx_coupon_category_change_version ON coupon (category, change_version);
+CREATE INDEX idx_customer_coupon_customer_version ON customer_coupon (customer_id, change_version);
+CREATE INDEX idx_coupon_archive_change_version ON coupon_archive (change_version);
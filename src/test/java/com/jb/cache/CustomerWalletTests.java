@@ -0,0 +1,78 @@
+package com.jb.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.jb.repository.CouponRepository.WalletEntry;
+
+/**
+ * This class checks that a wallet keeps its coupons sorted through the
+ * purchases, changes and removals, and filters them on its columns
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CustomerWalletTests {
+
+	@Test
+	public void walletsAreFilteredOnTheirColumns() {
+		CustomerWallet wallet = CustomerWallet.of(Arrays.asList(entry(3, 1, 10, "2030-01-01"),
+				entry(7, 2, 20, "2030-06-01"), entry(9, 1, 30, "2031-01-01")));
+		long limit = Date.valueOf("2030-06-01").getTime();
+		assertArrayEquals(new long[] { 3, 9 }, wallet.select((category, price, endDate) -> category == 1));
+		assertArrayEquals(new long[] { 3, 7 }, wallet.select((category, price, endDate) -> price <= 20));
+		assertArrayEquals(new long[] { 3, 7 }, wallet.select((category, price, endDate) -> endDate <= limit));
+		assertArrayEquals(new long[0], wallet.select((category, price, endDate) -> category == 8));
+	}
+
+	@Test
+	public void purchasesChangesAndRemovalsMakeNewWallets() {
+		CustomerWallet wallet = CustomerWallet.of(Arrays.asList(entry(3, 1, 10, "2030-01-01"),
+				entry(9, 1, 30, "2031-01-01")));
+		CustomerWallet bought = wallet.with(5, 2, 15, Date.valueOf("2030-03-01").getTime());
+		assertFalse(wallet.contains(5));
+		assertArrayEquals(new long[] { 3, 5, 9 }, bought.select((category, price, endDate) -> true));
+
+		CustomerWallet changed = bought.with(9, 2, 30, Date.valueOf("2031-01-01").getTime());
+		assertArrayEquals(new long[] { 5, 9 }, changed.select((category, price, endDate) -> category == 2));
+		assertArrayEquals(new long[] { 9 }, bought.select((category, price, endDate) -> price >= 30));
+
+		CustomerWallet removed = changed.without(3);
+		assertTrue(removed.contains(5));
+		assertArrayEquals(new long[] { 5, 9 }, removed.select((category, price, endDate) -> true));
+		assertTrue(removed.size() < changed.size());
+		assertSame(removed, removed.without(4));
+	}
+
+	private static WalletEntry entry(long id, int category, double price, String endDate) {
+		return new WalletEntry() {
+
+			@Override
+			public long getId() {
+				return id;
+			}
+
+			@Override
+			public int getCategory() {
+				return category;
+			}
+
+			@Override
+			public double getPrice() {
+				return price;
+			}
+
+			@Override
+			public Date getEndDate() {
+				return Date.valueOf(endDate);
+			}
+		};
+	}
+}
@@ -0,0 +1,51 @@
+package com.jb.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * This class checks that only the most recently used companies and customers
+ * keep a version of their own and that a forgotten version never goes back in
+ * time
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class ScopeVersionsTests {
+
+	@Test
+	public void forgottenCompaniesNeverGoBackInTime() {
+		ScopeVersions versions = new ScopeVersions(10, 2, 2);
+		long started = versions.companyVersion(99);
+
+		versions.couponChanged(1, 10);
+		long first = versions.companyVersion(1);
+		assertTrue(first > started);
+		versions.couponChanged(2, 20);
+		versions.couponChanged(3, 30);
+
+		// Company 1 is forgotten, its version is the newest forgotten one
+		assertEquals(first, versions.companyVersion(1));
+		assertEquals(first, versions.companyVersion(99));
+		assertNotEquals(versions.companyVersion(2), versions.companyVersion(3));
+	}
+
+	@Test
+	public void theLeastRecentlyUsedCustomerIsForgotten() {
+		ScopeVersions versions = new ScopeVersions(10, 2, 2);
+		versions.customerChanged(1);
+		versions.customerChanged(2);
+		long first = versions.customerBaseVersion(1);
+		long second = versions.customerBaseVersion(2);
+		versions.customerBaseVersion(1);
+		versions.customerChanged(3);
+
+		assertEquals(first, versions.customerBaseVersion(1));
+		assertEquals(second, versions.customerBaseVersion(2));
+		assertEquals(second, versions.customerBaseVersion(99));
+		assertTrue(versions.customerBaseVersion(3) > second);
+	}
+}
@@ -0,0 +1,167 @@
+package com.jb.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jb.rest.ex.InvalidPriceException;
+
+/**
+ * This class checks that identical queries running at the same time share one
+ * call, that a request never waits for a call older than the version it has
+ * read, and that a waiting request falls back to its own call after the timeout
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class SingleFlightTests {
+
+	private static final int WAITERS = 8;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+
+	@After
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void identicalQueriesShareOneCall() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(10000);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		List<String> result = new ArrayList<>();
+		SingleFlight.Query<List<String>, InterruptedException> query = () -> {
+			calls.incrementAndGet();
+			running.countDown();
+			release.await();
+			return result;
+		};
+
+		Future<List<String>> leader = executor.submit(() -> singleFlight.run("coupons:category", 3, query::run));
+		running.await();
+		List<Future<List<String>>> waiters = new ArrayList<>();
+		for (int i = 0; i < WAITERS; i++) {
+			waiters.add(executor.submit(() -> singleFlight.run("coupons:category", 3, query::run)));
+		}
+		while (singleFlight.getStatistics().get(0).getCoalesced() < WAITERS) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+
+		assertSame(result, leader.get(5, TimeUnit.SECONDS));
+		for (Future<List<String>> waiter : waiters) {
+			assertSame(result, waiter.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		FlightStatistics statistics = singleFlight.getStatistics().get(0);
+		assertEquals("coupons:category", statistics.getName());
+		assertEquals(1, statistics.getCalls());
+		assertEquals(WAITERS, statistics.getCoalesced());
+
+		singleFlight.run("coupons:category", 3, () -> result);
+		assertEquals(2, singleFlight.getStatistics().get(0).getCalls());
+	}
+
+	@Test
+	public void newerRequestsDoNotJoinAnOlderCall() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(10000);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> old = executor.submit(() -> singleFlight.run("coupons", "", 1, () -> {
+			running.countDown();
+			release.await();
+			return "rows before the commit";
+		}));
+		running.await();
+
+		// A commit has moved the version to 2 while the first call runs
+		CountDownLatch newRunning = new CountDownLatch(1);
+		CountDownLatch newRelease = new CountDownLatch(1);
+		Future<String> fresh = executor.submit(() -> singleFlight.run("coupons", "", 2, () -> {
+			newRunning.countDown();
+			newRelease.await();
+			return "rows after the commit";
+		}));
+		newRunning.await();
+		Future<String> late = executor.submit(() -> singleFlight.run("coupons", "", 1, () -> "own call"));
+		Future<String> waiter = executor.submit(() -> singleFlight.run("coupons", "", 2, () -> "own call"));
+		while (singleFlight.getStatistics().get(0).getCoalesced() < 2) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		assertEquals("rows before the commit", old.get(5, TimeUnit.SECONDS));
+		newRelease.countDown();
+		assertEquals("rows after the commit", fresh.get(5, TimeUnit.SECONDS));
+		assertEquals("rows after the commit", late.get(5, TimeUnit.SECONDS));
+		assertEquals("rows after the commit", waiter.get(5, TimeUnit.SECONDS));
+		assertEquals(2, singleFlight.getStatistics().get(0).getCalls());
+	}
+
+	@Test
+	public void waitersGetTheExceptionOfTheCall() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(10000);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		SingleFlight.Query<List<String>, InvalidPriceException> query = () -> {
+			running.countDown();
+			awaitQuietly(release);
+			throw new InvalidPriceException("Invalid price : 0");
+		};
+
+		Future<?> leader = executor.submit(() -> singleFlight.run("coupons:belowPrice", 0, query));
+		running.await();
+		Future<?> waiter = executor.submit(() -> singleFlight.run("coupons:belowPrice", 0, query));
+		while (singleFlight.getStatistics().get(0).getCoalesced() < 1) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		for (Future<?> future : new Future<?>[] { leader, waiter }) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals(InvalidPriceException.class, e.getCause().getClass());
+			}
+		}
+	}
+
+	@Test
+	public void waitersCallThemselvesAfterTheTimeout() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(20);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> leader = executor.submit(() -> singleFlight.run("coupons", "", () -> {
+			running.countDown();
+			release.await();
+			return "slow";
+		}));
+		running.await();
+		assertEquals("fast", singleFlight.run("coupons", "", () -> "fast"));
+		release.countDown();
+		assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+		assertEquals(1, singleFlight.getStatistics().get(0).getTimeouts());
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
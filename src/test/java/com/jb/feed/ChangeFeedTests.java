@@ -0,0 +1,153 @@
+package com.jb.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.jb.entity.Coupon;
+
+/**
+ * This class checks the buffers of the change feed with a client that does not
+ * read until the test lets it: the changes of one coupon are coalesced, a full
+ * buffer is replaced by a RESYNC and a client stuck in a send is disconnected
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class ChangeFeedTests {
+
+	private ChangeFeed feed;
+
+	@After
+	public void shutdown() {
+		feed.shutdown();
+	}
+
+	@Test
+	public void changesOfTheSameCouponAreCoalesced() throws Exception {
+		feed = new ChangeFeed(4, 60_000, 60_000, 1);
+		StalledClient client = subscribe();
+		feed.couponPurchased(coupon(1, 5));
+		feed.couponPurchased(coupon(1, 4));
+		feed.couponPurchased(coupon(2, 9));
+		feed.couponPurchased(coupon(1, 3));
+		client.resume();
+
+		List<CouponEvent> events = client.await(2);
+		assertEquals(1, events.get(0).getCouponId());
+		assertEquals(3, events.get(0).getAmount());
+		assertEquals(2, events.get(1).getCouponId());
+		FeedStatistics statistics = feed.getStatistics();
+		assertEquals(2, statistics.getCoalesced());
+		assertEquals(2, statistics.getDelivered());
+		assertEquals(0, statistics.getResyncs());
+	}
+
+	@Test
+	public void aFullBufferIsReplacedByAResync() throws Exception {
+		feed = new ChangeFeed(2, 60_000, 60_000, 1);
+		StalledClient client = subscribe();
+		for (long id = 1; id <= 4; id++) {
+			feed.couponPurchased(coupon(id, 1));
+		}
+		client.resume();
+
+		for (int i = 0; i < 100 && feed.getStatistics().getResyncs() == 0; i++) {
+			Thread.sleep(20);
+		}
+		FeedStatistics statistics = feed.getStatistics();
+		assertEquals(1, statistics.getResyncs());
+		assertEquals(4, statistics.getDropped());
+		assertEquals(0, statistics.getDelivered());
+		assertTrue(client.resyncs > 0);
+
+		feed.couponPurchased(coupon(5, 1));
+		assertEquals(5, client.await(1).get(0).getCouponId());
+	}
+
+	@Test
+	public void aClientStuckInASendIsDisconnected() throws Exception {
+		feed = new ChangeFeed(4, 60_000, 50, 1);
+		StalledClient client = subscribe();
+		Thread.sleep(100);
+		feed.heartbeat();
+		FeedStatistics statistics = feed.getStatistics();
+		assertEquals(0, statistics.getSubscribers());
+		assertEquals(1, statistics.getSlowDisconnects());
+		assertTrue(client.failed);
+		client.resume();
+	}
+
+	private StalledClient subscribe() throws InterruptedException {
+		StalledClient client = new StalledClient();
+		feed.subscribe(ChangeFeed.Topic.INVENTORY, 0, 0, client);
+		// The first comment of the subscription is the send the client is stuck in
+		assertTrue(client.sending.await(5, TimeUnit.SECONDS));
+		return client;
+	}
+
+	private static Coupon coupon(long id, int amount) {
+		Coupon coupon = new Coupon("feed", Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 1, amount, "feed",
+				1.0, null);
+		coupon.setId(id);
+		return coupon;
+	}
+
+	/**
+	 * An emitter whose first send blocks until the test resumes it, it keeps the
+	 * events it receives
+	 */
+	private static class StalledClient extends SseEmitter {
+
+		private final CountDownLatch sending = new CountDownLatch(1);
+		private final CountDownLatch resumed = new CountDownLatch(1);
+		private final List<CouponEvent> events = new CopyOnWriteArrayList<>();
+		private volatile int resyncs;
+		private volatile boolean failed;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			sending.countDown();
+			try {
+				resumed.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			for (DataWithMediaType data : builder.build()) {
+				if (data.getData() instanceof CouponEvent) {
+					events.add((CouponEvent) data.getData());
+				} else if (String.valueOf(data.getData()).contains("event:" + ChangeFeed.RESYNC)) {
+					resyncs++;
+				}
+			}
+		}
+
+		@Override
+		public void completeWithError(Throwable ex) {
+			failed = true;
+		}
+
+		private void resume() {
+			resumed.countDown();
+		}
+
+		private List<CouponEvent> await(int count) throws InterruptedException {
+			for (int i = 0; i < 100 && events.size() < count; i++) {
+				Thread.sleep(20);
+			}
+			assertEquals(count, events.size());
+			return events;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.jb.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Base64;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jb.rest.ex.InvalidImageException;
+
+/**
+ * This class checks that the image store names the images by their content,
+ * rejects what is not an image and makes the thumbnails
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class ImageStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageStore store;
+
+	@Before
+	public void open() throws IOException {
+		store = new ImageStore(folder.getRoot().getPath(), 1 << 20, 100_000, 64, 1);
+		store.start();
+	}
+
+	@After
+	public void close() {
+		store.shutdown();
+	}
+
+	@Test
+	public void imagesAreStoredOnceByContent() throws Exception {
+		byte[] png = png(400, 200);
+		String hash = store.store(new ByteArrayInputStream(png));
+		assertEquals(64, hash.length());
+		assertEquals(hash, store.store(new ByteArrayInputStream(png)));
+		assertEquals(hash, store.intern("data:image/png;base64," + Base64.getEncoder().encodeToString(png)));
+		assertEquals("https://images.example.com/a.png", store.intern("https://images.example.com/a.png"));
+
+		StoredImage image = store.find(hash, false);
+		assertEquals("image/png", image.getMediaType());
+		assertEquals("\"" + hash + "\"", image.getEtag());
+		assertEquals(png.length, image.getLength());
+		assertArrayEquals(png, Files.readAllBytes(image.getPath()));
+		assertNull(store.find("0000000000000000000000000000000000000000000000000000000000000000", false));
+		assertNull(store.find("../" + hash, false));
+	}
+
+	@Test(expected = InvalidImageException.class)
+	public void otherFilesAreRejected() throws Exception {
+		store.store(new ByteArrayInputStream("not an image".getBytes()));
+	}
+
+	@Test(expected = InvalidImageException.class)
+	public void imagesWithTooManyPixelsAreRejectedBeforeDecoding() throws Exception {
+		store.store(new ByteArrayInputStream(png(1000, 101)));
+	}
+
+	@Test
+	public void invalidDataUrisAreRejected() throws Exception {
+		String[] images = { "data:image/png;base64,@@@", "data:image/png,raw",
+				"data:image/png;base64," + Base64.getEncoder().encodeToString("not an image".getBytes()),
+				"data:image/png;base64," + Base64.getEncoder().encodeToString(png(1000, 101)) };
+		for (String image : images) {
+			try {
+				store.intern(image);
+				fail(image);
+			} catch (InvalidImageException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void thumbnailsAreMadeInTheBackground() throws Exception {
+		String hash = store.store(new ByteArrayInputStream(png(400, 200)));
+		StoredImage thumbnail = store.find(hash, true);
+		for (int i = 0; i < 100 && !thumbnail.getEtag().endsWith("-thumbnail\""); i++) {
+			Thread.sleep(20);
+			thumbnail = store.find(hash, true);
+		}
+		assertEquals("image/jpeg", thumbnail.getMediaType());
+		BufferedImage image = ImageIO.read(thumbnail.getPath().toFile());
+		assertNotNull(image);
+		assertEquals(64, image.getWidth());
+		assertEquals(32, image.getHeight());
+	}
+
+	private static byte[] png(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, x * y);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
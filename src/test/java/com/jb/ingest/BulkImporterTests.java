@@ -0,0 +1,144 @@
+package com.jb.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.jb.entity.Company;
+import com.jb.repository.CompanyRepository;
+
+/**
+ * This class checks that the bulk importer commits the rows in chunks, reports
+ * the rows it could not read or the database refused with their line and
+ * rejects the emails that already exist in the database or earlier in the
+ * stream, whatever their case
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class BulkImporterTests {
+
+	@Autowired
+	private BulkImporter bulkImporter;
+
+	@Autowired
+	private CompanyRepository companyRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void rowsAreCommittedInChunks() throws Exception {
+		StringBuilder csv = new StringBuilder("firstName,lastName,email,password\n");
+		for (int i = 1; i <= 2500; i++) {
+			csv.append("first,last,chunk").append(i).append("@cu,p\n");
+		}
+		List<Long> insertedAfterEachChunk = new ArrayList<>();
+
+		ImportReport report = bulkImporter.importCustomers(csv(csv.toString()), BulkImporter.CSV, 0,
+				progress -> insertedAfterEachChunk.add(progress.getInserted()));
+
+		assertTrue(report.isFinished());
+		assertEquals(2500, report.getRead());
+		assertEquals(2500, report.getInserted());
+		assertEquals(3, report.getChunks());
+		assertEquals(Arrays.asList(1000L, 2000L, 2500L), insertedAfterEachChunk);
+		assertEquals(Integer.valueOf(2500), jdbcTemplate
+				.queryForObject("SELECT COUNT(*) FROM customer WHERE email LIKE 'chunk%@cu'", Integer.class));
+	}
+
+	@Test
+	public void malformedRowsAreReportedWithTheirLine() throws Exception {
+		Company company = companyRepository.save(new Company("malformed", "malformed@co", "p"));
+		String csv = "title,startDate,endDate,category,amount,description,price\n"
+				+ "good,2020-01-01,2099-01-01,1,5,\"fine, really\",9.9\n"
+				+ "bad date,soon,2099-01-01,1,5,d,9.9\n"
+				+ "bad category,2020-01-01,2099-01-01,9,5,d,9.9\n"
+				+ "bad price,2020-01-01,2099-01-01,1,5,d,0\n"
+				+ "no amount,2020-01-01,2099-01-01,1\n";
+
+		ImportReport report = bulkImporter.importCoupons(company.getId(), csv(csv), BulkImporter.CSV, 0, null);
+
+		assertEquals(5, report.getRead());
+		assertEquals(1, report.getInserted());
+		assertEquals(4, report.getRejected());
+		List<String> errors = report.getErrors();
+		assertEquals(4, errors.size());
+		assertTrue(errors.get(0), errors.get(0).startsWith("Row 2 : Invalid row"));
+		assertTrue(errors.get(1), errors.get(1).startsWith("Row 5 : Invalid row"));
+		assertEquals("Row 3 : This category : 9, is not exists", errors.get(2));
+		assertEquals("Row 4 : Invalid price : 0.0", errors.get(3));
+		assertEquals("fine, really", jdbcTemplate.queryForObject(
+				"SELECT description FROM coupon WHERE company_id = ?", String.class, company.getId()));
+	}
+
+	@Test
+	public void emailsAlreadyInTheDatabaseOrTheStreamAreRejected() throws Exception {
+		companyRepository.save(new Company("existing", "existing@dup", "p"));
+		String csv = "name,email,password\n" + "a,existing@dup,p\n" + "b,first@dup,p\n" + "c,first@dup,p\n"
+				+ "d,second@dup,p\n";
+
+		ImportReport report = bulkImporter.importCompanies(csv(csv), BulkImporter.CSV, 0, null);
+
+		assertEquals(4, report.getRead());
+		assertEquals(2, report.getInserted());
+		assertEquals(2, report.getRejected());
+		assertEquals(Arrays.asList("Row 1 : This email : existing@dup , is already exists",
+				"Row 3 : This email : first@dup , is already exists"), report.getErrors());
+		assertEquals(Integer.valueOf(3),
+				jdbcTemplate.queryForObject("SELECT COUNT(*) FROM company WHERE email LIKE '%@dup'", Integer.class));
+	}
+
+	@Test
+	public void anEmailThatDiffersOnlyInCaseIsADuplicate() throws Exception {
+		String csv = "firstName,lastName,email,password\n" + "a,a,Case@Dup,p\n" + "b,b,case@dup,p\n"
+				+ "c,c,CASE@DUP,p\n";
+
+		ImportReport report = bulkImporter.importCustomers(csv(csv), BulkImporter.CSV, 0, null);
+
+		assertEquals(1, report.getInserted());
+		assertEquals(Arrays.asList("Row 2 : This email : case@dup , is already exists",
+				"Row 3 : This email : CASE@DUP , is already exists"), report.getErrors());
+		assertEquals(Integer.valueOf(1), jdbcTemplate
+				.queryForObject("SELECT COUNT(*) FROM customer WHERE LOWER(email) = 'case@dup'", Integer.class));
+	}
+
+	@Test
+	public void aRowTheDatabaseRejectsIsReportedAndTheRestOfTheChunkIsKept() throws Exception {
+		StringBuilder tooLong = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			tooLong.append('x');
+		}
+		String csv = "name,email,password\n" + "a,kept1@violation,p\n" + "b," + tooLong + "@violation,p\n"
+				+ "c,kept2@violation,p\n";
+
+		ImportReport report = bulkImporter.importCompanies(csv(csv), BulkImporter.CSV, 0, null);
+
+		assertTrue(report.isFinished());
+		assertEquals(2, report.getInserted());
+		assertEquals(1, report.getRejected());
+		String error = report.getErrors().get(0);
+		assertTrue(error, error.startsWith("Row 2 : Rejected by the database"));
+		assertEquals(Integer.valueOf(2), jdbcTemplate
+				.queryForObject("SELECT COUNT(*) FROM company WHERE email LIKE 'kept%@violation'", Integer.class));
+	}
+
+	private static InputStream csv(String csv) {
+		return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,57 @@
+package com.jb.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+/**
+ * This class checks that the CSV reader maps the rows on the header, keeps the
+ * commas, the double quotes and the line breaks of the quoted values and skips
+ * the blank lines
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CsvReaderTests {
+
+	@Test
+	public void quotedValuesKeepTheirCommasQuotesAndLineBreaks() {
+		CsvReader reader = new CsvReader(new StringReader("name,email,password\n"
+				+ "\"Acme, Inc.\",acme@co,\"say \"\"hi\"\"\"\n" + "\"two\nlines\" , lines@co ,p\n"));
+
+		Map<String, String> row = reader.next();
+		assertEquals("Acme, Inc.", row.get("name"));
+		assertEquals("acme@co", row.get("email"));
+		assertEquals("say \"hi\"", row.get("password"));
+
+		row = reader.next();
+		assertEquals("two\nlines", row.get("name"));
+		assertEquals("lines@co", row.get("email"));
+		assertEquals("p", row.get("password"));
+		assertFalse(reader.hasNext());
+	}
+
+	@Test
+	public void blankLinesAreSkippedAndShortRowsLeaveTheirColumnsOut() {
+		CsvReader reader = new CsvReader(new StringReader("name,email,password\n\n  \nshort,short@co\n\n"));
+
+		Map<String, String> row = reader.next();
+		assertEquals("short", row.get("name"));
+		assertEquals("short@co", row.get("email"));
+		assertNull(row.get("password"));
+		assertFalse(reader.hasNext());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void anEmptyStreamHasNoRows() {
+		CsvReader reader = new CsvReader(new StringReader(""));
+		assertFalse(reader.hasNext());
+		reader.next();
+	}
+}
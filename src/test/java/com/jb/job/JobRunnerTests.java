@@ -0,0 +1,153 @@
+package com.jb.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.jb.entity.Job;
+import com.jb.repository.JobRepository;
+
+/**
+ * This class checks that the jobs run to the end, that the unfinished jobs are
+ * resumed from their last checkpoint and that a job stopped by a shutdown is
+ * run again by the next runner. The runners are built by the test around a
+ * handler that counts to ten, so the job table is the only thing shared with
+ * the application
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class JobRunnerTests {
+
+	private static final int STEPS = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Autowired
+	private JobRepository jobRepository;
+
+	@Test
+	public void aJobRunsToTheEndAndItsInputIsDeleted() throws Exception {
+		JobRunner runner = runner(new Counter(null));
+		try {
+			Job job = runner.submit(Job.Type.IMPORT_COMPANIES, new ByteArrayInputStream("name\n".getBytes()),
+					"text/csv");
+			assertTrue(job.getInputFile().startsWith(folder.getRoot().getPath()));
+			job = await(job.getId(), Job.Status.COMPLETED);
+			assertEquals(STEPS, job.getProgress());
+			assertEquals("counted from 0", job.getMessage());
+			assertFalse(Files.exists(Paths.get(job.getInputFile())));
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void unfinishedJobsResumeFromTheirCheckpoint() throws Exception {
+		Job job = jobRepository.save(new Job(Job.Type.IMPORT_COMPANIES, null, null, null));
+		jobRepository.markStarted(job.getId(), Job.Status.RUNNING, System.currentTimeMillis());
+		jobRepository.updateProgress(job.getId(), 4, 4);
+
+		JobRunner runner = runner(new Counter(null));
+		try {
+			runner.resume();
+			job = await(job.getId(), Job.Status.COMPLETED);
+			assertEquals(STEPS, job.getProgress());
+			assertEquals("counted from 4", job.getMessage());
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void aJobStoppedByAShutdownIsRunAgainAfterARestart() throws Exception {
+		CountDownLatch halfway = new CountDownLatch(1);
+		JobRunner stopped = runner(new Counter(halfway));
+		Job job = stopped.submit(Job.Type.IMPORT_COMPANIES, null);
+		assertTrue(halfway.await(10, TimeUnit.SECONDS));
+		stopped.shutdown();
+		job = jobRepository.findById(job.getId()).get();
+		for (int i = 0; i < 200 && job.getCheckpoint() == STEPS / 2; i++) {
+			Thread.sleep(20);
+			job = jobRepository.findById(job.getId()).get();
+		}
+		// The checkpoint that saw the shutdown is saved before the job stops
+		assertEquals(Job.Status.RUNNING, job.getStatus());
+		assertEquals(STEPS / 2 + 1, job.getCheckpoint());
+
+		JobRunner restarted = runner(new Counter(null));
+		try {
+			restarted.resume();
+			job = await(job.getId(), Job.Status.COMPLETED);
+			assertEquals("counted from " + (STEPS / 2 + 1), job.getMessage());
+		} finally {
+			restarted.shutdown();
+		}
+	}
+
+	private JobRunner runner(JobHandler handler) {
+		return new JobRunner(jobRepository, Collections.singletonList(handler), folder.getRoot().getPath());
+	}
+
+	private Job await(long id, Job.Status status) throws InterruptedException {
+		Job job = jobRepository.findById(id).get();
+		for (int i = 0; i < 200 && job.getStatus() != status; i++) {
+			Thread.sleep(20);
+			job = jobRepository.findById(id).get();
+		}
+		assertEquals(job.getMessage(), status, job.getStatus());
+		return job;
+	}
+
+	/**
+	 * Counts from the checkpoint of the job to ten, a checkpoint at every step.
+	 * With a latch it stops halfway and waits until it is interrupted
+	 */
+	private static class Counter implements JobHandler {
+
+		private final CountDownLatch halfway;
+
+		private Counter(CountDownLatch halfway) {
+			this.halfway = halfway;
+		}
+
+		@Override
+		public Job.Type getType() {
+			return Job.Type.IMPORT_COMPANIES;
+		}
+
+		@Override
+		public String run(Job job, JobContext context) throws Exception {
+			for (long step = job.getCheckpoint() + 1; step <= STEPS; step++) {
+				context.checkpoint(step, step);
+				if (halfway != null && step == STEPS / 2) {
+					halfway.countDown();
+					try {
+						Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+					} catch (InterruptedException e) {
+						// The shutdown, the next checkpoint stops the job
+					}
+				}
+			}
+			return "counted from " + job.getCheckpoint();
+		}
+	}
+}
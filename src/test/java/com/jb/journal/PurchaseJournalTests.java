@@ -0,0 +1,120 @@
+package com.jb.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class checks that the purchase journal keeps its records across segment
+ * rotations and restarts, and only the records of committed transactions
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class PurchaseJournalTests {
+
+	private static final int SEGMENT_BYTES = 10 * PurchaseJournal.RECORD_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recordsAreReplayedInOrderAcrossSegmentsAndRestarts() throws IOException {
+		File directory = folder.getRoot();
+		PurchaseJournal journal = open(directory);
+		for (int i = 0; i < 25; i++) {
+			journal.purchase(i, 1000 + i);
+		}
+		journal.shutdown();
+		assertEquals(3, directory.listFiles().length);
+
+		journal = open(directory);
+		assertEquals(25, journal.getWrittenSequence());
+		journal.inventoryChanged(2000, 7);
+		journal.shutdown();
+
+		journal = open(directory);
+		List<JournalRecord> records = new ArrayList<>();
+		assertEquals(26, journal.replay(0, records::add));
+		journal.shutdown();
+		for (int i = 0; i < 25; i++) {
+			JournalRecord record = records.get(i);
+			assertEquals(i, record.getSequence());
+			assertEquals(JournalRecord.Type.PURCHASE, record.getType());
+			assertEquals(i, record.getCustomerId());
+			assertEquals(1000 + i, record.getCouponId());
+			assertEquals(-1, record.getAmountDelta());
+		}
+		JournalRecord last = records.get(25);
+		assertEquals(25, last.getSequence());
+		assertEquals(JournalRecord.Type.INVENTORY, last.getType());
+		assertEquals(2000, last.getCouponId());
+		assertEquals(7, last.getAmountDelta());
+	}
+
+	@Test
+	public void replayStartsAtTheSequenceAndStopsWhenTheVisitorDoes() throws IOException {
+		PurchaseJournal journal = open(folder.getRoot());
+		for (int i = 0; i < 25; i++) {
+			journal.inventoryChanged(i, i);
+		}
+		journal.shutdown();
+		journal = open(folder.getRoot());
+		List<JournalRecord> records = new ArrayList<>();
+		assertEquals(5, journal.replay(12, record -> records.add(record) && records.size() < 5));
+		journal.shutdown();
+		assertEquals(12, records.get(0).getSequence());
+		assertEquals(16, records.get(4).getCouponId());
+	}
+
+	@Test
+	public void recordsOfARolledBackTransactionAreNotWritten() throws IOException {
+		PurchaseJournal journal = open(folder.getRoot());
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			journal.purchase(1, 1001);
+			journal.inventoryChanged(1001, 5);
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+					.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			journal.purchase(2, 1002);
+			assertEquals(0, journal.getWrittenSequence());
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+					.getSynchronizations()) {
+				synchronization.afterCommit();
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		journal.shutdown();
+
+		journal = open(folder.getRoot());
+		List<JournalRecord> records = new ArrayList<>();
+		assertEquals(1, journal.replay(0, records::add));
+		journal.shutdown();
+		assertEquals(2, records.get(0).getCustomerId());
+		assertEquals(0, journal.getDroppedRecords());
+	}
+
+	private static PurchaseJournal open(File directory) throws IOException {
+		PurchaseJournal journal = new PurchaseJournal(directory.getPath(), SEGMENT_BYTES, 5);
+		journal.start();
+		return journal;
+	}
+}
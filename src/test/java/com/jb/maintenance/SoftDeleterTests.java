@@ -0,0 +1,77 @@
+package com.jb.maintenance;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.search.CouponSearchIndex;
+import com.jb.stock.StockCounters;
+
+/**
+ * This class checks that the soft delete of a company stamps all its coupons
+ * and takes them out of the search index and the stock counters
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class SoftDeleterTests {
+
+	@Autowired
+	private SoftDeleter softDeleter;
+
+	@Autowired
+	private CompanyRepository companyRepository;
+
+	@Autowired
+	private CouponRepository couponRepository;
+
+	@Autowired
+	private CouponSearchIndex couponSearchIndex;
+
+	@Autowired
+	private StockCounters stockCounters;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void aDeletedCompanyTakesItsCouponsAlong() throws Exception {
+		Company company = companyRepository.save(new Company("tombstoned", "tombstoned@co", "p"));
+		long[] ids = new long[3];
+		for (int i = 0; i < ids.length; i++) {
+			Coupon coupon = new Coupon("zeppelin " + i, Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 2,
+					5, "zeppelin", 9.9, null);
+			coupon.setCompany(company);
+			coupon = couponRepository.save(coupon);
+			couponSearchIndex.index(coupon);
+			stockCounters.amountChanged(coupon.getId(), 5);
+			ids[i] = coupon.getId();
+		}
+		assertEquals(3, couponSearchIndex.search("zeppelin", 0, 10).size());
+
+		softDeleter.deleteCompany(company.getId());
+
+		assertEquals(Integer.valueOf(3), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM coupon WHERE company_id = ? AND deleted_millis IS NOT NULL", Integer.class,
+				company.getId()));
+		assertFalse(companyRepository.findById(company.getId()).isPresent());
+		assertTrue(couponSearchIndex.search("zeppelin", 0, 10).isEmpty());
+		assertArrayEquals(new int[] { -1, -1, -1 }, stockCounters.get(ids).getRemaining());
+	}
+}
@@ -0,0 +1,79 @@
+package com.jb.maintenance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.jb.cache.ScopeVersions;
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+import com.jb.repository.CompanyRepository;
+import com.jb.repository.CouponRepository;
+import com.jb.repository.CustomerRepository;
+
+/**
+ * This class checks that the purge of a soft deleted company removes its rows
+ * without moving the versions forward again, the soft delete already did
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TombstonePurgerTests {
+
+	@Autowired
+	private SoftDeleter softDeleter;
+
+	@Autowired
+	private BulkDeleter bulkDeleter;
+
+	@Autowired
+	private CompanyRepository companyRepository;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+
+	@Autowired
+	private CouponRepository couponRepository;
+
+	@Autowired
+	private ScopeVersions scopeVersions;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void purgedCompaniesLeaveTheVersionsAlone() throws Exception {
+		Company company = companyRepository.save(new Company("purged", "purged@co", "p"));
+		Coupon coupon = new Coupon("purged", Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 2, 5, "purged",
+				9.9, null);
+		coupon.setCompany(company);
+		couponRepository.save(coupon);
+		softDeleter.deleteCompany(company.getId());
+		long version = scopeVersions.catalogVersion();
+
+		// A negative retention purges the tombstones written just now
+		TombstonePurger purger = new TombstonePurger(true, 1000, 0, -60_000, companyRepository, customerRepository,
+				couponRepository, bulkDeleter, transactionManager);
+		assertTrue(purger.purge() >= 2);
+
+		assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM company WHERE id = ?", Integer.class, company.getId()));
+		assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM coupon WHERE company_id = ?", Integer.class, company.getId()));
+		assertEquals(version, scopeVersions.catalogVersion());
+	}
+}
@@ -0,0 +1,187 @@
+package com.jb.repository;
+
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * This class calls every query of the repositories against the schema created
+ * by the migrations, captures the SQL that hibernate sends with a statement
+ * inspector and fails if the EXPLAIN of one of the statements scans a whole
+ * table. The caches are emptied first so every call reaches the database
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.jb.repository.RepositoryQueryPlanTests$CapturedSql")
+public class RepositoryQueryPlanTests {
+
+	private static final Date DATE = Date.valueOf("2020-01-01");
+
+	@Autowired
+	private CompanyRepository companyRepository;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+
+	@Autowired
+	private CouponRepository couponRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void emptyCaches() {
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+	}
+
+	@Test
+	public void companyFindByEmailAndPassword() {
+		assertNoTableScan(() -> companyRepository.findByEmailAndPassword("a@b.c", "p"));
+	}
+
+	@Test
+	public void customerFindByEmailAndPassword() {
+		assertNoTableScan(() -> customerRepository.findByEmailAndPassword("a@b.c", "p"));
+	}
+
+	@Test
+	public void findAllByCompanyId() {
+		assertNoTableScan(() -> couponRepository.findAllByCompanyId(1));
+	}
+
+	@Test
+	public void findByIdAndCompanyId() {
+		assertNoTableScan(() -> couponRepository.findByIdAndCompanyId(1, 1));
+	}
+
+	@Test
+	public void findAllByCategory() {
+		assertNoTableScan(() -> couponRepository.findAllByCategory(1));
+	}
+
+	@Test
+	public void findAllByCompanyIdAndCategory() {
+		assertNoTableScan(() -> couponRepository.findAllByCompanyIdAndCategory(1, 1));
+	}
+
+	@Test
+	public void findAllByCustomerId() {
+		assertNoTableScan(() -> couponRepository.findAllByCustomerId(1));
+	}
+
+	@Test
+	public void findAllByCustomerIdAndCategory() {
+		assertNoTableScan(() -> couponRepository.findAllByCustomerIdAndCategory(1, 1));
+	}
+
+	@Test
+	public void findAllBeforeEndDate() {
+		assertNoTableScan(() -> couponRepository.findAllBeforeEndDate(DATE));
+	}
+
+	@Test
+	public void findAllByCompanyIdAndBeforeEndDate() {
+		assertNoTableScan(() -> couponRepository.findAllByCompanyIdAndBeforeEndDate(1, DATE));
+	}
+
+	@Test
+	public void findAllByCustomerIdAndBeforeEndDate() {
+		assertNoTableScan(() -> couponRepository.findAllByCustomerIdAndBeforeEndDate(1, DATE));
+	}
+
+	@Test
+	public void findAllBelowPrice() {
+		assertNoTableScan(() -> couponRepository.findAllBelowPrice(10));
+	}
+
+	@Test
+	public void findAllByCompanyIdAndBelowPrice() {
+		assertNoTableScan(() -> couponRepository.findAllByCompanyIdAndBelowPrice(1, 10));
+	}
+
+	@Test
+	public void findAllByCustomerIdAndBelowPrice() {
+		assertNoTableScan(() -> couponRepository.findAllByCustomerIdAndBelowPrice(1, 10));
+	}
+
+	@Test
+	public void findCategoriesByCompanyId() {
+		assertNoTableScan(() -> couponRepository.findCategoriesByCompanyId(1, 0, PageRequest.of(0, 1000)));
+	}
+
+	@Test
+	public void findExpiredKeys() {
+		assertNoTableScan(() -> couponRepository.findExpiredKeys(DATE, Date.valueOf("2019-01-01"), 1,
+				PageRequest.of(0, 500)));
+	}
+
+	@Test
+	public void findDeletedIds() {
+		assertNoTableScan(() -> couponRepository.findDeletedIds(1, 1000));
+		assertNoTableScan(() -> companyRepository.findDeletedIds(1, 1000));
+		assertNoTableScan(() -> customerRepository.findDeletedIds(1, 1000));
+	}
+
+	@Test
+	public void findChangedIds() {
+		assertNoTableScan(() -> couponRepository.findChangedIds(1, 2, 1001));
+		assertNoTableScan(() -> couponRepository.findChangedIdsByCategory(1, 1, 2, 1001));
+		assertNoTableScan(() -> couponRepository.findArchivedIds(1, 1, 2, 1001));
+	}
+
+	@Test
+	public void findChangedIdsByCustomerId() {
+		assertNoTableScan(() -> couponRepository.findChangedIdsByCustomerId(1, 1, 2, 1001));
+		assertNoTableScan(() -> couponRepository.findArchivedIdsByCustomerId(1, 1, 2, 1001));
+	}
+
+	/**
+	 * Runs the query and explains every statement it sent
+	 */
+	private void assertNoTableScan(Runnable query) {
+		CapturedSql.STATEMENTS.clear();
+		query.run();
+		List<String> statements = new ArrayList<>(CapturedSql.STATEMENTS);
+		assertFalse("No statement was sent", statements.isEmpty());
+		for (String sql : statements) {
+			String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+			assertFalse(plan, plan.contains("tableScan"));
+		}
+	}
+
+	/**
+	 * Keeps the SQL of every statement hibernate prepares
+	 */
+	public static class CapturedSql implements StatementInspector {
+
+		private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			STATEMENTS.add(sql);
+			return sql;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.jb.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jb.cache.ResponseCache;
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+
+/**
+ * This class checks that the endpoints read and write Smile and CBOR as well as
+ * JSON, and that the binary formats are smaller for a list of coupons
+ *
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ContentNegotiationTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private MappingJackson2SmileHttpMessageConverter smileConverter;
+
+	@Autowired
+	private MappingJackson2CborHttpMessageConverter cborConverter;
+
+	@Test
+	public void couponsAreReadAndWrittenInTheRequestedFormat() throws Exception {
+		ObjectMapper smile = smileConverter.getObjectMapper();
+		ObjectMapper cbor = cborConverter.getObjectMapper();
+		String admin = login("admin", "1234", "ADMIN");
+		mvc.perform(post("/api/admin/companies/" + admin).contentType(ResponseCache.SMILE)
+				.content(smile.writeValueAsBytes(new Company("negotiation", "negotiation@co", "p"))));
+		String company = login("negotiation@co", "p", "COMPANY");
+
+		MvcResult created = mvc.perform(post("/api/companies/coupons/" + company).contentType(ResponseCache.SMILE)
+				.accept(ResponseCache.CBOR).content(smile.writeValueAsBytes(coupon("negotiated")))).andReturn();
+		assertEquals(200, created.getResponse().getStatus());
+		assertTrue(ResponseCache.CBOR.isCompatibleWith(MediaType.parseMediaType(created.getResponse().getContentType())));
+		assertEquals("negotiated", cbor.readTree(created.getResponse().getContentAsByteArray()).get("title").asText());
+
+		MvcResult listed = mvc.perform(get("/api/companies/allCoupons/" + company)
+				.header(HttpHeaders.ACCEPT, "application/x-jackson-smile, application/json;q=0.5")).andReturn();
+		assertEquals(ResponseCache.SMILE.toString(), listed.getResponse().getContentType());
+		JsonNode coupons = smile.readTree(listed.getResponse().getContentAsByteArray());
+		assertEquals("negotiated", coupons.get(0).get("title").asText());
+		assertEquals("2020-01-01", coupons.get(0).get("startDate").asText());
+
+		listed = mvc.perform(get("/api/companies/allCoupons/" + company)).andReturn();
+		assertEquals(coupons, objectMapper.readTree(listed.getResponse().getContentAsByteArray()));
+	}
+
+	@Test
+	public void binaryFormatsAreSmallerThanJson() throws Exception {
+		List<Coupon> coupons = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			coupons.add(coupon("coupon " + i));
+		}
+		int json = objectMapper.writeValueAsBytes(coupons).length;
+		assertTrue(smileConverter.getObjectMapper().writeValueAsBytes(coupons).length < json);
+		assertTrue(cborConverter.getObjectMapper().writeValueAsBytes(coupons).length < json);
+	}
+
+	private String login(String email, String password, String loginType) throws Exception {
+		return mvc.perform(post("/api/login").param("email", email).param("password", password).param("loginType",
+				loginType)).andReturn().getResponse().getContentAsString();
+	}
+
+	private static Coupon coupon(String title) {
+		return new Coupon(title, Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 3, 10,
+				"A long description of the coupon, repeated in every element of the list", 9.9,
+				"https://images.example.com/coupons/" + title.replace(' ', '-') + ".png");
+	}
+}
@@ -0,0 +1,83 @@
+package com.jb.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.sql.Date;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+
+/**
+ * This class checks that a company can only modify its own coupons, with a PUT
+ * as well as with a PATCH
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class CouponOwnershipTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	public void aCompanyCannotModifyTheCouponOfAnother() throws Exception {
+		String admin = login("admin", "1234", "ADMIN");
+		for (String name : new String[] { "owner", "intruder" }) {
+			mvc.perform(post("/api/admin/companies/" + admin).contentType(MediaType.APPLICATION_JSON)
+					.content(objectMapper.writeValueAsBytes(new Company(name, name + "@ownership", "p"))));
+		}
+		String owner = login("owner@ownership", "p", "COMPANY");
+		MvcResult created = mvc.perform(post("/api/companies/coupons/" + owner)
+				.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(new Coupon("owned",
+						Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 3, 10, "owned", 9.9, null))))
+				.andReturn();
+		ObjectNode coupon = (ObjectNode) objectMapper.readTree(created.getResponse().getContentAsString());
+		long id = coupon.get("id").asLong();
+
+		String intruder = login("intruder@ownership", "p", "COMPANY");
+		coupon.put("title", "taken");
+		coupon.put("amount", 0);
+		assertEquals(400, mvc.perform(put("/api/companies/coupons/" + intruder)
+				.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(coupon))).andReturn()
+				.getResponse().getStatus());
+		assertEquals(400, mvc.perform(put("/api/companies/coupons/" + intruder)
+				.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(coupon.put("id", 0))))
+				.andReturn().getResponse().getStatus());
+		assertEquals(400, mvc.perform(patch("/api/companies/coupons/" + intruder).param("id", String.valueOf(id))
+				.contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"taken\"}")).andReturn().getResponse()
+				.getStatus());
+
+		owner = login("owner@ownership", "p", "COMPANY");
+		String read = mvc.perform(get("/api/companies/coupons/" + owner).param("id", String.valueOf(id)))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals("owned", objectMapper.readTree(read).get("title").asText());
+		assertEquals(10, objectMapper.readTree(read).get("amount").asInt());
+	}
+
+	private String login(String email, String password, String loginType) throws Exception {
+		return mvc.perform(post("/api/login").param("email", email).param("password", password).param("loginType",
+				loginType)).andReturn().getResponse().getContentAsString();
+	}
+}
@@ -0,0 +1,84 @@
+package com.jb.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.sql.Date;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jb.entity.Company;
+import com.jb.entity.Coupon;
+import com.jb.entity.Customer;
+
+/**
+ * This class checks that a customer cannot buy a coupon twice, whatever the
+ * place of the coupon in its wallet
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class CouponPurchaseTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void aCouponIsBoughtOnlyOnce() throws Exception {
+		String admin = login("admin", "1234", "ADMIN");
+		mvc.perform(post("/api/admin/companies/" + admin).contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsBytes(new Company("seller", "seller@purchase", "p"))));
+		mvc.perform(post("/api/admin/customers/" + admin).contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsBytes(new Customer("buyer", "buyer", "buyer@purchase", "p"))));
+
+		String seller = login("seller@purchase", "p", "COMPANY");
+		long[] ids = new long[2];
+		for (int i = 0; i < ids.length; i++) {
+			String created = mvc.perform(post("/api/companies/coupons/" + seller)
+					.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(new Coupon(
+							"bought " + i, Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), 3, 10, "bought",
+							9.9, null))))
+					.andReturn().getResponse().getContentAsString();
+			ids[i] = objectMapper.readTree(created).get("id").asLong();
+		}
+
+		String buyer = login("buyer@purchase", "p", "CUSTOMER");
+		assertEquals(200, purchase(buyer, ids[0]));
+		assertEquals(200, purchase(buyer, ids[1]));
+		// The second coupon of the wallet, the first one was the only one checked
+		assertEquals(400, purchase(buyer, ids[1]));
+		assertEquals(400, purchase(buyer, ids[0]));
+		assertEquals(Integer.valueOf(1), jdbcTemplate
+				.queryForObject("SELECT COUNT(*) FROM customer_coupon WHERE coupon_id = ?", Integer.class, ids[1]));
+		assertEquals(Integer.valueOf(9),
+				jdbcTemplate.queryForObject("SELECT amount FROM coupon WHERE id = ?", Integer.class, ids[1]));
+	}
+
+	private int purchase(String token, long couponId) throws Exception {
+		return mvc.perform(post("/api/customers/coupons/" + token).param("id", String.valueOf(couponId))).andReturn()
+				.getResponse().getStatus();
+	}
+
+	private String login(String email, String password, String loginType) throws Exception {
+		return mvc.perform(post("/api/login").param("email", email).param("password", password).param("loginType",
+				loginType)).andReturn().getResponse().getContentAsString();
+	}
+}
@@ -0,0 +1,58 @@
+package com.jb.routing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import org.flywaydb.core.Flyway;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+
+/**
+ * This class checks that with read replicas the pool of the primary keeps the
+ * spring.datasource.hikari settings and the pools of the replicas take the
+ * cs.replicas.hikari settings. The settings are read back from the beans that
+ * Hikari registers with JMX
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "cs.replicas.urls=" + ReplicaPoolTests.REPLICA,
+		"cs.replicas.heartbeat-millis=3600000", "spring.datasource.name=pool-tests-primary",
+		"spring.datasource.hikari.register-mbeans=true", "spring.datasource.hikari.maximum-pool-size=7",
+		"cs.replicas.hikari.register-mbeans=true", "cs.replicas.hikari.maximum-pool-size=3" })
+public class ReplicaPoolTests {
+
+	static final String REPLICA = "jdbc:h2:mem:cs-replica-pool;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	private ReplicaRouter router;
+
+	@BeforeClass
+	public static void createReplica() {
+		Flyway.configure().dataSource(REPLICA, "sa", "").load().migrate();
+	}
+
+	@Test
+	public void eachPoolKeepsItsOwnSettings() throws Exception {
+		// The pool of the replica starts with its first connection
+		router.heartbeat();
+		assertEquals(7, pool("pool-tests-primary").getMaximumPoolSize());
+		assertEquals(3, pool("replica-1").getMaximumPoolSize());
+	}
+
+	private static HikariConfigMXBean pool(String name) throws Exception {
+		return JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+				new ObjectName("com.zaxxer.hikari:type=PoolConfig (" + name + ")"), HikariConfigMXBean.class);
+	}
+}
@@ -0,0 +1,110 @@
+package com.jb.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import org.flywaydb.core.Flyway;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jb.entity.Company;
+
+/**
+ * This class checks the routing of the replica reads with a second embedded
+ * database as the replica. The replication is played by the test, which writes
+ * the heartbeat of the replica itself, and a company that only the replica has
+ * tells which database answered
+ * 
+ * @author Solal Arroues
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "cs.replicas.urls=" + ReplicaRoutingTests.REPLICA,
+		"cs.replicas.heartbeat-millis=3600000" })
+@AutoConfigureMockMvc
+public class ReplicaRoutingTests {
+
+	static final String REPLICA = "jdbc:h2:mem:cs-replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	private static JdbcTemplate replica;
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ReplicaRouter router;
+
+	@BeforeClass
+	public static void createReplica() {
+		Flyway.configure().dataSource(REPLICA, "sa", "").load().migrate();
+		replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA, "sa", ""));
+		replica.update("INSERT INTO company (id, name, email, password) VALUES (900001, 'replica only', 'r@co', 'p')");
+	}
+
+	@Test
+	public void readsGoToAFreshReplicaUnlessTheSessionHasWritten() throws Exception {
+		String reader = login();
+		String writer = login();
+
+		// No heartbeat yet, the lag of the replica is unknown
+		assertFalse(readsReplica(reader));
+
+		replicate(System.currentTimeMillis());
+		assertTrue(readsReplica(reader));
+
+		mvc.perform(post("/api/admin/companies/" + writer).contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsBytes(new Company("routing", "routing@co", "p"))));
+		assertFalse(readsReplica(writer));
+		assertTrue(readsReplica(reader));
+
+		replicate(System.currentTimeMillis() - 60_000);
+		assertFalse(readsReplica(reader));
+
+		JsonNode statistics = objectMapper.readTree(
+				mvc.perform(get("/api/admin/routeStatistics/" + reader)).andReturn().getResponse().getContentAsString());
+		assertEquals("primary", statistics.get(0).get("name").asText());
+		assertEquals(1, statistics.get(0).get("sessionFallbacks").asLong());
+		assertEquals(2, statistics.get(0).get("lagFallbacks").asLong());
+		assertEquals("replica-1", statistics.get(1).get("name").asText());
+		assertEquals(2, statistics.get(1).get("reads").asLong());
+		assertTrue(statistics.get(1).get("connections").asLong() >= 2);
+		assertTrue(statistics.get(1).get("lagMillis").asLong() >= 60_000);
+	}
+
+	/**
+	 * Plays the replication of the heartbeat written on the primary at the given
+	 * time, then lets the router measure the lag
+	 */
+	private void replicate(long beatMillis) {
+		replica.update("UPDATE replica_heartbeat SET beat_millis = ? WHERE id = 1", beatMillis);
+		router.heartbeat();
+	}
+
+	private boolean readsReplica(String token) throws Exception {
+		String companies = mvc.perform(get("/api/admin/companies/" + token)).andReturn().getResponse()
+				.getContentAsString();
+		return companies.contains("replica only");
+	}
+
+	private String login() throws Exception {
+		return mvc.perform(post("/api/login").param("email", "admin").param("password", "1234").param("loginType",
+				"ADMIN")).andReturn().getResponse().getContentAsString();
+	}
+}
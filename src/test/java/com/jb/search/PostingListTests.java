@@ -0,0 +1,135 @@
+package com.jb.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jb.entity.Coupon;
+import com.jb.repository.CouponRepository;
+
+/**
+ * This class checks the encoding of the postings lists, the batch additions and
+ * removals, and the ranking of the search index built on them, which only sees
+ * the committed changes
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class PostingListTests {
+
+	@Test
+	public void postingsAreEncodedAsSortedDeltas() {
+		long[] ids = { 1, 2, 130, 1L << 40 };
+		int[] weights = { 1, 300, 3, 4 };
+		PostingList postings = PostingList.encode(ids, weights, ids.length);
+		assertEquals(4, postings.size());
+		// 1 byte per small delta and weight, 2 for 300 and 128, 6 for 2^40
+		assertEquals(1 + 1 + 1 + 2 + 2 + 1 + 6 + 1, postings.sizeInBytes());
+
+		long[] decodedIds = new long[4];
+		int[] decodedWeights = new int[4];
+		postings.decode(decodedIds, decodedWeights);
+		assertArrayEquals(ids, decodedIds);
+		assertArrayEquals(weights, decodedWeights);
+		assertSame(PostingList.EMPTY, PostingList.encode(ids, weights, 0));
+	}
+
+	@Test
+	public void aBatchIsMergedAndReplacesTheWeightsOfKnownCoupons() {
+		PostingList postings = PostingList.EMPTY.with(5, 1).with(1, 1).with(9, 1);
+		postings = postings.withAll(new long[] { 0, 5, 7, 12 }, new int[] { 2, 3, 2, 2 }, 4);
+		assertPostings(postings, new long[] { 0, 1, 5, 7, 9, 12 }, new int[] { 2, 1, 3, 2, 1, 2 });
+		assertSame(postings, postings.withAll(new long[0], new int[0], 0));
+	}
+
+	@Test
+	public void aBatchIsRemovedAtOnce() {
+		PostingList postings = PostingList.encode(new long[] { 1, 3, 5, 7, 9 }, new int[] { 1, 2, 3, 4, 5 }, 5);
+		assertPostings(postings.withoutAll(new long[] { 0, 3, 4, 9, 10 }, 5), new long[] { 1, 5, 7 },
+				new int[] { 1, 3, 4 });
+		assertSame(postings, postings.without(4));
+		assertEquals(0, postings.withoutAll(new long[] { 1, 3, 5, 7, 9 }, 5).size());
+	}
+
+	@Test
+	public void titlesRankAboveDescriptionsAndRemovedCouponsAreGone() {
+		CouponRepository repository = mock(CouponRepository.class);
+		when(repository.findAll()).thenReturn(Arrays.asList(coupon(3, "pizza night", "two pizzas", 1),
+				coupon(1, "cinema", "free pizza with the ticket", 2), coupon(2, "spa day", "massage", 1)));
+		CouponSearchIndex index = new CouponSearchIndex(repository);
+		index.rebuild();
+
+		assertEquals(Arrays.asList(3L, 1L), index.search("pizza", 0, 10));
+		assertEquals(Arrays.asList(1L), index.search("pizza", 2, 10));
+		assertEquals(Arrays.asList(3L, 1L), index.search("piz", 0, 10));
+
+		index.indexAll(Arrays.asList(coupon(5, "pizza pizza", "pizza", 1), coupon(4, "spa", "pizza", 1)));
+		assertEquals(Arrays.asList(5L, 3L), index.search("pizza", 1, 2));
+
+		index.removeAll(Arrays.asList(3L, 5L));
+		assertEquals(new HashSet<>(Arrays.asList(1L, 4L)), new HashSet<>(index.search("pizza", 0, 10)));
+		assertEquals(Collections.emptyList(), index.search("night", 0, 10));
+	}
+
+	@Test
+	public void onlyCommittedChangesReachTheIndex() {
+		CouponRepository repository = mock(CouponRepository.class);
+		when(repository.findAll()).thenReturn(Arrays.asList(coupon(1, "kayak tour", "river", 1)));
+		CouponSearchIndex index = new CouponSearchIndex(repository);
+		index.rebuild();
+
+		inTransaction(false, () -> {
+			index.index(coupon(1, "canoe tour", "river", 1));
+			index.remove(1);
+		});
+		assertEquals(Arrays.asList(1L), index.search("kayak", 0, 10));
+		assertEquals(Collections.emptyList(), index.search("canoe", 0, 10));
+
+		inTransaction(true, () -> index.index(coupon(1, "canoe tour", "river", 1)));
+		assertEquals(Collections.emptyList(), index.search("kayak", 0, 10));
+		assertEquals(Arrays.asList(1L), index.search("canoe", 0, 10));
+	}
+
+	private static void inTransaction(boolean committed, Runnable change) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			change.run();
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+					.getSynchronizations()) {
+				if (committed) {
+					synchronization.afterCommit();
+				}
+				synchronization.afterCompletion(committed ? TransactionSynchronization.STATUS_COMMITTED
+						: TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private static void assertPostings(PostingList postings, long[] ids, int[] weights) {
+		long[] decodedIds = new long[postings.size()];
+		int[] decodedWeights = new int[postings.size()];
+		postings.decode(decodedIds, decodedWeights);
+		assertArrayEquals(ids, decodedIds);
+		assertArrayEquals(weights, decodedWeights);
+	}
+
+	private static Coupon coupon(long id, String title, String description, int category) {
+		Coupon coupon = new Coupon(title, Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), category, 10,
+				description, 9.9, null);
+		coupon.setId(id);
+		return coupon;
+	}
+}
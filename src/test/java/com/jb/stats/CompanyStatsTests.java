@@ -0,0 +1,127 @@
+package com.jb.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jb.entity.CategoryStats;
+import com.jb.entity.Coupon;
+import com.jb.repository.CategoryStatsRepository;
+import com.jb.repository.CategoryStatsRepository.Aggregate;
+
+/**
+ * This class checks that the dashboards only count committed changes and that
+ * a reload of the listings neither loses nor doubles the changes made while it
+ * runs
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class CompanyStatsTests {
+
+	private CategoryStatsRepository repository;
+	private CompanyStats stats;
+
+	@Before
+	public void setUp() {
+		repository = mock(CategoryStatsRepository.class);
+		stats = new CompanyStats(repository, mock(PlatformTransactionManager.class));
+	}
+
+	@Test
+	public void changesAreCountedOnlyWhenCommitted() {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			stats.couponAdded(1, coupon(3, 10));
+			stats.couponSold(1, coupon(3, 10));
+			assertTrue(stats.get(1).isEmpty());
+			complete(false);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertTrue(stats.get(1).isEmpty());
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			stats.couponAdded(1, coupon(3, 10));
+			stats.couponSold(1, coupon(3, 10));
+			complete(true);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		CategoryStats category = stats.get(1).get(0);
+		assertEquals(1, category.getListed());
+		assertEquals(9, category.getUnitsRemaining());
+		assertEquals(1, category.getUnitsSold());
+		assertEquals(250, category.getGrossCents());
+	}
+
+	@Test
+	public void aReloadKeepsTheChangesMadeDuringItOnce() {
+		stats.couponAdded(1, coupon(3, 10));
+		stats.couponAdded(1, coupon(4, 5));
+		stats.couponAdded(2, coupon(3, 7));
+
+		// The sale is committed while the coupon table is read, after the row
+		// was counted
+		List<Aggregate> listings = Arrays.asList(aggregate(1, 3, 1, 10), aggregate(1, 4, 1, 5));
+		when(repository.sumListings()).thenAnswer(invocation -> {
+			stats.couponSold(1, coupon(3, 10));
+			return listings;
+		});
+		stats.reloadListings();
+
+		List<CategoryStats> company = stats.get(1);
+		assertEquals(2, company.size());
+		for (CategoryStats category : company) {
+			assertEquals(1, category.getListed());
+			assertEquals(category.getCategory() == 3 ? 9 : 5, category.getUnitsRemaining());
+			assertEquals(category.getCategory() == 3 ? 1 : 0, category.getUnitsSold());
+		}
+		// Gone from the table without the services
+		assertEquals(0, stats.get(2).get(0).getListed());
+		assertEquals(0, stats.get(2).get(0).getUnitsRemaining());
+
+		when(repository.sumListings()).thenReturn(Collections.emptyList());
+		stats.reloadListings();
+		stats.couponSold(1, coupon(3, 10));
+		assertEquals(-1, stats.get(1).stream().filter(category -> category.getCategory() == 3).findFirst().get()
+				.getUnitsRemaining());
+	}
+
+	private static void complete(boolean committed) {
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			if (committed) {
+				synchronization.afterCommit();
+			}
+			synchronization.afterCompletion(
+					committed ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+		}
+	}
+
+	private static Coupon coupon(int category, int amount) {
+		return new Coupon("stats", Date.valueOf("2020-01-01"), Date.valueOf("2099-01-01"), category, amount, "stats",
+				2.5, null);
+	}
+
+	private static Aggregate aggregate(long companyId, int category, long rowCount, long total) {
+		Aggregate aggregate = mock(Aggregate.class);
+		when(aggregate.getCompanyId()).thenReturn(companyId);
+		when(aggregate.getCategory()).thenReturn(category);
+		when(aggregate.getRowCount()).thenReturn(rowCount);
+		when(aggregate.getTotal()).thenReturn(total);
+		return aggregate;
+	}
+}
@@ -0,0 +1,48 @@
+package com.jb.stock;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * This class checks that the stock table keeps the amounts through its growth
+ * and forgets the removed coupons
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class StockTableTests {
+
+	@Test
+	public void amountsAreKeptWhenTheTableGrows() {
+		StockTable table = new StockTable(0);
+		for (long id = 1; id <= 10000; id++) {
+			table.put(id, (int) (id % 7));
+			if (table.isFull()) {
+				table = table.grow();
+			}
+		}
+		assertEquals(10000, table.size());
+		for (long id = 1; id <= 10000; id++) {
+			assertEquals(id % 7, table.get(id));
+		}
+		assertEquals(StockTable.UNKNOWN, table.get(10001));
+	}
+
+	@Test
+	public void removedCouponsAreUnknown() {
+		StockTable table = new StockTable(4);
+		table.put(3, 10);
+		table.put(3, 9);
+		table.put(5, 1);
+		table.put(3, StockTable.UNKNOWN);
+		table.put(8, StockTable.UNKNOWN);
+		assertEquals(StockTable.UNKNOWN, table.get(3));
+		assertEquals(StockTable.UNKNOWN, table.get(8));
+		assertEquals(1, table.get(5));
+		StockTable grown = table.grow();
+		assertEquals(1, grown.size());
+		assertEquals(1, grown.get(5));
+		assertEquals(StockTable.UNKNOWN, grown.get(3));
+	}
+}
@@ -0,0 +1,89 @@
+package com.jb.trending;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * This class checks the accuracy of the trending sketches on a skewed stream
+ * of purchases where the real counts are known
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class SlidingTopKTests {
+
+	private static final long MINUTE = 60_000;
+
+	@Test
+	public void countMinNeverUnderestimatesAndStaysWithinTheBound() {
+		CountMinSketch sketch = new CountMinSketch(512, 4);
+		Map<Long, Long> counts = skewedStream(100_000, 10_000, new Random(1));
+		counts.forEach((key, count) -> sketch.add(key, count));
+		long bound = Math.round(Math.E / 512 * 100_000);
+		int outside = 0;
+		for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+			long estimate = sketch.estimate(entry.getKey());
+			assertTrue(estimate >= entry.getValue());
+			if (estimate - entry.getValue() > bound) {
+				outside++;
+			}
+		}
+		// The bound holds with probability 1 - e^-4, about 98%
+		assertTrue(outside < counts.size() / 50);
+	}
+
+	@Test
+	public void topKFindsTheHeavyHitters() {
+		SlidingTopK topK = new SlidingTopK(12, 5 * MINUTE, 512, 4, 32);
+		Random random = new Random(2);
+		Map<Long, Long> counts = new HashMap<>();
+		for (int i = 0; i < 100_000; i++) {
+			// 30% of the purchases go to 10 coupons, the rest to 10,000 others
+			long key = random.nextDouble() < 0.3 ? 1 + random.nextInt(10) : 11 + random.nextInt(10_000);
+			counts.merge(key, 1L, Long::sum);
+			topK.add(key, i);
+		}
+		List<Long> expected = new ArrayList<>(counts.keySet());
+		expected.sort((a, b) -> Long.compare(counts.get(b), counts.get(a)));
+		Set<Long> found = new HashSet<>();
+		for (long[] entry : topK.top(10, 100_000)) {
+			found.add(entry[0]);
+		}
+		assertEquals(new HashSet<>(expected.subList(0, 10)), found);
+	}
+
+	@Test
+	public void eventsLeaveTheWindow() {
+		SlidingTopK topK = new SlidingTopK(12, 5 * MINUTE, 512, 4, 32);
+		topK.add(1, 0);
+		topK.add(1, 0);
+		topK.add(2, 30 * MINUTE);
+		assertEquals(2, topK.top(10, 30 * MINUTE).size());
+		List<long[]> top = topK.top(10, 61 * MINUTE);
+		assertEquals(1, top.size());
+		assertEquals(2, top.get(0)[0]);
+	}
+
+	private static Map<Long, Long> skewedStream(int events, int keys, Random random) {
+		Map<Long, Long> counts = new HashMap<>();
+		for (int i = 0; i < events; i++) {
+			counts.merge(skewedKey(keys, random), 1L, Long::sum);
+		}
+		return counts;
+	}
+
+	// Roughly a zipf distribution, small keys are much more frequent
+	private static long skewedKey(int keys, Random random) {
+		return (long) Math.floor(Math.pow(keys, random.nextDouble()));
+	}
+}
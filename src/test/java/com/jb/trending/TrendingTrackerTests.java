@@ -0,0 +1,51 @@
+package com.jb.trending;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class checks that only the committed purchases reach the trending
+ * coupons and the top sellers
+ * 
+ * @author Solal Arroues
+ *
+ */
+public class TrendingTrackerTests {
+
+	@Test
+	public void aRolledBackPurchaseIsNotASale() {
+		TrendingTracker tracker = new TrendingTracker();
+		purchase(tracker, 1001, false);
+		assertTrue(tracker.trending(0, 10).isEmpty());
+		assertTrue(tracker.topSellers(3, 10).isEmpty());
+
+		purchase(tracker, 1002, true);
+		List<Trend> trending = tracker.trending(0, 10);
+		assertEquals(1, trending.size());
+		assertEquals(1002, trending.get(0).getCouponId());
+		assertEquals(1, tracker.topSellers(3, 10).get(0).getPurchases());
+	}
+
+	private static void purchase(TrendingTracker tracker, long couponId, boolean committed) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			tracker.purchased(couponId, 3);
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+					.getSynchronizations()) {
+				if (committed) {
+					synchronization.afterCommit();
+				}
+				synchronization.afterCompletion(committed ? TransactionSynchronization.STATUS_COMMITTED
+						: TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+}